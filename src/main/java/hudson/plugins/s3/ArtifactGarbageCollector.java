@@ -0,0 +1,242 @@
+package hudson.plugins.s3;
+
+import com.amazonaws.AmazonClientException;
+import com.amazonaws.services.s3.AmazonS3;
+import com.amazonaws.services.s3.AmazonS3Client;
+import com.amazonaws.services.s3.model.S3ObjectSummary;
+import hudson.Extension;
+import hudson.model.AsyncPeriodicWork;
+import hudson.model.Job;
+import hudson.model.Run;
+import hudson.model.TaskListener;
+import hudson.security.ACL;
+import hudson.security.ACLContext;
+import hudson.util.DaemonThreadFactory;
+import hudson.util.NamingThreadFactory;
+import jenkins.model.Jenkins;
+
+import java.io.IOException;
+import java.io.PrintStream;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Date;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.Set;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Finds the objects under the managed artifact prefixes jobs/&lt;project&gt;/&lt;build&gt;/ which no live build
+ * references: leftovers of failed deletions, of deleted jobs and of interrupted uploads.
+ *
+ * Only the buckets which live builds published managed artifacts to are collected, each project prefix
+ * of a bucket is listed in parallel by the {@link ObjectLister}. Objects modified within
+ * the grace period are kept, they may belong to a build which is still uploading. The objects of builds whose
+ * artifacts can't be read are kept as well. By default the collector
+ * only reports what it would delete in its log, the objects are deleted through the {@link DeletionQueue}
+ * when hudson.plugins.s3.ArtifactGarbageCollector.delete is true.
+ */
+@Extension
+public final class ArtifactGarbageCollector extends AsyncPeriodicWork {
+    private static final int RECURRENCE_HOURS = Integer.getInteger(ArtifactGarbageCollector.class.getName() + ".recurrenceHours", 24);
+    private static final int GRACE_HOURS = Integer.getInteger(ArtifactGarbageCollector.class.getName() + ".graceHours", 24);
+    private static final int LISTING_THREADS = Integer.getInteger(ArtifactGarbageCollector.class.getName() + ".listingThreads", 4);
+    private static final boolean DELETE = Boolean.getBoolean(ArtifactGarbageCollector.class.getName() + ".delete");
+    private static final String JOBS_PREFIX = "jobs/";
+
+    /**
+     * Receives the unreferenced keys, in batches of at most one multi-object delete request. Called concurrently.
+     */
+    interface Collector {
+        void collect(List<String> keys) throws IOException;
+    }
+
+    public ArtifactGarbageCollector() {
+        super("S3 artifact garbage collection");
+    }
+
+    @Override
+    public long getRecurrencePeriod() {
+        return TimeUnit.HOURS.toMillis(RECURRENCE_HOURS);
+    }
+
+    @Override
+    protected void execute(TaskListener listener) throws IOException, InterruptedException {
+        final PrintStream logger = listener.getLogger();
+        final Map<ManagedPrefix, Set<String>> references;
+        final Set<String> unreadable = new HashSet<>();
+        try (ACLContext ignored = ACL.as(ACL.SYSTEM)) {
+            references = findReferences(unreadable, logger);
+        }
+        final Date cutoff = new Date(System.currentTimeMillis() - TimeUnit.HOURS.toMillis(GRACE_HOURS));
+        logger.println((DELETE ? "Deleting" : "Dry run, reporting") + " unreferenced objects older than " + cutoff);
+
+        final ExecutorService executor = Executors.newFixedThreadPool(Math.max(LISTING_THREADS, 1),
+                new NamingThreadFactory(new DaemonThreadFactory(), "S3 artifact garbage collection"));
+        try {
+            for (Map.Entry<ManagedPrefix, Set<String>> entry : references.entrySet()) {
+                final ManagedPrefix prefix = entry.getKey();
+                try {
+                    final S3Profile profile = S3BucketPublisher.getProfile(prefix.profile);
+                    final long found;
+                    try (ClientCache<ClientKey, AmazonS3Client>.Lease client = profile.leaseClient(prefix.region)) {
+                        found = collect(client.get(), prefix.bucketName, prefix.prefix, entry.getValue(), unreadable, cutoff, executor,
+                                newCollector(prefix, logger));
+                    }
+                    logger.println(prefix + ": " + found + " unreferenced objects" + (DELETE ? " scheduled for deletion" : ""));
+                } catch (IOException | AmazonClientException | IllegalArgumentException e) {
+                    e.printStackTrace(listener.error("Failed to collect " + prefix));
+                }
+            }
+        } finally {
+            executor.shutdownNow();
+        }
+    }
+
+    private static Collector newCollector(final ManagedPrefix prefix, final PrintStream logger) {
+        return new Collector() {
+            @Override
+            public void collect(List<String> keys) throws IOException {
+                if (DELETE) {
+                    DeletionQueue.get().schedule(Collections.singletonList(
+                            new DeletionTask(prefix.profile, prefix.region, prefix.bucketName, DeletionTask.Kind.OBJECTS, keys)));
+                    return;
+                }
+                synchronized (logger) {
+                    for (String key : keys) {
+                        logger.println("Would delete s3://" + prefix.bucketName + "/" + key);
+                    }
+                }
+            }
+        };
+    }
+
+    /**
+     * The keys of the artifacts which the live builds published, by the prefix they were published under.
+     *
+     * @param unreadable receives the paths "&lt;project&gt;/&lt;build&gt;/" below the jobs/ prefix of the builds
+     *                   whose artifacts couldn't be read, with the full and the short project name
+     */
+    private static Map<ManagedPrefix, Set<String>> findReferences(Set<String> unreadable, PrintStream logger) {
+        final Map<ManagedPrefix, Set<String>> references = new HashMap<>();
+        for (Job<?, ?> job : Jenkins.get().allItems(Job.class)) {
+            for (Run<?, ?> run : job.getBuilds()) {
+                final S3ArtifactsAction action = run.getAction(S3ArtifactsAction.class);
+                if (action == null) {
+                    continue;
+                }
+                final List<FingerprintRecord> records;
+                try {
+                    records = action.scanArtifacts();
+                } catch (IOException e) {
+                    logger.println("Keeping the objects of " + run + ", its S3 artifacts can't be read: " + e);
+                    unreadable.add(job.getFullName() + '/' + run.getNumber() + '/');
+                    unreadable.add(job.getName() + '/' + run.getNumber() + '/');
+                    continue;
+                }
+                for (FingerprintRecord record : records) {
+                    final S3Artifact artifact = record.getArtifact();
+                    if (artifact.isContentAddressed()) {
+                        continue;
+                    }
+                    final Destination root = new Destination(artifact.getBucket(), JOBS_PREFIX);
+                    final ManagedPrefix prefix = new ManagedPrefix(action.getProfile(), artifact.getRegion(), root.bucketName, root.objectName);
+                    Set<String> keys = references.get(prefix);
+                    if (keys == null) {
+                        keys = new HashSet<>();
+                        references.put(prefix, keys);
+                    }
+                    keys.add(Destination.newFromRun(run, artifact).objectName);
+                }
+            }
+        }
+        return references;
+    }
+
+    /**
+     * Lists the objects under the prefix, one task per project, and hands the unreferenced ones which
+     * weren't modified after the cutoff to the collector, one batch per listed page.
+     *
+     * @return the number of unreferenced keys
+     */
+    static long collect(AmazonS3 client, String bucketName, final String prefix, final Set<String> referenced, final Set<String> unreadable,
+                        final Date cutoff, ExecutorService executor, final Collector collector) throws IOException, InterruptedException {
+        final AtomicLong found = new AtomicLong();
+        new ObjectLister(client, bucketName).listParallel(prefix, "/", executor, new ObjectLister.Visitor() {
+            @Override
+            public void visit(List<S3ObjectSummary> objects) throws IOException {
+                final List<String> batch = new ArrayList<>();
+                for (S3ObjectSummary summary : objects) {
+                    final String key = summary.getKey();
+                    // objects right under the prefix aren't in a project directory, so they aren't artifacts
+                    if (key.indexOf('/', prefix.length()) < 0 || referenced.contains(key) || !summary.getLastModified().before(cutoff)
+                            || isOfBuild(key.substring(prefix.length()), unreadable)) {
+                        continue;
+                    }
+                    batch.add(key);
+                }
+                if (!batch.isEmpty()) {
+                    found.addAndGet(batch.size());
+                    collector.collect(batch);
+                }
+            }
+        });
+        return found.get();
+    }
+
+    private static boolean isOfBuild(String path, Set<String> builds) {
+        for (String build : builds) {
+            if (path.startsWith(build)) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    /**
+     * The jobs/ prefix of a bucket, with the profile and region of the first build found to publish to it.
+     * Only the bucket and prefix make up its identity, so the keys published with other profiles or regions
+     * count as references too.
+     */
+    private static final class ManagedPrefix {
+        final String profile;
+        final String region;
+        final String bucketName;
+        final String prefix;
+
+        ManagedPrefix(String profile, String region, String bucketName, String prefix) {
+            this.profile = profile;
+            this.region = region;
+            this.bucketName = bucketName;
+            this.prefix = prefix;
+        }
+
+        @Override
+        public boolean equals(Object o) {
+            if (this == o) {
+                return true;
+            }
+            if (!(o instanceof ManagedPrefix)) {
+                return false;
+            }
+            final ManagedPrefix that = (ManagedPrefix) o;
+            return bucketName.equals(that.bucketName) && prefix.equals(that.prefix);
+        }
+
+        @Override
+        public int hashCode() {
+            return Objects.hash(bucketName, prefix);
+        }
+
+        @Override
+        public String toString() {
+            return "s3://" + bucketName + "/" + prefix + " (profile " + profile + ", region " + region + ")";
+        }
+    }
+}
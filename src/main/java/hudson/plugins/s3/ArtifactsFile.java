@@ -0,0 +1,301 @@
+package hudson.plugins.s3;
+
+import org.apache.commons.codec.binary.Hex;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.EOFException;
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Compact binary form of the artifact records of a build, kept next to its build.xml instead of in it.
+ *
+ * Buckets, bucket prefixes and regions are written once into tables which the records refer to by index.
+ * The records are sorted by name and every name only stores what differs from the previous one.
+ * MD5 sums are stored as their 16 raw bytes.
+ */
+final class ArtifactsFile {
+    static final String NAME = "s3-artifacts.bin";
+
+    private static final int MAGIC = 0x53334152; // "S3AR"
+    private static final int VERSION = 1;
+
+    private static final int PRODUCED = 1;
+    private static final int KEEP_FOREVER = 1 << 1;
+    private static final int SHOW_DIRECTLY_IN_BROWSER = 1 << 2;
+    private static final int CONTENT_ADDRESSED = 1 << 3;
+    private static final int USE_FULL_PROJECT_NAME = 1 << 4;
+    /** The MD5 is stored as a string, it isn't 32 lower case hex digits. */
+    private static final int MD5_STRING = 1 << 5;
+    private static final int MD5_NULL = 1 << 6;
+
+    private ArtifactsFile() {
+    }
+
+    /**
+     * Replaces the file atomically, readers see either the old or the new records.
+     */
+    static void write(File file, List<FingerprintRecord> records) throws IOException {
+        final Path target = file.toPath();
+        final Path temp = target.resolveSibling(NAME + ".tmp" + System.nanoTime());
+        try {
+            try (OutputStream out = new BufferedOutputStream(Files.newOutputStream(temp))) {
+                write(out, records);
+            }
+            Files.move(temp, target, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+        } finally {
+            Files.deleteIfExists(temp);
+        }
+    }
+
+    /**
+     * Whether the file exists and holds exactly these records, e.g. because they were written to it before.
+     */
+    static boolean holds(File file, List<FingerprintRecord> records) throws IOException {
+        if (!file.isFile()) {
+            return false;
+        }
+        final ByteArrayOutputStream expected = new ByteArrayOutputStream();
+        write(expected, records);
+        return Arrays.equals(expected.toByteArray(), Files.readAllBytes(file.toPath()));
+    }
+
+    static List<FingerprintRecord> read(File file) throws IOException {
+        try (InputStream in = new BufferedInputStream(Files.newInputStream(file.toPath()))) {
+            return read(in);
+        }
+    }
+
+    static void write(OutputStream stream, List<FingerprintRecord> records) throws IOException {
+        final List<FingerprintRecord> sorted = new ArrayList<>(records);
+        Collections.sort(sorted, new Comparator<FingerprintRecord>() {
+            @Override
+            public int compare(FingerprintRecord a, FingerprintRecord b) {
+                return a.getArtifact().getName().compareTo(b.getArtifact().getName());
+            }
+        });
+
+        final Table buckets = new Table();
+        final Table prefixes = new Table();
+        final Table regions = new Table();
+        final int[] indexes = new int[sorted.size() * 3];
+        for (int i = 0; i < sorted.size(); i++) {
+            final S3Artifact artifact = sorted.get(i).getArtifact();
+            // the bucket of an artifact may carry a path prefix, e.g. bucket/folder
+            final String bucket = artifact.getBucket();
+            final int slash = bucket.indexOf('/');
+            indexes[i * 3] = buckets.indexOf(slash < 0 ? bucket : bucket.substring(0, slash));
+            indexes[i * 3 + 1] = prefixes.indexOf(slash < 0 ? "" : bucket.substring(slash));
+            indexes[i * 3 + 2] = regions.indexOf(artifact.getRegion());
+        }
+
+        final DataOutputStream out = new DataOutputStream(stream);
+        out.writeInt(MAGIC);
+        out.writeByte(VERSION);
+        buckets.write(out);
+        prefixes.write(out);
+        regions.write(out);
+        writeVarInt(out, sorted.size());
+        String previous = "";
+        for (int i = 0; i < sorted.size(); i++) {
+            final FingerprintRecord record = sorted.get(i);
+            final S3Artifact artifact = record.getArtifact();
+            final String name = artifact.getName();
+            final int shared = sharedPrefixLength(previous, name);
+            writeVarInt(out, shared);
+            writeString(out, name.substring(shared));
+            previous = name;
+
+            writeVarInt(out, indexes[i * 3]);
+            writeVarInt(out, indexes[i * 3 + 1]);
+            writeVarInt(out, indexes[i * 3 + 2]);
+
+            final String md5 = record.getFingerprint();
+            int flags = 0;
+            flags |= record.isProduced() ? PRODUCED : 0;
+            flags |= record.isKeepForever() ? KEEP_FOREVER : 0;
+            flags |= record.isShowDirectlyInBrowser() ? SHOW_DIRECTLY_IN_BROWSER : 0;
+            flags |= artifact.isContentAddressed() ? CONTENT_ADDRESSED : 0;
+            flags |= artifact.useFullProjectName() ? USE_FULL_PROJECT_NAME : 0;
+            flags |= md5 == null ? MD5_NULL : isHexMd5(md5) ? 0 : MD5_STRING;
+            out.writeByte(flags);
+            if (md5 == null) {
+                continue;
+            }
+            if ((flags & MD5_STRING) != 0) {
+                writeString(out, md5);
+            } else {
+                for (int digit = 0; digit < md5.length(); digit += 2) {
+                    out.writeByte(Character.digit(md5.charAt(digit), 16) << 4 | Character.digit(md5.charAt(digit + 1), 16));
+                }
+            }
+        }
+        out.flush();
+    }
+
+    static List<FingerprintRecord> read(InputStream stream) throws IOException {
+        final DataInputStream in = new DataInputStream(stream);
+        if (in.readInt() != MAGIC) {
+            throw new IOException("Not an S3 artifacts file");
+        }
+        final int version = in.readUnsignedByte();
+        if (version != VERSION) {
+            throw new IOException("Unsupported S3 artifacts file version " + version);
+        }
+        final String[] buckets = readTable(in);
+        final String[] prefixes = readTable(in);
+        final String[] regions = readTable(in);
+        final int count = readVarInt(in);
+
+        final List<FingerprintRecord> records = new ArrayList<>(Math.min(count, 1 << 16));
+        final byte[] md5 = new byte[16];
+        String previous = "";
+        for (int i = 0; i < count; i++) {
+            final int shared = readVarInt(in);
+            if (shared > previous.length()) {
+                throw new IOException("Corrupt S3 artifacts file: name shares " + shared + " characters with '" + previous + "'");
+            }
+            final String name = previous.substring(0, shared) + readString(in);
+            previous = name;
+
+            final String bucket = entry(buckets, readVarInt(in)) + entry(prefixes, readVarInt(in));
+            final String region = entry(regions, readVarInt(in));
+            final int flags = in.readUnsignedByte();
+            final String fingerprint;
+            if ((flags & MD5_NULL) != 0) {
+                fingerprint = null;
+            } else if ((flags & MD5_STRING) != 0) {
+                fingerprint = readString(in);
+            } else {
+                in.readFully(md5);
+                fingerprint = Hex.encodeHexString(md5);
+            }
+
+            final S3Artifact artifact = new S3Artifact(region, bucket, name,
+                    (flags & CONTENT_ADDRESSED) != 0, (flags & USE_FULL_PROJECT_NAME) != 0);
+            final FingerprintRecord record = new FingerprintRecord((flags & PRODUCED) != 0, artifact, fingerprint);
+            record.setKeepForever((flags & KEEP_FOREVER) != 0);
+            record.setShowDirectlyInBrowser((flags & SHOW_DIRECTLY_IN_BROWSER) != 0);
+            records.add(record);
+        }
+        return records;
+    }
+
+    private static boolean isHexMd5(String md5) {
+        if (md5.length() != 32) {
+            return false;
+        }
+        for (int i = 0; i < md5.length(); i++) {
+            final char c = md5.charAt(i);
+            if ((c < '0' || c > '9') && (c < 'a' || c > 'f')) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    private static int sharedPrefixLength(String a, String b) {
+        final int max = Math.min(a.length(), b.length());
+        int i = 0;
+        while (i < max && a.charAt(i) == b.charAt(i)) {
+            i++;
+        }
+        // don't split surrogate pairs, the suffix is written as UTF-8
+        if (i > 0 && i < b.length() && Character.isHighSurrogate(b.charAt(i - 1))) {
+            i--;
+        }
+        return i;
+    }
+
+    private static String entry(String[] table, int index) throws IOException {
+        if (index >= table.length) {
+            throw new IOException("Corrupt S3 artifacts file: index " + index + " of a table of " + table.length);
+        }
+        return table[index];
+    }
+
+    private static String[] readTable(DataInputStream in) throws IOException {
+        final String[] table = new String[readVarInt(in)];
+        for (int i = 0; i < table.length; i++) {
+            table[i] = readString(in);
+        }
+        return table;
+    }
+
+    private static void writeString(DataOutputStream out, String value) throws IOException {
+        final byte[] bytes = value.getBytes(StandardCharsets.UTF_8);
+        writeVarInt(out, bytes.length);
+        out.write(bytes);
+    }
+
+    private static String readString(DataInputStream in) throws IOException {
+        final byte[] bytes = new byte[readVarInt(in)];
+        in.readFully(bytes);
+        return new String(bytes, StandardCharsets.UTF_8);
+    }
+
+    private static void writeVarInt(DataOutputStream out, int value) throws IOException {
+        while ((value & ~0x7f) != 0) {
+            out.writeByte((value & 0x7f) | 0x80);
+            value >>>= 7;
+        }
+        out.writeByte(value);
+    }
+
+    private static int readVarInt(DataInputStream in) throws IOException {
+        int value = 0;
+        for (int shift = 0; shift < 32; shift += 7) {
+            final int b = in.readUnsignedByte();
+            value |= (b & 0x7f) << shift;
+            if ((b & 0x80) == 0) {
+                if (value < 0) {
+                    break;
+                }
+                return value;
+            }
+        }
+        throw new EOFException("Corrupt S3 artifacts file: bad length");
+    }
+
+    /**
+     * Distinct strings in the order they were first seen.
+     */
+    private static final class Table {
+        private final Map<String, Integer> indexes = new HashMap<>();
+        private final List<String> values = new ArrayList<>();
+
+        int indexOf(String value) {
+            Integer index = indexes.get(value);
+            if (index == null) {
+                index = values.size();
+                indexes.put(value, index);
+                values.add(value);
+            }
+            return index;
+        }
+
+        void write(DataOutputStream out) throws IOException {
+            writeVarInt(out, values.size());
+            for (String value : values) {
+                writeString(out, value);
+            }
+        }
+    }
+}
@@ -0,0 +1,289 @@
+package hudson.plugins.s3;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+/**
+ * Thread-safe cache of expensive clients (connection pools, thread pools) with LRU and idle eviction.
+ *
+ * Clients are handed out as {@link Lease}s. A client is only disposed once it was evicted
+ * and all of its leases were closed, so a running transfer never loses its client.
+ * Looking up a cached client doesn't take any global lock.
+ */
+public abstract class ClientCache<K, V> {
+    private static final Logger LOGGER = Logger.getLogger(ClientCache.class.getName());
+    private static final long SUMMARY_INTERVAL_MILLIS =
+            TimeUnit.MINUTES.toMillis(Long.getLong(ClientCache.class.getName() + ".summaryIntervalMinutes", 60));
+
+    private final String name;
+    private final int maxSize;
+    private final long maxIdleNanos;
+    private final long summaryIntervalNanos;
+    private final AtomicLong lastSummary = new AtomicLong(System.nanoTime());
+    private final Map<K, Slot> slots = new ConcurrentHashMap<>();
+    private final AtomicLong hits = new AtomicLong();
+    private final AtomicLong misses = new AtomicLong();
+    private final AtomicLong evictions = new AtomicLong();
+    private final AtomicInteger live = new AtomicInteger();
+
+    /**
+     * @param maxSize       number of clients kept at most, clients in use can exceed it temporarily
+     * @param maxIdleMillis unused clients are disposed after this time
+     */
+    protected ClientCache(String name, int maxSize, long maxIdleMillis) {
+        this(name, maxSize, maxIdleMillis, SUMMARY_INTERVAL_MILLIS);
+    }
+
+    /**
+     * @param summaryIntervalMillis the statistics are logged at INFO at most this often
+     */
+    protected ClientCache(String name, int maxSize, long maxIdleMillis, long summaryIntervalMillis) {
+        this.name = name;
+        this.maxSize = Math.max(maxSize, 1);
+        this.maxIdleNanos = TimeUnit.MILLISECONDS.toNanos(maxIdleMillis);
+        this.summaryIntervalNanos = TimeUnit.MILLISECONDS.toNanos(summaryIntervalMillis);
+    }
+
+    protected abstract void dispose(V client);
+
+    /**
+     * Builds a client, only called on a cache miss.
+     */
+    public interface Factory<V> {
+        V create();
+    }
+
+    /**
+     * Returns the client for the key, creating it with the factory if needed. Close the lease once done with the client.
+     */
+    public Lease acquire(K key, Factory<V> factory) {
+        while (true) {
+            Slot slot = slots.get(key);
+            boolean created = false;
+            if (slot == null) {
+                final Slot fresh = new Slot(key, factory);
+                slot = slots.putIfAbsent(key, fresh);
+                if (slot == null) {
+                    slot = fresh;
+                    created = true;
+                }
+            }
+            if (slot.lease()) {
+                (created ? misses : hits).incrementAndGet();
+                if (created) {
+                    LOGGER.log(Level.FINE, "Creating {0} client, {1}", new Object[]{name, this});
+                }
+                evictExpired();
+                logSummary();
+                return new Lease(slot);
+            }
+            // evicted between the lookup and the lease
+            slots.remove(key, slot);
+        }
+    }
+
+    /**
+     * Evicts the client of the key, e.g. because the configuration it was built from changed.
+     */
+    public void invalidate(K key) {
+        final Slot slot = slots.remove(key);
+        if (slot != null) {
+            slot.evict();
+        }
+    }
+
+    public void invalidateAll() {
+        for (Slot slot : new ArrayList<>(slots.values())) {
+            slots.remove(slot.key, slot);
+            slot.evict();
+        }
+    }
+
+    private void evictExpired() {
+        final long now = System.nanoTime();
+        final List<Slot> idle = new ArrayList<>();
+        for (Slot slot : slots.values()) {
+            if (slot.isIdle()) {
+                if (now - slot.lastUsed > maxIdleNanos) {
+                    evict(slot, "idle");
+                } else {
+                    idle.add(slot);
+                }
+            }
+        }
+
+        int excess = slots.size() - maxSize;
+        if (excess > 0) {
+            // least recently used first
+            Collections.sort(idle, new Comparator<Slot>() {
+                @Override
+                public int compare(Slot a, Slot b) {
+                    return Long.compare(a.lastUsed, b.lastUsed);
+                }
+            });
+            for (int i = 0; i < idle.size() && excess > 0; i++) {
+                if (evict(idle.get(i), "least recently used")) {
+                    excess--;
+                }
+            }
+        }
+    }
+
+    private void logSummary() {
+        final long now = System.nanoTime();
+        final long last = lastSummary.get();
+        // only one of the threads passing the interval logs
+        if (now - last >= summaryIntervalNanos && lastSummary.compareAndSet(last, now)) {
+            LOGGER.log(Level.INFO, "{0}", this);
+        }
+    }
+
+    private boolean evict(Slot slot, String reason) {
+        if (slots.remove(slot.key, slot)) {
+            LOGGER.log(Level.FINE, "Evicting {0} client ({1}), {2}", new Object[]{name, reason, this});
+            slot.evict();
+            return true;
+        }
+        return false;
+    }
+
+    public long getHits() {
+        return hits.get();
+    }
+
+    public long getMisses() {
+        return misses.get();
+    }
+
+    public long getEvictions() {
+        return evictions.get();
+    }
+
+    /**
+     * Number of clients which are cached or still in use after their eviction.
+     */
+    public int getLiveCount() {
+        return live.get();
+    }
+
+    @Override
+    public String toString() {
+        return name + " clients: " + getLiveCount() + " live, " + getHits() + " hits, " + getMisses() + " misses, "
+                + getEvictions() + " evictions";
+    }
+
+    /**
+     * A client in use, must be closed once the client isn't needed anymore.
+     */
+    public final class Lease implements AutoCloseable {
+        private final Slot slot;
+        private boolean closed;
+
+        private Lease(Slot slot) {
+            this.slot = slot;
+        }
+
+        public V get() {
+            return slot.getClient();
+        }
+
+        @Override
+        public void close() {
+            if (!closed) {
+                closed = true;
+                slot.release();
+            }
+        }
+    }
+
+    private final class Slot {
+        private final K key;
+        private final Factory<V> factory;
+        private V client;
+        private int leases;
+        private boolean evicted;
+        private volatile long lastUsed = System.nanoTime();
+
+        Slot(K key, Factory<V> factory) {
+            this.key = key;
+            this.factory = factory;
+        }
+
+        // the client is created by the first lease, outside of the map
+        synchronized V getClient() {
+            if (evicted && leases == 0) {
+                throw new IllegalStateException("The lease of the " + name + " client was already closed");
+            }
+            if (client == null) {
+                client = factory.create();
+                live.incrementAndGet();
+            }
+            return client;
+        }
+
+        synchronized boolean lease() {
+            if (evicted) {
+                return false;
+            }
+            leases++;
+            lastUsed = System.nanoTime();
+            return true;
+        }
+
+        synchronized boolean isIdle() {
+            return leases == 0;
+        }
+
+        void release() {
+            final boolean dispose;
+            synchronized (this) {
+                leases--;
+                lastUsed = System.nanoTime();
+                dispose = evicted && leases == 0;
+            }
+            if (dispose) {
+                disposeClient();
+            }
+        }
+
+        void evict() {
+            final boolean dispose;
+            synchronized (this) {
+                if (evicted) {
+                    return;
+                }
+                evicted = true;
+                dispose = leases == 0;
+            }
+            evictions.incrementAndGet();
+            if (dispose) {
+                disposeClient();
+            }
+        }
+
+        private void disposeClient() {
+            final V disposed;
+            synchronized (this) {
+                disposed = client;
+                client = null;
+            }
+            if (disposed != null) {
+                live.decrementAndGet();
+                try {
+                    dispose(disposed);
+                } catch (RuntimeException e) {
+                    LOGGER.log(Level.WARNING, "Failed to dispose " + name + " client", e);
+                }
+            }
+        }
+    }
+}
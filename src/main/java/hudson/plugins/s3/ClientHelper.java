@@ -8,7 +8,9 @@ import com.amazonaws.regions.Regions;
 import com.amazonaws.services.s3.AmazonS3;
 import com.amazonaws.services.s3.AmazonS3Client;
 import hudson.ProxyConfiguration;
+import hudson.util.Secret;
 
+import java.util.concurrent.TimeUnit;
 import java.util.regex.Pattern;
 
 import javax.annotation.Nonnull;
@@ -19,6 +21,44 @@ public class ClientHelper {
             "hudson.plugins.s3.DEFAULT_AMAZON_S3_REGION",
             com.amazonaws.services.s3.model.Region.US_Standard.toAWSRegion().getName());
 
+    private static final int MAX_CLIENTS = Integer.getInteger(ClientHelper.class.getName() + ".maxClients", 32);
+    private static final long CLIENT_IDLE_MILLIS = TimeUnit.MINUTES.toMillis(30);
+
+    private static final ClientCache<ClientKey, AmazonS3Client> clients =
+            new ClientCache<ClientKey, AmazonS3Client>("AmazonS3Client", MAX_CLIENTS, CLIENT_IDLE_MILLIS) {
+                @Override
+                protected void dispose(AmazonS3Client client) {
+                    client.shutdown();
+                }
+            };
+
+    /**
+     * Returns a shared client, so its connections are reused across calls. Close the lease once done with it.
+     */
+    public static ClientCache<ClientKey, AmazonS3Client>.Lease leaseClient(final String accessKey, final Secret secretKey, final boolean useRole,
+                                                                           final String region, final ProxyConfiguration proxy) {
+        return clients.acquire(ClientKey.of(accessKey, secretKey, useRole, region, proxy), new ClientCache.Factory<AmazonS3Client>() {
+            @Override
+            public AmazonS3Client create() {
+                return createClient(accessKey, Secret.toString(secretKey), useRole, region, proxy);
+            }
+        });
+    }
+
+    /**
+     * Hits, misses and live count of the shared clients of this JVM.
+     */
+    public static String getClientStatistics() {
+        return clients.toString();
+    }
+
+    /**
+     * Shuts the shared clients down once they aren't used anymore, e.g. because profiles or the proxy changed.
+     */
+    public static void invalidateClients() {
+        clients.invalidateAll();
+    }
+
     public static AmazonS3Client createClient(String accessKey, String secretKey, boolean useRole, String region, ProxyConfiguration proxy)
     {
         Region awsRegion = getRegionFromString(region);
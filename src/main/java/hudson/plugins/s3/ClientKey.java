@@ -0,0 +1,52 @@
+package hudson.plugins.s3;
+
+import hudson.ProxyConfiguration;
+import hudson.util.Secret;
+import org.apache.commons.codec.digest.DigestUtils;
+
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * Identifies the configuration an S3 client is built from. Secrets only enter as SHA-256
+ * hashes, so keys can be kept in caches and logged without revealing them.
+ */
+public final class ClientKey {
+    private final List<Object> values;
+
+    private ClientKey(List<Object> values) {
+        this.values = values;
+    }
+
+    public static ClientKey of(String accessKey, Secret secretKey, boolean useRole, String region, ProxyConfiguration proxy) {
+        return new ClientKey(Arrays.<Object>asList(region, useRole, accessKey, hash(Secret.toString(secretKey)),
+                proxy == null ? null : proxy.name,
+                proxy == null ? 0 : proxy.port,
+                proxy == null ? null : proxy.getUserName(),
+                proxy == null ? null : hash(proxy.getPassword()),
+                proxy == null ? null : proxy.noProxyHost));
+    }
+
+    /**
+     * A key for a client which is additionally built from the given settings.
+     */
+    public ClientKey with(Object settings) {
+        final Object[] extended = values.toArray(new Object[values.size() + 1]);
+        extended[values.size()] = settings;
+        return new ClientKey(Arrays.asList(extended));
+    }
+
+    private static String hash(String secret) {
+        return secret == null || secret.isEmpty() ? "" : DigestUtils.sha256Hex(secret);
+    }
+
+    @Override
+    public boolean equals(Object o) {
+        return o instanceof ClientKey && values.equals(((ClientKey) o).values);
+    }
+
+    @Override
+    public int hashCode() {
+        return values.hashCode();
+    }
+}
@@ -0,0 +1,107 @@
+package hudson.plugins.s3;
+
+import com.github.luben.zstd.ZstdInputStream;
+import com.github.luben.zstd.ZstdOutputStream;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.util.zip.GZIPOutputStream;
+
+/**
+ * How files are compressed before they are stored in S3.
+ * The codec is recorded as Content-Encoding of the object.
+ */
+public enum Compression {
+    NONE(null, 0, "None"),
+    GZIP_1("gzip", 1, "gzip, level 1 (fastest)"),
+    GZIP_2("gzip", 2, "gzip, level 2"),
+    GZIP_3("gzip", 3, "gzip, level 3"),
+    GZIP_4("gzip", 4, "gzip, level 4"),
+    GZIP_5("gzip", 5, "gzip, level 5"),
+    GZIP_6("gzip", 6, "gzip, level 6 (default)"),
+    GZIP_7("gzip", 7, "gzip, level 7"),
+    GZIP_8("gzip", 8, "gzip, level 8"),
+    GZIP_9("gzip", 9, "gzip, level 9 (smallest)"),
+    ZSTD("zstd", 3, "zstd");
+
+    /**
+     * What "GZIP files" used to do.
+     */
+    public static final Compression GZIP = GZIP_6;
+
+    private static final int GZIP_BUFFER_SIZE = 64 * 1024;
+
+    private final String contentEncoding;
+    private final int level;
+    private final String displayName;
+
+    Compression(String contentEncoding, int level, String displayName) {
+        this.contentEncoding = contentEncoding;
+        this.level = level;
+        this.displayName = displayName;
+    }
+
+    public static Compression fromGzipFiles(boolean gzipFiles) {
+        return gzipFiles ? GZIP : NONE;
+    }
+
+    public boolean isCompressed() {
+        return contentEncoding != null;
+    }
+
+    public boolean isGzip() {
+        return "gzip".equals(contentEncoding);
+    }
+
+    public String getContentEncoding() {
+        return contentEncoding;
+    }
+
+    public int getLevel() {
+        return level;
+    }
+
+    public String getDisplayName() {
+        return displayName;
+    }
+
+    /**
+     * Compresses everything written to the returned stream into {@code out}.
+     *
+     * @param length              length of the data, if known; gzip uses all cores for data spanning several blocks
+     * @param gzipBlockSize       block size of the parallel gzip compression
+     */
+    public OutputStream compress(OutputStream out, long length, int gzipBlockSize) throws IOException {
+        switch (this) {
+            case NONE:
+                return out;
+            case ZSTD:
+                return new ZstdOutputStream(out, level);
+            default:
+                if (ParallelGzipOutputStream.getThreadCount() > 1 && length > gzipBlockSize) {
+                    return new ParallelGzipOutputStream(out, level, gzipBlockSize);
+                }
+                return new GZIPOutputStream(out, GZIP_BUFFER_SIZE) {
+                    {
+                        def.setLevel(level);
+                    }
+                };
+        }
+    }
+
+    public static boolean isDecompressedOnDownload(String contentEncoding) {
+        return ZSTD.contentEncoding.equals(contentEncoding);
+    }
+
+    /**
+     * Undoes the compression of an object downloaded with the given Content-Encoding.
+     * Only zstd is decoded, gzip objects have always been kept compressed on download.
+     */
+    public static InputStream decompress(InputStream in, String contentEncoding) throws IOException {
+        if (isDecompressedOnDownload(contentEncoding)) {
+            return new ZstdInputStream(in);
+        }
+        return in;
+    }
+}
@@ -0,0 +1,319 @@
+package hudson.plugins.s3;
+
+import hudson.util.AtomicFileWriter;
+import jenkins.model.Jenkins;
+
+import java.io.BufferedReader;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.RandomAccessFile;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+/**
+ * Reference counts of the blobs of content-addressed artifacts, i.e. the number of builds whose
+ * artifacts are stored in each blob.
+ *
+ * All publishes and deletions go through the controller, so the counts are kept there. A blob is
+ * referenced before its upload is even checked. Once its last reference is released it's deleted
+ * outside of the lock, and a publish referencing it meanwhile waits until it's gone, so a publish never
+ * reuses a blob which is about to be deleted. Blobs which aren't in the index, e.g. because it was lost,
+ * are never deleted.
+ *
+ * Changed counts are appended to the index file, which is only rewritten once most of its lines are outdated.
+ */
+public final class ContentStore {
+    private static final Logger LOGGER = Logger.getLogger(ContentStore.class.getName());
+    private static final int MIN_COMPACTED_LINES = 1024;
+
+    private static ContentStore instance;
+
+    private final File file;
+    private Map<String, Integer> references;
+    private int lines; // in the file, including outdated ones
+    private final Set<String> deleting = new HashSet<>();
+
+    /**
+     * Deletes the blobs which aren't referenced anymore.
+     */
+    public interface BlobDeleter {
+        /**
+         * @return the MD5 sums of the blobs which couldn't be deleted
+         */
+        List<String> delete(String bucketName, List<String> md5s) throws IOException;
+    }
+
+    /**
+     * Records the outcome of a release before its removed references are persisted.
+     */
+    public interface ReleaseJournal {
+        /**
+         * Called with the lock held, if it fails no reference is removed.
+         *
+         * @param unreferenced the MD5 sums of the blobs whose last reference is being removed
+         */
+        void releasing(List<String> unreferenced) throws IOException;
+    }
+
+    ContentStore(File file) {
+        this.file = file;
+    }
+
+    public static synchronized ContentStore get() {
+        if (instance == null) {
+            instance = new ContentStore(new File(Jenkins.get().getRootDir(), ContentStore.class.getName() + ".refs"));
+        }
+        return instance;
+    }
+
+    /**
+     * Adds a reference to the blob of each MD5, once for every time it's listed.
+     * Waits while any of the blobs is being deleted.
+     */
+    public synchronized void reference(String bucketName, Collection<String> md5s) throws IOException, InterruptedException {
+        while (isDeleting(bucketName, md5s)) {
+            wait();
+        }
+        final Map<String, Integer> refs = load();
+        final Map<String, Integer> changed = new LinkedHashMap<>();
+        for (String md5 : md5s) {
+            final String key = key(bucketName, md5);
+            final Integer count = refs.get(key);
+            refs.put(key, count != null ? count + 1 : 1);
+            changed.put(key, refs.get(key));
+        }
+        persist(changed);
+    }
+
+    /**
+     * Removes a reference to the blob of each MD5 and deletes the blobs whose last reference was removed.
+     *
+     * @return the MD5 sums of the unreferenced blobs which couldn't be deleted, see {@link #deleteUnreferenced}
+     */
+    public List<String> release(String bucketName, Collection<String> md5s, BlobDeleter deleter) throws IOException {
+        final List<String> unreferenced = new ArrayList<>();
+        release(bucketName, md5s, new ReleaseJournal() {
+            @Override
+            public void releasing(List<String> released) {
+                unreferenced.addAll(released);
+            }
+        });
+        return deleteUnreferenced(bucketName, unreferenced, deleter);
+    }
+
+    /**
+     * Removes a reference to the blob of each MD5, without deleting anything. The journal records which
+     * blobs are left unreferenced before the removed references are persisted, so a caller which has to
+     * release exactly once can persist that first: if removing the references fails afterwards, the
+     * blobs are leaked rather than released twice.
+     */
+    public synchronized void release(String bucketName, Collection<String> md5s, ReleaseJournal journal) throws IOException {
+        final Map<String, Integer> refs = load();
+        final Map<String, Integer> changed = new LinkedHashMap<>();
+        final List<String> unreferenced = new ArrayList<>();
+        for (String md5 : md5s) {
+            final String key = key(bucketName, md5);
+            final Integer count = changed.containsKey(key) ? changed.get(key) : refs.get(key);
+            if (count == null || count == 0) {
+                LOGGER.fine("Not deleting unknown blob " + md5 + " of " + bucketName);
+            } else if (count > 1) {
+                changed.put(key, count - 1);
+            } else {
+                changed.put(key, 0);
+                unreferenced.add(md5);
+            }
+        }
+        journal.releasing(unreferenced);
+        for (Map.Entry<String, Integer> entry : changed.entrySet()) {
+            if (entry.getValue() > 0) {
+                refs.put(entry.getKey(), entry.getValue());
+            } else {
+                refs.remove(entry.getKey());
+            }
+        }
+        persist(changed);
+    }
+
+    /**
+     * Deletes the released blobs whose deletion failed before, unless they were referenced again meanwhile.
+     *
+     * @return the MD5 sums of the blobs which couldn't be deleted
+     */
+    public List<String> deleteUnreferenced(String bucketName, Collection<String> md5s, BlobDeleter deleter) throws IOException {
+        final List<String> unreferenced = new ArrayList<>();
+        synchronized (this) {
+            final Map<String, Integer> refs = load();
+            for (String md5 : md5s) {
+                final String key = key(bucketName, md5);
+                // a blob which is being deleted already is left to that deletion
+                if (!refs.containsKey(key) && !deleting.contains(key)) {
+                    unreferenced.add(md5);
+                }
+            }
+            startDeleting(bucketName, unreferenced);
+        }
+        return delete(bucketName, unreferenced, deleter);
+    }
+
+    /**
+     * Number of builds referencing the blob.
+     */
+    public synchronized int getReferences(String bucketName, String md5) throws IOException {
+        final Integer count = load().get(key(bucketName, md5));
+        return count != null ? count : 0;
+    }
+
+    private boolean isDeleting(String bucketName, Collection<String> md5s) {
+        if (!deleting.isEmpty()) {
+            for (String md5 : md5s) {
+                if (deleting.contains(key(bucketName, md5))) {
+                    return true;
+                }
+            }
+        }
+        return false;
+    }
+
+    private void startDeleting(String bucketName, List<String> md5s) {
+        for (String md5 : md5s) {
+            deleting.add(key(bucketName, md5));
+        }
+    }
+
+    // runs without the lock, so publishes and releases of other blobs don't wait for S3
+    private List<String> delete(String bucketName, List<String> md5s, BlobDeleter deleter) throws IOException {
+        if (md5s.isEmpty()) {
+            return md5s;
+        }
+        try {
+            return deleter.delete(bucketName, md5s);
+        } finally {
+            synchronized (this) {
+                for (String md5 : md5s) {
+                    deleting.remove(key(bucketName, md5));
+                }
+                notifyAll();
+            }
+        }
+    }
+
+    private static String key(String bucketName, String md5) {
+        return md5 + '\t' + bucketName;
+    }
+
+    private Map<String, Integer> load() throws IOException {
+        if (references != null) {
+            return references;
+        }
+        references = new HashMap<>();
+        if (!file.exists()) {
+            return references;
+        }
+        truncatePartialLine();
+        lines = 0;
+        try (BufferedReader reader = new BufferedReader(new InputStreamReader(new FileInputStream(file), StandardCharsets.UTF_8))) {
+            String line;
+            while ((line = reader.readLine()) != null) {
+                lines++;
+                // <count> <md5> <bucket>, tab separated; a later line of the same blob replaces the earlier one
+                final String[] fields = line.split("\t", 3);
+                if (fields.length != 3) {
+                    LOGGER.log(Level.WARNING, "Ignoring corrupt line in " + file + ": " + line);
+                    continue;
+                }
+                try {
+                    final int count = Integer.parseInt(fields[0]);
+                    if (count > 0) {
+                        references.put(key(fields[2], fields[1]), count);
+                    } else {
+                        references.remove(key(fields[2], fields[1]));
+                    }
+                } catch (NumberFormatException e) {
+                    LOGGER.log(Level.WARNING, "Ignoring corrupt line in " + file + ": " + line);
+                }
+            }
+        }
+        return references;
+    }
+
+    /**
+     * Cuts off the last line of an append which was cut short, so it's neither read nor continued by the next append.
+     */
+    private void truncatePartialLine() throws IOException {
+        try (RandomAccessFile raf = new RandomAccessFile(file, "rw")) {
+            long end = raf.length();
+            while (end > 0) {
+                raf.seek(end - 1);
+                if (raf.read() == '\n') {
+                    break;
+                }
+                end--;
+            }
+            if (end < raf.length()) {
+                LOGGER.warning("Removing the incomplete last line of " + file);
+                raf.setLength(end);
+                raf.getFD().sync();
+            }
+        }
+    }
+
+    /**
+     * Appends the changed counts to the file, or rewrites it once most of its lines are outdated.
+     */
+    private void persist(Map<String, Integer> changed) throws IOException {
+        if (changed.isEmpty()) {
+            return;
+        }
+        try {
+            if (lines + changed.size() > Math.max(MIN_COMPACTED_LINES, 2 * references.size())) {
+                save();
+                lines = references.size();
+            } else {
+                append(changed);
+                lines += changed.size();
+            }
+        } catch (IOException e) {
+            // the counts are read from the file again
+            references = null;
+            throw e;
+        }
+    }
+
+    private void append(Map<String, Integer> changed) throws IOException {
+        final StringBuilder text = new StringBuilder();
+        for (Map.Entry<String, Integer> entry : changed.entrySet()) {
+            text.append(entry.getValue()).append('\t').append(entry.getKey()).append('\n');
+        }
+        try (FileOutputStream out = new FileOutputStream(file, true)) {
+            out.write(text.toString().getBytes(StandardCharsets.UTF_8));
+            out.getFD().sync();
+        }
+    }
+
+    private void save() throws IOException {
+        final AtomicFileWriter writer = new AtomicFileWriter(file.toPath(), StandardCharsets.UTF_8);
+        try {
+            for (Map.Entry<String, Integer> entry : references.entrySet()) {
+                writer.write(Integer.toString(entry.getValue()));
+                writer.write('\t');
+                writer.write(entry.getKey());
+                writer.write('\n');
+            }
+            writer.commit();
+        } finally {
+            writer.abort();
+        }
+    }
+}
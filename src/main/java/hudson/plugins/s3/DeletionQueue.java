@@ -0,0 +1,366 @@
+package hudson.plugins.s3;
+
+import hudson.init.InitMilestone;
+import hudson.init.Initializer;
+import hudson.util.AtomicFileWriter;
+import hudson.util.DaemonThreadFactory;
+import hudson.util.NamingThreadFactory;
+import jenkins.model.Jenkins;
+
+import java.io.BufferedReader;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Deque;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+/**
+ * Deletes the S3 objects of deleted builds in the background, so deleting or rotating builds doesn't
+ * wait for S3.
+ *
+ * Every task is written to its own file under JENKINS_HOME/s3-deletion-queue before it's scheduled
+ * and removed once it's done, so pending deletions survive restarts. A few workers run the tasks at
+ * a limited rate of requests, and retry the keys which failed with an increasing delay.
+ */
+public final class DeletionQueue {
+    private static final Logger LOGGER = Logger.getLogger(DeletionQueue.class.getName());
+
+    private static final int WORKERS = Integer.getInteger(DeletionQueue.class.getName() + ".workers", 2);
+    private static final int REQUESTS_PER_SECOND = Integer.getInteger(DeletionQueue.class.getName() + ".requestsPerSecond", 10);
+    private static final int MAX_ATTEMPTS = Integer.getInteger(DeletionQueue.class.getName() + ".maxAttempts", 10);
+    private static final long FIRST_RETRY_DELAY = TimeUnit.MINUTES.toMillis(1);
+    private static final long MAX_RETRY_DELAY = TimeUnit.HOURS.toMillis(1);
+    private static final long THROUGHPUT_WINDOW = TimeUnit.MINUTES.toMillis(1);
+    private static final String SUFFIX = ".task";
+
+    private static DeletionQueue instance;
+
+    /**
+     * Runs a task, usually with the profile it names.
+     */
+    interface TaskRunner {
+        /**
+         * Removes the references of a {@link DeletionTask.Kind#RELEASE_BLOBS} task to its blobs, without deleting them.
+         * The journal gets the blobs which aren't referenced anymore before the removal is persisted.
+         */
+        void release(DeletionTask task, ContentStore.ReleaseJournal journal) throws IOException;
+
+        /**
+         * @return the keys which couldn't be deleted
+         */
+        List<String> run(DeletionTask task) throws IOException;
+    }
+
+    private final File dir;
+    private final TaskRunner runner;
+    private final TokenBucket limiter;
+    private final long firstRetryDelay;
+    private final ScheduledExecutorService executor;
+    private final Map<String, DeletionTask> pending = new ConcurrentHashMap<>();
+    private final AtomicLong sequence = new AtomicLong();
+    private final AtomicLong deletedKeys = new AtomicLong();
+    private final AtomicLong abandonedKeys = new AtomicLong();
+    // (time, keys) of the recently finished attempts
+    private final Deque<long[]> recent = new ArrayDeque<>();
+
+    DeletionQueue(File dir, TaskRunner runner, int workers, TokenBucket limiter, long firstRetryDelay) {
+        this.dir = dir;
+        this.runner = runner;
+        this.limiter = limiter;
+        this.firstRetryDelay = firstRetryDelay;
+        this.executor = new ScheduledThreadPoolExecutor(Math.max(workers, 1),
+                new NamingThreadFactory(new DaemonThreadFactory(), "S3 deletion queue"));
+    }
+
+    public static synchronized DeletionQueue get() {
+        if (instance == null) {
+            final TaskRunner runner = new TaskRunner() {
+                @Override
+                public void release(DeletionTask task, ContentStore.ReleaseJournal journal) throws IOException {
+                    ContentStore.get().release(task.getBucket(), task.getKeys(), journal);
+                }
+
+                @Override
+                public List<String> run(DeletionTask task) throws IOException {
+                    return S3BucketPublisher.getProfile(task.getProfile()).delete(task);
+                }
+            };
+            instance = new DeletionQueue(new File(Jenkins.get().getRootDir(), "s3-deletion-queue"), runner,
+                    WORKERS, new TokenBucket(REQUESTS_PER_SECOND, REQUESTS_PER_SECOND), FIRST_RETRY_DELAY);
+        }
+        return instance;
+    }
+
+    @Initializer(after = InitMilestone.JOB_LOADED)
+    public static void resumePendingDeletions() {
+        get().load();
+    }
+
+    /**
+     * Persists the tasks and schedules them, returns before they are run.
+     */
+    public void schedule(List<DeletionTask> tasks) throws IOException {
+        for (DeletionTask task : tasks) {
+            final String id = System.currentTimeMillis() + "-" + sequence.incrementAndGet();
+            write(id, task);
+            pending.put(id, task);
+            submit(id, 0);
+        }
+    }
+
+    /**
+     * Schedules the tasks which were persisted before a restart.
+     */
+    void load() {
+        final File[] files = dir.listFiles();
+        if (files == null) {
+            return;
+        }
+        Arrays.sort(files);
+        for (File file : files) {
+            final String name = file.getName();
+            if (!name.endsWith(SUFFIX)) {
+                continue;
+            }
+            final String id = name.substring(0, name.length() - SUFFIX.length());
+            if (pending.containsKey(id)) {
+                continue;
+            }
+            try {
+                pending.put(id, read(file));
+                submit(id, 0);
+            } catch (IOException | RuntimeException e) {
+                LOGGER.log(Level.WARNING, "Ignoring corrupt deletion task " + file, e);
+            }
+        }
+        LOGGER.fine("Resumed " + pending.size() + " pending S3 deletion tasks");
+    }
+
+    public int getWorkers() {
+        return ((ScheduledThreadPoolExecutor) executor).getCorePoolSize();
+    }
+
+    public int getPendingTasks() {
+        return pending.size();
+    }
+
+    public long getPendingKeys() {
+        long keys = 0;
+        for (DeletionTask task : pending.values()) {
+            keys += task.getKeys().size();
+        }
+        return keys;
+    }
+
+    /**
+     * Keys deleted (or released, for content-addressed blobs) since startup.
+     */
+    public long getDeletedKeys() {
+        return deletedKeys.get();
+    }
+
+    /**
+     * Keys given up on after too many failed attempts since startup.
+     */
+    public long getAbandonedKeys() {
+        return abandonedKeys.get();
+    }
+
+    /**
+     * Keys deleted in the last minute.
+     */
+    public long getDeletedKeysPerMinute() {
+        synchronized (recent) {
+            expire(System.currentTimeMillis());
+            long keys = 0;
+            for (long[] entry : recent) {
+                keys += entry[1];
+            }
+            return keys;
+        }
+    }
+
+    private void submit(final String id, long delay) {
+        executor.schedule(new Runnable() {
+            @Override
+            public void run() {
+                process(id);
+            }
+        }, delay, TimeUnit.MILLISECONDS);
+    }
+
+    private void process(String id) {
+        DeletionTask task = pending.get(id);
+        if (task == null) {
+            return;
+        }
+
+        List<String> failedKeys;
+        try {
+            if (task.getKind() == DeletionTask.Kind.RELEASE_BLOBS) {
+                // a failure before the release retries it, one after it only retries the deletion
+                task = release(id, task);
+                if (task.getKeys().isEmpty()) {
+                    remove(id);
+                    return;
+                }
+            }
+            limiter.acquire(1);
+            failedKeys = runner.run(task);
+        } catch (InterruptedException e) {
+            // shutting down, the task stays on disk
+            Thread.currentThread().interrupt();
+            return;
+        } catch (IOException | RuntimeException e) {
+            LOGGER.log(Level.WARNING, "Failed to run the S3 deletion task " + task, e);
+            failedKeys = task.getKeys();
+        }
+        recordDeleted(task.getKeys().size() - failedKeys.size());
+
+        if (failedKeys.isEmpty()) {
+            remove(id);
+            return;
+        }
+        final DeletionTask retry = task.retry(failedKeys);
+        if (retry.getAttempts() >= MAX_ATTEMPTS) {
+            LOGGER.severe("Giving up on " + retry + ", these keys have to be deleted manually: " + failedKeys);
+            abandonedKeys.addAndGet(failedKeys.size());
+            remove(id);
+            return;
+        }
+        try {
+            write(id, retry);
+        } catch (IOException e) {
+            LOGGER.log(Level.WARNING, "Failed to persist the retry of " + retry, e);
+        }
+        pending.put(id, retry);
+        submit(id, retryDelay(retry.getAttempts()));
+    }
+
+    /**
+     * Releases the references of the task, which is replaced by the deletion of the unreferenced blobs.
+     *
+     * The replacement is persisted before the references are removed, so a task is never released twice, which
+     * would delete blobs other builds still reference. If removing the references fails after that, the blobs
+     * whose references weren't removed are leaked instead.
+     */
+    private DeletionTask release(final String id, final DeletionTask task) throws IOException {
+        final List<DeletionTask> released = new ArrayList<>(1);
+        try {
+            runner.release(task, new ContentStore.ReleaseJournal() {
+                @Override
+                public void releasing(List<String> unreferenced) throws IOException {
+                    final DeletionTask replacement = task.released(unreferenced);
+                    write(id, replacement);
+                    released.add(replacement);
+                }
+            });
+        } catch (IOException | RuntimeException e) {
+            if (released.isEmpty()) {
+                // nothing was released, the task is retried as it is
+                throw e;
+            }
+            LOGGER.log(Level.WARNING, "Failed to persist the release of " + task + ", it's not released again", e);
+        }
+        if (released.isEmpty()) {
+            throw new IllegalStateException("The release of " + task + " wasn't recorded");
+        }
+        final DeletionTask replacement = released.get(0);
+        recordDeleted(task.getKeys().size() - replacement.getKeys().size());
+        pending.put(id, replacement);
+        return replacement;
+    }
+
+    /**
+     * The first retry waits the first delay, each following one twice as long up to an hour.
+     */
+    private long retryDelay(int attempts) {
+        final int doublings = Math.min(attempts - 1, 30);
+        return Math.min(firstRetryDelay << doublings, Math.max(MAX_RETRY_DELAY, firstRetryDelay));
+    }
+
+    private void recordDeleted(int keys) {
+        if (keys <= 0) {
+            return;
+        }
+        deletedKeys.addAndGet(keys);
+        final long now = System.currentTimeMillis();
+        synchronized (recent) {
+            expire(now);
+            recent.addLast(new long[] {now, keys});
+        }
+    }
+
+    private void expire(long now) {
+        while (!recent.isEmpty() && recent.peekFirst()[0] < now - THROUGHPUT_WINDOW) {
+            recent.removeFirst();
+        }
+    }
+
+    private void remove(String id) {
+        pending.remove(id);
+        final File file = new File(dir, id + SUFFIX);
+        if (!file.delete() && file.exists()) {
+            LOGGER.warning("Failed to delete " + file + ", the task will be run again after a restart");
+        }
+    }
+
+    private void write(String id, DeletionTask task) throws IOException {
+        if (!dir.isDirectory() && !dir.mkdirs()) {
+            throw new IOException("Failed to create " + dir);
+        }
+        final AtomicFileWriter writer = new AtomicFileWriter(new File(dir, id + SUFFIX).toPath(), StandardCharsets.UTF_8);
+        try {
+            // <kind> <attempts> <profile> <region> <bucket>, tab separated, then one key per line
+            writer.write(task.getKind() + "\t" + task.getAttempts() + "\t" + field(task.getProfile()) + "\t"
+                    + field(task.getRegion()) + "\t" + task.getBucket() + "\n");
+            for (String key : task.getKeys()) {
+                writer.write(key);
+                writer.write('\n');
+            }
+            writer.commit();
+        } finally {
+            writer.abort();
+        }
+    }
+
+    private static DeletionTask read(File file) throws IOException {
+        try (BufferedReader reader = new BufferedReader(new InputStreamReader(new FileInputStream(file), StandardCharsets.UTF_8))) {
+            final String header = reader.readLine();
+            final String[] fields = header != null ? header.split("\t", 5) : new String[0];
+            if (fields.length != 5) {
+                throw new IOException("Invalid header: " + header);
+            }
+            final List<String> keys = new ArrayList<>();
+            String line;
+            while ((line = reader.readLine()) != null) {
+                if (!line.isEmpty()) {
+                    keys.add(line);
+                }
+            }
+            return new DeletionTask(unfield(fields[2]), unfield(fields[3]), fields[4],
+                    DeletionTask.Kind.valueOf(fields[0]), keys, Integer.parseInt(fields[1]));
+        }
+    }
+
+    private static String field(String value) {
+        return value != null ? value : "";
+    }
+
+    private static String unfield(String value) {
+        return value.isEmpty() ? null : value;
+    }
+}
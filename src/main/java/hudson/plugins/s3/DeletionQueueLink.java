@@ -0,0 +1,34 @@
+package hudson.plugins.s3;
+
+import hudson.Extension;
+import hudson.model.ManagementLink;
+
+/**
+ * Shows the backlog and throughput of the {@link DeletionQueue} under Manage Jenkins.
+ */
+@Extension
+public final class DeletionQueueLink extends ManagementLink {
+    @Override
+    public String getIconFileName() {
+        return "edit-delete.png";
+    }
+
+    @Override
+    public String getDisplayName() {
+        return "S3 Deletion Queue";
+    }
+
+    @Override
+    public String getDescription() {
+        return "Pending deletions of the S3 artifacts of deleted builds.";
+    }
+
+    @Override
+    public String getUrlName() {
+        return "s3-deletion-queue";
+    }
+
+    public DeletionQueue getQueue() {
+        return DeletionQueue.get();
+    }
+}
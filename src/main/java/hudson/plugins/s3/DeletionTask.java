@@ -0,0 +1,94 @@
+package hudson.plugins.s3;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * Objects of one bucket which are to be deleted by the {@link DeletionQueue}, at most one multi-object delete request's worth.
+ */
+public final class DeletionTask {
+    public enum Kind {
+        /**
+         * Keys of objects in the bucket.
+         */
+        OBJECTS,
+        /**
+         * MD5 sums of content-addressed blobs a deleted build referenced, they are released and deleted once unreferenced.
+         */
+        RELEASE_BLOBS,
+        /**
+         * MD5 sums of already released blobs, they are deleted unless they were referenced again meanwhile.
+         */
+        UNREFERENCED_BLOBS
+    }
+
+    private final String profile;
+    private final String region;
+    private final String bucket;
+    private final Kind kind;
+    private final List<String> keys;
+    private final int attempts;
+
+    /**
+     * @param bucket the S3 bucket name for {@link Kind#OBJECTS}, the bucket name of the artifacts for blobs
+     */
+    public DeletionTask(String profile, String region, String bucket, Kind kind, List<String> keys) {
+        this(profile, region, bucket, kind, keys, 0);
+    }
+
+    DeletionTask(String profile, String region, String bucket, Kind kind, List<String> keys, int attempts) {
+        this.profile = profile;
+        this.region = region;
+        this.bucket = bucket;
+        this.kind = kind;
+        this.keys = new ArrayList<>(keys);
+        this.attempts = attempts;
+    }
+
+    public String getProfile() {
+        return profile;
+    }
+
+    public String getRegion() {
+        return region;
+    }
+
+    public String getBucket() {
+        return bucket;
+    }
+
+    public Kind getKind() {
+        return kind;
+    }
+
+    public List<String> getKeys() {
+        return Collections.unmodifiableList(keys);
+    }
+
+    /**
+     * Number of failed attempts so far.
+     */
+    public int getAttempts() {
+        return attempts;
+    }
+
+    /**
+     * The task retrying the keys which failed to be deleted.
+     */
+    public DeletionTask retry(List<String> failedKeys) {
+        return new DeletionTask(profile, region, bucket, kind, failedKeys, attempts + 1);
+    }
+
+    /**
+     * The task deleting the blobs whose last reference this {@link Kind#RELEASE_BLOBS} task removed.
+     */
+    public DeletionTask released(List<String> unreferenced) {
+        return new DeletionTask(profile, region, bucket, Kind.UNREFERENCED_BLOBS, unreferenced, attempts);
+    }
+
+    @Override
+    public String toString() {
+        return kind + " of " + bucket + " (" + keys.size() + " keys, profile " + profile + ", " + attempts + " failed attempts)";
+    }
+}
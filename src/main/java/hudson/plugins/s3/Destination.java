@@ -65,4 +65,32 @@ public class Destination implements Serializable {
   {
     return newFromRun(run, artifact.getBucket(), artifact.getName(), artifact.useFullProjectName());
   }
+
+  /**
+   * Where the artifact of the record is stored, in the build's directory or in the content store.
+   */
+  public static Destination newFromRecord(Run run, FingerprintRecord record)
+  {
+    final S3Artifact artifact = record.getArtifact();
+    if (artifact.isContentAddressed()) {
+      return newFromContentHash(artifact.getBucket(), record.getFingerprint());
+    }
+    return newFromRun(run, artifact);
+  }
+
+  /**
+   * The blob of a content-addressed artifact, shared by all builds which published the same content to the bucket.
+   */
+  public static Destination newFromContentHash(String bucketName, String md5)
+  {
+    return new Destination(bucketName, "blobs/" + md5.substring(0, 2) + "/" + md5);
+  }
+
+  /**
+   * The manifest listing the content-addressed artifacts which the run published to the bucket.
+   */
+  public static Destination newManifestFromRun(Run run, String bucketName)
+  {
+    return new Destination(bucketName, "manifests/" + run.getParent().getFullName() + "/" + run.getNumber() + ".md5");
+  }
 }
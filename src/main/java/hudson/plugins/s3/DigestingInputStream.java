@@ -0,0 +1,98 @@
+package hudson.plugins.s3;
+
+import java.io.FilterInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.security.MessageDigest;
+
+/**
+ * Computes the MD5 sum of the bytes passing through, so a file is read only once while it is transferred.
+ *
+ * Unlike {@link java.security.DigestInputStream} this stream supports {@link #mark(int)} and {@link #reset()}:
+ * bytes which are read again after a reset (e.g. when the AWS SDK retries a request) are not digested twice.
+ */
+public final class DigestingInputStream extends FilterInputStream {
+    private static final int SKIP_BUFFER_SIZE = 8192;
+
+    private final MessageDigest digest = MD5.newDigest();
+    private long position;
+    // bytes before this offset went into the digest already, always >= position
+    private long digested;
+    private long mark = -1;
+
+    public DigestingInputStream(InputStream in) {
+        super(in);
+    }
+
+    @Override
+    public int read() throws IOException {
+        final int b = in.read();
+        if (b >= 0) {
+            if (position == digested) {
+                digest.update((byte) b);
+                digested++;
+            }
+            position++;
+        }
+        return b;
+    }
+
+    @Override
+    public int read(byte[] buffer, int off, int len) throws IOException {
+        final int read = in.read(buffer, off, len);
+        if (read > 0) {
+            final long end = position + read;
+            if (end > digested) {
+                final int alreadyDigested = (int) (digested - position);
+                digest.update(buffer, off + alreadyDigested, read - alreadyDigested);
+                digested = end;
+            }
+            position = end;
+        }
+        return read;
+    }
+
+    @Override
+    public long skip(long n) throws IOException {
+        // skipped bytes still have to go into the digest
+        final byte[] buffer = new byte[(int) Math.min(SKIP_BUFFER_SIZE, Math.max(n, 0))];
+        long skipped = 0;
+        while (skipped < n) {
+            final int read = read(buffer, 0, (int) Math.min(buffer.length, n - skipped));
+            if (read < 0) {
+                break;
+            }
+            skipped += read;
+        }
+        return skipped;
+    }
+
+    @Override
+    public synchronized void mark(int readlimit) {
+        in.mark(readlimit);
+        mark = position;
+    }
+
+    @Override
+    public synchronized void reset() throws IOException {
+        if (mark < 0) {
+            throw new IOException("Mark not set");
+        }
+        in.reset();
+        position = mark;
+    }
+
+    /**
+     * Number of distinct bytes read from the underlying stream.
+     */
+    public long getByteCount() {
+        return digested;
+    }
+
+    /**
+     * Hex encoded MD5 of everything read so far. The stream can still be read afterwards.
+     */
+    public String getMd5() {
+        return MD5.currentHex(digest);
+    }
+}
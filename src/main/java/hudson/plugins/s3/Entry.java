@@ -8,6 +8,7 @@ import hudson.model.Describable;
 import hudson.model.Descriptor;
 import hudson.util.ListBoxModel;
 import org.kohsuke.stapler.DataBoundConstructor;
+import org.kohsuke.stapler.DataBoundSetter;
 
 import java.util.List;
 
@@ -70,10 +71,25 @@ public final class Entry implements Describable<Entry> {
     public boolean flatten;
 
     /**
-    * use GZIP to compress files
+    * use GZIP to compress files, superseded by {@link #compression}
     */
     public boolean gzipFiles;
 
+    /**
+     * Codec and level to compress files with
+     */
+    public Compression compression;
+
+    /**
+     * Don't upload files whose content already is at the destination, only applies to uncompressed files
+     */
+    public boolean skipUnchanged;
+
+    /**
+     * Store managed artifacts under their content hash, shared by all builds, instead of in the build's directory
+     */
+    public boolean contentAddressed;
+
     /**
      * show content of entity directly in browser
      */
@@ -106,11 +122,35 @@ public final class Entry implements Describable<Entry> {
         this.useServerSideEncryption = useServerSideEncryption;
         this.flatten = flatten;
         this.gzipFiles = gzipFiles;
+        this.compression = Compression.fromGzipFiles(gzipFiles);
         this.keepForever = keepForever;
         this.userMetadata = userMetadata;
         this.showDirectlyInBrowser = showDirectlyInBrowser;
     }
 
+    /**
+     * Entries saved before the compression option existed only have {@link #gzipFiles}.
+     */
+    public Compression getCompression() {
+        return compression != null ? compression : Compression.fromGzipFiles(gzipFiles);
+    }
+
+    @DataBoundSetter
+    public void setCompression(Compression compression) {
+        this.compression = compression != null ? compression : Compression.fromGzipFiles(gzipFiles);
+        this.gzipFiles = this.compression.isGzip();
+    }
+
+    @DataBoundSetter
+    public void setSkipUnchanged(boolean skipUnchanged) {
+        this.skipUnchanged = skipUnchanged;
+    }
+
+    @DataBoundSetter
+    public void setContentAddressed(boolean contentAddressed) {
+        this.contentAddressed = contentAddressed;
+    }
+
     @Override
     public Descriptor<Entry> getDescriptor() {
         return DESCRIPOR;
@@ -141,6 +181,14 @@ public final class Entry implements Describable<Entry> {
             }
             return model;
         }
+
+        public ListBoxModel doFillCompressionItems() {
+            final ListBoxModel model = new ListBoxModel();
+            for (Compression c : Compression.values()) {
+                model.add(c.getDisplayName(), c.name());
+            }
+            return model;
+        }
     }
 
 }
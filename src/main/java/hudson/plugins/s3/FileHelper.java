@@ -7,6 +7,10 @@ import java.io.File;
 
 public class FileHelper {
 
+    /**
+     * Whether the name matches one of the comma separated include patterns and none of the exclude patterns.
+     * Use a {@link FileMatcher} to filter many names with the same patterns.
+     */
     @SuppressFBWarnings("DMI_HARDCODED_ABSOLUTE_FILENAME")
     public static boolean selected(String includeFilter, String excludeFilter, String filename) {
         if (includeFilter == null) {
@@ -0,0 +1,84 @@
+package hudson.plugins.s3;
+
+import hudson.FilePath;
+
+import java.io.Serializable;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * The files matching one search path of a workspace, with their sizes and modification times, as
+ * collected on the node of the workspace by a single scan. Uploads use it instead of asking the node
+ * about every file.
+ */
+public final class FileManifest implements Serializable {
+    private static final long serialVersionUID = 1L;
+
+    private final String searchPath;
+    private final List<Entry> entries;
+
+    public FileManifest(String searchPath, List<Entry> entries) {
+        this.searchPath = searchPath;
+        this.entries = Collections.unmodifiableList(new ArrayList<>(entries));
+    }
+
+    /**
+     * The Ant pattern the files matched.
+     */
+    public String getSearchPath() {
+        return searchPath;
+    }
+
+    public List<Entry> getEntries() {
+        return entries;
+    }
+
+    public boolean isEmpty() {
+        return entries.isEmpty();
+    }
+
+    /**
+     * A matched file, as it was when the workspace was scanned.
+     */
+    public static final class Entry implements Serializable {
+        private static final long serialVersionUID = 1L;
+
+        private final FilePath file;
+        private final long length;
+        private final long lastModified;
+        private final boolean directory;
+
+        public Entry(FilePath file, long length, long lastModified, boolean directory) {
+            this.file = file;
+            this.length = length;
+            this.lastModified = lastModified;
+            this.directory = directory;
+        }
+
+        public FilePath getFile() {
+            return file;
+        }
+
+        public String getName() {
+            return file.getName();
+        }
+
+        public long getLength() {
+            return length;
+        }
+
+        public long getLastModified() {
+            return lastModified;
+        }
+
+        public boolean isDirectory() {
+            return directory;
+        }
+
+        @Override
+        public String toString() {
+            return file.getRemote() + " (" + length + " bytes)";
+        }
+    }
+}
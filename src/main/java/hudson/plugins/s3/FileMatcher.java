@@ -0,0 +1,115 @@
+package hudson.plugins.s3;
+
+import org.apache.tools.ant.types.selectors.TokenizedPath;
+import org.apache.tools.ant.types.selectors.TokenizedPattern;
+import org.apache.tools.ant.util.FileUtils;
+
+import java.io.File;
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+
+/**
+ * The include and exclude filters of {@link FileHelper#selected(String, String, String)}, parsed once to filter
+ * many names. It selects exactly the same names: the patterns are tokenized with Ant's own rules, and names
+ * without wildcards are looked up in a hash set instead of being matched one by one.
+ */
+public final class FileMatcher {
+    private static final String DOUBLE_SEPARATOR = File.separator + File.separator;
+
+    private final Patterns includes;
+    private final Patterns excludes;
+
+    private FileMatcher(Patterns includes, Patterns excludes) {
+        this.includes = includes;
+        this.excludes = excludes;
+    }
+
+    /**
+     * @param includeFilter comma separated Ant patterns of the names to select, null selects nothing
+     * @param excludeFilter comma separated Ant patterns of the names to leave out, may be null
+     */
+    public static FileMatcher compile(String includeFilter, String excludeFilter) {
+        return new FileMatcher(includeFilter == null ? null : new Patterns(includeFilter),
+                excludeFilter == null ? null : new Patterns(excludeFilter));
+    }
+
+    public boolean matches(String filename) {
+        if (includes == null) {
+            return false;
+        }
+        if (excludes != null && excludes.matches(filename)) {
+            return false;
+        }
+        return includes.matches(filename);
+    }
+
+    /**
+     * Whether the name tokenizes to itself: relative, without empty path segments. Such names match
+     * a pattern without wildcards if and only if they are equal to it.
+     */
+    static boolean isCanonical(String name) {
+        if (name.isEmpty()) {
+            return true;
+        }
+        return name.charAt(0) != File.separatorChar && name.charAt(name.length() - 1) != File.separatorChar
+                && !name.contains(DOUBLE_SEPARATOR) && !FileUtils.isAbsolutePath(name);
+    }
+
+    private static final class Patterns {
+        /**
+         * Canonical patterns without wildcards.
+         */
+        private final Set<String> names = new HashSet<>();
+        /**
+         * All other patterns, the ones canonical names have to be matched against.
+         */
+        private final List<TokenizedPattern> others = new ArrayList<>();
+        /**
+         * All patterns, for names which aren't canonical.
+         */
+        private final List<TokenizedPattern> all = new ArrayList<>();
+
+        Patterns(String filter) {
+            for (String pattern : filter.split(",")) {
+                final String normalized = normalize(pattern.trim());
+                final TokenizedPattern tokenized = new TokenizedPattern(normalized);
+                all.add(tokenized);
+                if (normalized.indexOf('*') < 0 && normalized.indexOf('?') < 0 && isCanonical(normalized)) {
+                    names.add(normalized);
+                } else {
+                    others.add(tokenized);
+                }
+            }
+        }
+
+        boolean matches(String filename) {
+            if (isCanonical(filename)) {
+                return names.contains(filename) || matchesAny(others, filename);
+            }
+            return matchesAny(all, filename);
+        }
+
+        private static boolean matchesAny(List<TokenizedPattern> patterns, String filename) {
+            if (patterns.isEmpty()) {
+                return false;
+            }
+            final TokenizedPath path = new TokenizedPath(filename);
+            for (TokenizedPattern pattern : patterns) {
+                if (pattern.matchPath(path, true)) {
+                    return true;
+                }
+            }
+            return false;
+        }
+
+        /**
+         * Like {@link org.apache.tools.ant.types.selectors.FilenameSelector#setName(String)}.
+         */
+        private static String normalize(String pattern) {
+            final String normalized = pattern.replace('/', File.separatorChar).replace('\\', File.separatorChar);
+            return normalized.endsWith(File.separator) ? normalized + "**" : normalized;
+        }
+    }
+}
@@ -0,0 +1,44 @@
+package hudson.plugins.s3;
+
+import java.io.IOException;
+import java.util.List;
+
+/**
+ * Maps the scanned files of a publisher entry to their names in the bucket. Everything which only depends
+ * on the entry or the search path is resolved once, so naming a file takes a single substring.
+ */
+final class FileNameMapper {
+    private final String workspace;
+    private final boolean flatten;
+    private final boolean keepStructure;
+
+    /**
+     * @param workspace     remote path of the workspace the files were scanned in
+     * @param flatten       name the files without their directories
+     * @param keepStructure keep the directories the search paths matched in, see {@link S3Profile#isKeepStructure()}
+     */
+    FileNameMapper(String workspace, boolean flatten, boolean keepStructure) {
+        this.workspace = workspace;
+        this.flatten = flatten;
+        this.keepStructure = keepStructure;
+    }
+
+    /**
+     * Adds the files of the manifests and their names to the lists, in the order of the manifests.
+     *
+     * @throws IOException if a directory matched
+     */
+    void map(List<FileManifest> manifests, List<FileManifest.Entry> files, List<String> names) throws IOException {
+        for (FileManifest manifest : manifests) {
+            final int searchPathLength = flatten ? 0
+                    : FileHelper.getSearchPathLength(workspace, manifest.getSearchPath().trim(), keepStructure);
+            for (FileManifest.Entry file : manifest.getEntries()) {
+                if (file.isDirectory()) {
+                    throw new IOException(file.getFile() + " is a directory");
+                }
+                files.add(file);
+                names.add(flatten ? file.getName() : file.getFile().getRemote().substring(searchPathLength));
+            }
+        }
+    }
+}
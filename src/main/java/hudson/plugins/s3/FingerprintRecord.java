@@ -21,13 +21,28 @@ public class FingerprintRecord implements Serializable {
 
 
     public FingerprintRecord(boolean produced, String bucket, String name, String region, String md5sum) {
+        this(produced, bucket, name, region, md5sum, false);
+    }
+
+    /**
+     * @param contentAddressed whether the artifact is stored under its MD5, see {@link Destination#newFromContentHash(String, String)}
+     */
+    public FingerprintRecord(boolean produced, String bucket, String name, String region, String md5sum, boolean contentAddressed) {
+        this(produced, new S3Artifact(region, bucket, name, contentAddressed), md5sum);
+    }
+
+    FingerprintRecord(boolean produced, S3Artifact artifact, String md5sum) {
         this.produced = produced;
-        this.artifact = new S3Artifact(region, bucket, name);
+        this.artifact = artifact;
         this.md5sum = md5sum;
         this.showDirectlyInBrowser = false;
         this.keepForever = false;
     }
 
+    boolean isProduced() {
+        return produced;
+    }
+
     Fingerprint addRecord(Run<?, ?> run) throws IOException {
         final FingerprintMap map = Jenkins.getInstance().getFingerprintMap();
         return map.getOrCreate(produced ? run : null, artifact.getName(), md5sum);
@@ -0,0 +1,199 @@
+package hudson.plugins.s3;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.Serializable;
+import java.nio.file.FileAlreadyExistsException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.List;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+import java.util.regex.Pattern;
+
+/**
+ * Directory of downloaded files indexed by their MD5, kept on the node across builds.
+ *
+ * Files are copied into the cache, so the downloaded file keeps its own permissions and timestamps.
+ * They are restored from the cache as hard links if the file system supports them, otherwise as copies.
+ * Cached files are read-only, so a hard link can't be modified in place and corrupt the cache;
+ * replace the file instead. The last use of an entry is recorded in a marker file next to it,
+ * as touching the entry would change the timestamp of the files linked to it.
+ * The cache is best effort: failing to use it never fails a download.
+ */
+public final class LocalContentCache implements Serializable {
+    private static final long serialVersionUID = 1L;
+    private static final Logger LOGGER = Logger.getLogger(LocalContentCache.class.getName());
+    private static final Pattern MD5_HEX = Pattern.compile("[0-9a-f]{32}");
+
+    private final String dir;
+    private final long maxBytes;
+
+    /**
+     * @param dir      path of the cache directory on the node which uses it
+     * @param maxBytes size the cache is trimmed to, least recently used files first
+     */
+    public LocalContentCache(String dir, long maxBytes) {
+        this.dir = dir;
+        this.maxBytes = maxBytes;
+    }
+
+    public String getDir() {
+        return dir;
+    }
+
+    public long getMaxBytes() {
+        return maxBytes;
+    }
+
+    /**
+     * Whether the file already is a link to the cached content with the MD5, i.e. was restored from it before.
+     */
+    public boolean isLinked(String md5, File file) {
+        final File entry = entry(md5);
+        if (entry == null || !entry.isFile() || !file.isFile()) {
+            return false;
+        }
+        try {
+            return Files.isSameFile(entry.toPath(), file.toPath());
+        } catch (IOException e) {
+            return false;
+        }
+    }
+
+    /**
+     * Replaces the file with the cached content of the MD5.
+     *
+     * @return false if the content isn't cached
+     */
+    public boolean restore(String md5, File file) {
+        final File entry = entry(md5);
+        if (entry == null || !entry.isFile()) {
+            return false;
+        }
+        try {
+            final Path target = file.toPath();
+            Files.createDirectories(target.toAbsolutePath().getParent());
+            Files.deleteIfExists(target);
+            linkOrCopy(entry.toPath(), target);
+            // keeps the entry from being trimmed as least recently used
+            touch(usedMarker(entry));
+            return true;
+        } catch (IOException e) {
+            LOGGER.log(Level.WARNING, "Failed to restore " + file + " from " + entry, e);
+            return false;
+        }
+    }
+
+    /**
+     * Adds the file to the cache, its content must have the MD5.
+     */
+    public void store(String md5, File file) {
+        final File entry = entry(md5);
+        if (entry == null || entry.isFile()) {
+            return;
+        }
+        Path temp = null;
+        try {
+            final Path parent = Files.createDirectories(entry.toPath().getParent());
+            // copies the file under a temporary name first, so a partial entry is never visible
+            temp = parent.resolve(md5 + ".tmp" + System.nanoTime());
+            Files.copy(file.toPath(), temp);
+            if (!temp.toFile().setReadOnly()) {
+                LOGGER.fine("Failed to make " + temp + " read-only");
+            }
+            Files.move(temp, entry.toPath(), StandardCopyOption.ATOMIC_MOVE);
+            temp = null;
+        } catch (FileAlreadyExistsException e) {
+            // stored concurrently by another download of the same content
+        } catch (IOException e) {
+            LOGGER.log(Level.WARNING, "Failed to store " + file + " in " + dir, e);
+        } finally {
+            if (temp != null) {
+                temp.toFile().delete();
+            }
+        }
+    }
+
+    /**
+     * Deletes the least recently used files until the cache fits into its size.
+     */
+    public void trim() {
+        final File[] buckets = new File(dir).listFiles();
+        if (buckets == null) {
+            return;
+        }
+        final List<File> entries = new ArrayList<>();
+        long size = 0;
+        for (File bucket : buckets) {
+            final File[] files = bucket.listFiles();
+            if (files == null) {
+                continue;
+            }
+            for (File file : files) {
+                if (MD5_HEX.matcher(file.getName()).matches()) {
+                    entries.add(file);
+                    size += file.length();
+                }
+            }
+        }
+        if (size <= maxBytes) {
+            return;
+        }
+
+        Collections.sort(entries, new Comparator<File>() {
+            @Override
+            public int compare(File a, File b) {
+                return Long.compare(lastUsed(a), lastUsed(b));
+            }
+        });
+        for (File entry : entries) {
+            if (size <= maxBytes) {
+                break;
+            }
+            final long length = entry.length();
+            // hard links restored from the entry keep their content
+            if (entry.delete()) {
+                usedMarker(entry).delete();
+                size -= length;
+            }
+        }
+    }
+
+    private File entry(String md5) {
+        if (md5 == null || !MD5_HEX.matcher(md5).matches()) {
+            return null;
+        }
+        return new File(new File(dir, md5.substring(0, 2)), md5);
+    }
+
+    private static File usedMarker(File entry) {
+        return new File(entry.getParentFile(), entry.getName() + ".used");
+    }
+
+    // stored or last restored, whichever is later
+    private static long lastUsed(File entry) {
+        return Math.max(entry.lastModified(), usedMarker(entry).lastModified());
+    }
+
+    private static void touch(File marker) {
+        try {
+            Files.write(marker.toPath(), new byte[0]);
+        } catch (IOException e) {
+            LOGGER.log(Level.FINE, "Failed to record the use of " + marker, e);
+        }
+    }
+
+    private static void linkOrCopy(Path source, Path target) throws IOException {
+        try {
+            Files.createLink(target, source);
+        } catch (IOException | UnsupportedOperationException e) {
+            // e.g. the cache and the workspace are on different file systems, the copy is writable
+            Files.copy(source, target);
+        }
+    }
+}
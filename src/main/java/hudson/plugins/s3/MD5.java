@@ -1,12 +1,14 @@
 package hudson.plugins.s3;
 
 import hudson.FilePath;
+import org.apache.commons.codec.binary.Hex;
 import org.apache.commons.codec.digest.DigestUtils;
 
 import java.io.File;
 import java.io.FileInputStream;
 import java.io.IOException;
 import java.io.InputStream;
+import java.security.MessageDigest;
 
 public class MD5 {
     public static String generateFromFile(File file) throws IOException {
@@ -21,6 +23,29 @@ public class MD5 {
         }
     }
 
+    public static MessageDigest newDigest() {
+        return DigestUtils.getMd5Digest();
+    }
+
+    /**
+     * Completes the digest and returns it hex encoded, the same way as {@link #generateFromFile(File)}.
+     */
+    public static String toHex(MessageDigest digest) {
+        return Hex.encodeHexString(digest.digest());
+    }
+
+    /**
+     * Hex encoded digest of the bytes so far. A copy is completed, so the digest can still be updated
+     * and asked for again.
+     */
+    public static String currentHex(MessageDigest digest) {
+        try {
+            return toHex((MessageDigest) digest.clone());
+        } catch (CloneNotSupportedException e) {
+            throw new IllegalStateException("MD5 digest of " + digest.getProvider() + " can't be cloned", e);
+        }
+    }
+
     private static String getMD5FromStream(InputStream stream) throws IOException {
         return DigestUtils.md5Hex(stream);
     }
@@ -0,0 +1,54 @@
+package hudson.plugins.s3;
+
+import com.amazonaws.AmazonClientException;
+import com.amazonaws.services.s3.AmazonS3;
+import com.amazonaws.services.s3.model.DeleteObjectsRequest;
+import com.amazonaws.services.s3.model.DeleteObjectsRequest.KeyVersion;
+import com.amazonaws.services.s3.model.MultiObjectDeleteException;
+import com.amazonaws.services.s3.model.MultiObjectDeleteException.DeleteError;
+
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Deletes objects with multi-object delete requests, which take up to 1000 keys each.
+ */
+public final class MultiObjectDelete {
+    public static final int MAX_KEYS_PER_REQUEST = 1000;
+
+    private MultiObjectDelete() {
+    }
+
+    /**
+     * Deletes the keys from the bucket. A failed request doesn't stop the following ones.
+     *
+     * @return the keys which couldn't be deleted, mapped to the reason
+     */
+    public static Map<String, String> delete(AmazonS3 client, String bucketName, List<String> keys) {
+        final Map<String, String> failures = new LinkedHashMap<>();
+        for (int from = 0; from < keys.size(); from += MAX_KEYS_PER_REQUEST) {
+            final List<String> batch = keys.subList(from, Math.min(from + MAX_KEYS_PER_REQUEST, keys.size()));
+            final List<KeyVersion> versions = new ArrayList<>(batch.size());
+            for (String key : batch) {
+                versions.add(new KeyVersion(key));
+            }
+
+            // quiet: the response only lists the keys which failed
+            final DeleteObjectsRequest request = new DeleteObjectsRequest(bucketName).withKeys(versions).withQuiet(true);
+            try {
+                client.deleteObjects(request);
+            } catch (MultiObjectDeleteException e) {
+                for (DeleteError error : e.getErrors()) {
+                    failures.put(error.getKey(), error.getCode() + ": " + error.getMessage());
+                }
+            } catch (AmazonClientException e) {
+                for (String key : batch) {
+                    failures.put(key, e.getMessage());
+                }
+            }
+        }
+        return failures;
+    }
+}
@@ -0,0 +1,262 @@
+package hudson.plugins.s3;
+
+import com.amazonaws.AmazonClientException;
+import com.amazonaws.services.s3.AmazonS3;
+import com.amazonaws.services.s3.model.AbortMultipartUploadRequest;
+import com.amazonaws.services.s3.model.CompleteMultipartUploadRequest;
+import com.amazonaws.services.s3.model.InitiateMultipartUploadRequest;
+import com.amazonaws.services.s3.model.ObjectMetadata;
+import com.amazonaws.services.s3.model.PartETag;
+import com.amazonaws.services.s3.model.PutObjectRequest;
+import com.amazonaws.services.s3.model.UploadPartRequest;
+import hudson.util.DaemonThreadFactory;
+import hudson.util.NamingThreadFactory;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.io.OutputStream;
+import java.security.MessageDigest;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.Semaphore;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+/**
+ * Uploads everything written to it as an S3 object of unknown length.
+ *
+ * Data is collected in part sized buffers which are uploaded while the next part is being
+ * written. At most {@code partsInFlight} parts are uploading, so together with the one being
+ * written at most {@code partsInFlight + 1} part sized buffers are held in memory. Objects smaller than
+ * one part are sent with a single PUT. The MD5 of the written data is computed on the way.
+ * A part which fails is retried on its own, the parts which were uploaded are kept.
+ */
+public final class MultipartUploadOutputStream extends OutputStream {
+    private static final Logger LOGGER = Logger.getLogger(MultipartUploadOutputStream.class.getName());
+    /**
+     * S3 rejects smaller parts, except for the last one.
+     */
+    public static final int MIN_PART_SIZE = 5 * 1024 * 1024;
+
+    private final AmazonS3 client;
+    private final String bucketName;
+    private final String objectName;
+    private final ObjectMetadata metadata;
+    private final int partSize;
+    private final int partsInFlight;
+    private final RetryPolicy partRetryPolicy;
+    private final Semaphore buffers;
+    private final MessageDigest digest = MD5.newDigest();
+    private final List<Future<PartETag>> parts = new ArrayList<>();
+
+    private byte[] buffer;
+    private int count;
+    private long length;
+    private String uploadId;
+    private ExecutorService executor;
+    private boolean closed;
+    private boolean aborted;
+
+    public MultipartUploadOutputStream(AmazonS3 client, String bucketName, String objectName, ObjectMetadata metadata,
+                                       int partSize, int partsInFlight) {
+        this(client, bucketName, objectName, metadata, partSize, partsInFlight, RetryPolicy.PARTS);
+    }
+
+    /**
+     * @param partRetryPolicy retries of a failed part, only that part is uploaded again
+     */
+    public MultipartUploadOutputStream(AmazonS3 client, String bucketName, String objectName, ObjectMetadata metadata,
+                                       int partSize, int partsInFlight, RetryPolicy partRetryPolicy) {
+        this.client = client;
+        this.bucketName = bucketName;
+        this.objectName = objectName;
+        this.metadata = metadata;
+        this.partSize = Math.max(partSize, MIN_PART_SIZE);
+        this.partsInFlight = Math.max(partsInFlight, 1);
+        this.partRetryPolicy = partRetryPolicy;
+        this.buffers = new Semaphore(this.partsInFlight);
+        this.buffer = new byte[Math.min(this.partSize, 64 * 1024)];
+    }
+
+    @Override
+    public void write(int b) throws IOException {
+        write(new byte[]{(byte) b}, 0, 1);
+    }
+
+    @Override
+    public void write(byte[] bytes, int off, int len) throws IOException {
+        ensureOpen();
+        digest.update(bytes, off, len);
+        length += len;
+        while (len > 0) {
+            if (count == partSize) {
+                uploadPart();
+            }
+            ensureCapacity(Math.min(count + len, partSize));
+            final int chunk = Math.min(len, partSize - count);
+            System.arraycopy(bytes, off, buffer, count, chunk);
+            count += chunk;
+            off += chunk;
+            len -= chunk;
+        }
+    }
+
+    // small objects never allocate a whole part
+    private void ensureCapacity(int capacity) {
+        if (capacity > buffer.length) {
+            final byte[] grown = new byte[Math.min(Math.max(capacity, buffer.length * 2), partSize)];
+            System.arraycopy(buffer, 0, grown, 0, count);
+            buffer = grown;
+        }
+    }
+
+    private void uploadPart() throws IOException {
+        checkFailedParts();
+        if (uploadId == null) {
+            final InitiateMultipartUploadRequest request = new InitiateMultipartUploadRequest(bucketName, objectName, metadata);
+            uploadId = client.initiateMultipartUpload(request).getUploadId();
+            executor = Executors.newFixedThreadPool(partsInFlight,
+                    new NamingThreadFactory(new DaemonThreadFactory(), "S3 part upload " + objectName));
+        }
+
+        try {
+            buffers.acquire();
+        } catch (InterruptedException e) {
+            // the callers have to see the cancellation
+            Thread.currentThread().interrupt();
+            throw (IOException) new InterruptedIOException("Interrupted while uploading " + objectName).initCause(e);
+        }
+
+        final byte[] part = buffer;
+        final int partLength = count;
+        final int partNumber = parts.size() + 1;
+        parts.add(executor.submit(new Callable<PartETag>() {
+            @Override
+            public PartETag call() throws IOException, InterruptedException {
+                try {
+                    return partRetryPolicy.call("Upload of part " + partNumber + " of " + objectName, new Callable<PartETag>() {
+                        @Override
+                        public PartETag call() {
+                            final UploadPartRequest request = new UploadPartRequest()
+                                    .withBucketName(bucketName)
+                                    .withKey(objectName)
+                                    .withUploadId(uploadId)
+                                    .withPartNumber(partNumber)
+                                    .withPartSize(partLength)
+                                    .withInputStream(new ByteArrayInputStream(part, 0, partLength));
+                            return client.uploadPart(request).getPartETag();
+                        }
+                    });
+                } finally {
+                    buffers.release();
+                }
+            }
+        }));
+
+        // the uploading part keeps its buffer
+        buffer = new byte[partSize];
+        count = 0;
+    }
+
+    private void checkFailedParts() throws IOException {
+        for (Future<PartETag> part : parts) {
+            if (part.isDone()) {
+                getPart(part);
+            }
+        }
+    }
+
+    private PartETag getPart(Future<PartETag> part) throws IOException {
+        try {
+            return part.get();
+        } catch (InterruptedException e) {
+            // the callers have to see the cancellation
+            Thread.currentThread().interrupt();
+            throw (IOException) new InterruptedIOException("Interrupted while uploading " + objectName).initCause(e);
+        } catch (ExecutionException e) {
+            throw new IOException("Failed to upload part of " + objectName, e.getCause());
+        }
+    }
+
+    private void ensureOpen() throws IOException {
+        if (closed) {
+            throw new IOException("Upload of " + objectName + " is already closed");
+        }
+    }
+
+    /**
+     * Finishes the upload. If anything fails, the multipart upload is aborted.
+     */
+    @Override
+    public void close() throws IOException {
+        if (closed) {
+            return;
+        }
+        closed = true;
+        try {
+            if (uploadId == null) {
+                final ObjectMetadata singlePart = metadata.clone();
+                singlePart.setContentLength(count);
+                client.putObject(new PutObjectRequest(bucketName, objectName, new ByteArrayInputStream(buffer, 0, count), singlePart));
+            } else {
+                if (count > 0) {
+                    uploadPart();
+                }
+                final List<PartETag> etags = new ArrayList<>(parts.size());
+                for (Future<PartETag> part : parts) {
+                    etags.add(getPart(part));
+                }
+                client.completeMultipartUpload(new CompleteMultipartUploadRequest(bucketName, objectName, uploadId, etags));
+            }
+        } catch (IOException | RuntimeException e) {
+            abort();
+            throw e;
+        } finally {
+            buffer = null;
+            if (executor != null) {
+                executor.shutdown();
+            }
+        }
+    }
+
+    /**
+     * Discards the upload, the parts uploaded so far are removed from S3.
+     */
+    public void abort() {
+        closed = true;
+        if (aborted) {
+            return;
+        }
+        aborted = true;
+        if (executor != null) {
+            executor.shutdownNow();
+        }
+        if (uploadId != null) {
+            try {
+                client.abortMultipartUpload(new AbortMultipartUploadRequest(bucketName, objectName, uploadId));
+            } catch (AmazonClientException e) {
+                LOGGER.log(Level.WARNING, "Failed to abort the multipart upload of " + objectName, e);
+            }
+        }
+    }
+
+    /**
+     * Number of bytes written.
+     */
+    public long getLength() {
+        return length;
+    }
+
+    /**
+     * Hex encoded MD5 of the written data, available once the stream is closed.
+     */
+    public String getMd5() {
+        return MD5.currentHex(digest);
+    }
+}
@@ -0,0 +1,102 @@
+package hudson.plugins.s3;
+
+import com.amazonaws.services.s3.AmazonS3;
+import com.amazonaws.services.s3.model.ListObjectsV2Request;
+import com.amazonaws.services.s3.model.ListObjectsV2Result;
+import com.amazonaws.services.s3.model.S3ObjectSummary;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Future;
+
+/**
+ * Streams the objects of a bucket with ListObjectsV2, one page of up to 1000 objects at a time, so
+ * listings of any size are never held in memory.
+ */
+public final class ObjectLister {
+    private final AmazonS3 client;
+    private final String bucketName;
+
+    /**
+     * Receives the objects page by page.
+     */
+    public interface Visitor {
+        void visit(List<S3ObjectSummary> objects) throws IOException;
+    }
+
+    public ObjectLister(AmazonS3 client, String bucketName) {
+        this.client = client;
+        this.bucketName = bucketName;
+    }
+
+    /**
+     * Lists the objects under the prefix in key order.
+     *
+     * @return the number of objects listed
+     */
+    public long list(String prefix, Visitor visitor) throws IOException {
+        final ListObjectsV2Request request = new ListObjectsV2Request()
+                .withBucketName(bucketName)
+                .withPrefix(prefix);
+        long listed = 0;
+        ListObjectsV2Result result;
+        do {
+            result = client.listObjectsV2(request);
+            listed += visit(result, visitor);
+            request.setContinuationToken(result.getNextContinuationToken());
+        } while (result.isTruncated());
+        return listed;
+    }
+
+    /**
+     * Lists the objects under the prefix, splitting it by the delimiter: the objects right under the prefix are
+     * listed by the calling thread and the objects under each prefix one level below it by a task of the executor.
+     * The visitor is called concurrently, and the pages of different parts come in no particular order.
+     *
+     * @return the number of objects listed
+     */
+    public long listParallel(String prefix, String delimiter, ExecutorService executor, final Visitor visitor)
+            throws IOException, InterruptedException {
+        final List<Future<Long>> parts = new ArrayList<>();
+        try {
+            final ListObjectsV2Request request = new ListObjectsV2Request()
+                    .withBucketName(bucketName)
+                    .withPrefix(prefix)
+                    .withDelimiter(delimiter);
+            long listed = 0;
+            ListObjectsV2Result result;
+            do {
+                result = client.listObjectsV2(request);
+                listed += visit(result, visitor);
+                for (final String part : result.getCommonPrefixes()) {
+                    parts.add(executor.submit(new Callable<Long>() {
+                        @Override
+                        public Long call() throws IOException {
+                            return list(part, visitor);
+                        }
+                    }));
+                }
+                request.setContinuationToken(result.getNextContinuationToken());
+            } while (result.isTruncated());
+
+            for (Long count : TransferScheduler.getAll(parts)) {
+                listed += count;
+            }
+            return listed;
+        } catch (InterruptedException | IOException | RuntimeException e) {
+            TransferScheduler.cancelAll(parts);
+            throw e;
+        }
+    }
+
+    private static int visit(ListObjectsV2Result result, Visitor visitor) throws IOException {
+        final List<S3ObjectSummary> objects = result.getObjectSummaries();
+        if (!objects.isEmpty()) {
+            visitor.visit(objects);
+        }
+        return objects.size();
+    }
+}
@@ -0,0 +1,218 @@
+package hudson.plugins.s3;
+
+import hudson.util.DaemonThreadFactory;
+import hudson.util.NamingThreadFactory;
+
+import java.io.ByteArrayOutputStream;
+import java.io.FilterOutputStream;
+import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.io.OutputStream;
+import java.util.ArrayDeque;
+import java.util.Deque;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Future;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.zip.CRC32;
+import java.util.zip.Deflater;
+
+/**
+ * Gzip compression on all cores, in the way pigz does it.
+ *
+ * The input is cut into blocks which are deflated in parallel. Every block is primed with the
+ * last 32 KB of its predecessor, so the compression ratio stays close to single-threaded gzip,
+ * and ends with a sync flush, so the compressed blocks can simply be concatenated. The result
+ * is a single regular gzip member which any gzip decoder (including browsers) can read.
+ */
+public final class ParallelGzipOutputStream extends FilterOutputStream {
+    public static final int DEFAULT_BLOCK_SIZE = 128 * 1024;
+    private static final int DICTIONARY_SIZE = 32 * 1024;
+    private static final byte[] HEADER = {0x1f, (byte) 0x8b, Deflater.DEFLATED, 0, 0, 0, 0, 0, 0, 0};
+
+    private static ExecutorService compressors;
+
+    private final int level;
+    private final int blockSize;
+    private final int maxBlocksInFlight;
+    private final ExecutorService executor;
+    private final Deque<Future<byte[]>> pending = new ArrayDeque<>();
+    private final CRC32 crc = new CRC32();
+
+    private byte[] block;
+    private int count;
+    private byte[] previousBlock;
+    private long length;
+    private boolean closed;
+
+    public ParallelGzipOutputStream(OutputStream out, int level, int blockSize) throws IOException {
+        this(out, level, blockSize, getCompressors(), 2 * getThreadCount());
+    }
+
+    ParallelGzipOutputStream(OutputStream out, int level, int blockSize, ExecutorService executor, int maxBlocksInFlight) throws IOException {
+        super(out);
+        if (blockSize < DICTIONARY_SIZE) {
+            throw new IllegalArgumentException("Block size must be at least " + DICTIONARY_SIZE + " bytes: " + blockSize);
+        }
+        this.level = level;
+        this.blockSize = blockSize;
+        this.executor = executor;
+        this.maxBlocksInFlight = Math.max(maxBlocksInFlight, 1);
+        this.block = new byte[blockSize];
+        out.write(HEADER);
+    }
+
+    /**
+     * Number of compression threads on this node.
+     */
+    public static int getThreadCount() {
+        return Runtime.getRuntime().availableProcessors();
+    }
+
+    private static synchronized ExecutorService getCompressors() {
+        if (compressors == null) {
+            final int threads = getThreadCount();
+            final ThreadPoolExecutor executor = new ThreadPoolExecutor(threads, threads, 60L, TimeUnit.SECONDS,
+                    new LinkedBlockingQueue<Runnable>(), new NamingThreadFactory(new DaemonThreadFactory(), "S3 gzip compressor"));
+            executor.allowCoreThreadTimeOut(true);
+            compressors = executor;
+        }
+        return compressors;
+    }
+
+    @Override
+    public void write(int b) throws IOException {
+        write(new byte[]{(byte) b}, 0, 1);
+    }
+
+    @Override
+    public void write(byte[] bytes, int off, int len) throws IOException {
+        if (closed) {
+            throw new IOException("Stream closed");
+        }
+        crc.update(bytes, off, len);
+        length += len;
+        while (len > 0) {
+            final int chunk = Math.min(len, blockSize - count);
+            System.arraycopy(bytes, off, block, count, chunk);
+            count += chunk;
+            off += chunk;
+            len -= chunk;
+            if (count == blockSize) {
+                submitBlock(false);
+            }
+        }
+    }
+
+    private void submitBlock(final boolean last) throws IOException {
+        while (pending.size() >= maxBlocksInFlight) {
+            writeCompressed(pending.removeFirst());
+        }
+
+        final byte[] input = block;
+        final int inputLength = count;
+        final byte[] dictionary = previousBlock;
+        pending.addLast(executor.submit(new Callable<byte[]>() {
+            @Override
+            public byte[] call() {
+                return deflate(input, inputLength, dictionary, last);
+            }
+        }));
+
+        // the submitted block is still needed as input and as dictionary of the next block
+        previousBlock = input;
+        block = last ? null : new byte[blockSize];
+        count = 0;
+    }
+
+    private byte[] deflate(byte[] input, int inputLength, byte[] dictionary, boolean last) {
+        final Deflater deflater = new Deflater(level, true);
+        try {
+            if (dictionary != null) {
+                deflater.setDictionary(dictionary, dictionary.length - DICTIONARY_SIZE, DICTIONARY_SIZE);
+            }
+            deflater.setInput(input, 0, inputLength);
+
+            final ByteArrayOutputStream compressed = new ByteArrayOutputStream(inputLength / 2 + 64);
+            final byte[] buffer = new byte[64 * 1024];
+            if (last) {
+                deflater.finish();
+                while (!deflater.finished()) {
+                    compressed.write(buffer, 0, deflater.deflate(buffer));
+                }
+            } else {
+                // the sync flush ends the block on a byte boundary, so blocks can be concatenated
+                int written;
+                do {
+                    written = deflater.deflate(buffer, 0, buffer.length, Deflater.SYNC_FLUSH);
+                    compressed.write(buffer, 0, written);
+                } while (written == buffer.length || !deflater.needsInput());
+            }
+            return compressed.toByteArray();
+        } finally {
+            deflater.end();
+        }
+    }
+
+    private void writeCompressed(Future<byte[]> future) throws IOException {
+        try {
+            out.write(future.get());
+        } catch (InterruptedException e) {
+            // the callers have to see the cancellation
+            Thread.currentThread().interrupt();
+            throw (IOException) new InterruptedIOException("Interrupted while compressing").initCause(e);
+        } catch (ExecutionException e) {
+            throw new IOException("Failed to compress block", e.getCause());
+        }
+    }
+
+    /**
+     * Writes all complete blocks, the current partial block stays buffered.
+     */
+    @Override
+    public void flush() throws IOException {
+        while (!pending.isEmpty()) {
+            writeCompressed(pending.removeFirst());
+        }
+        out.flush();
+    }
+
+    @Override
+    public void close() throws IOException {
+        if (closed) {
+            return;
+        }
+        try {
+            submitBlock(true);
+            flush();
+            writeTrailer();
+            closed = true;
+            out.close();
+        } finally {
+            closed = true;
+            for (Future<byte[]> future : pending) {
+                future.cancel(true);
+            }
+            pending.clear();
+            previousBlock = null;
+        }
+    }
+
+    private void writeTrailer() throws IOException {
+        final byte[] trailer = new byte[8];
+        writeInt(trailer, 0, crc.getValue());
+        writeInt(trailer, 4, length);
+        out.write(trailer);
+    }
+
+    // gzip stores its integers little endian, the size modulo 2^32
+    private static void writeInt(byte[] buffer, int offset, long value) {
+        for (int i = 0; i < 4; i++) {
+            buffer[offset + i] = (byte) (value >>> (8 * i));
+        }
+    }
+
+}
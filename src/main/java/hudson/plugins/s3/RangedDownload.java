@@ -0,0 +1,165 @@
+package hudson.plugins.s3;
+
+import com.amazonaws.services.s3.AmazonS3;
+import com.amazonaws.services.s3.model.GetObjectRequest;
+import com.amazonaws.services.s3.model.S3Object;
+import com.amazonaws.services.s3.model.S3ObjectInputStream;
+import hudson.util.DaemonThreadFactory;
+import hudson.util.NamingThreadFactory;
+import org.apache.commons.io.FileUtils;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.security.MessageDigest;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+/**
+ * Downloads a large object with concurrent byte-range GETs.
+ *
+ * The file is preallocated and every range is written at its position. The MD5 is computed
+ * in order while the later ranges are still downloading, by reading the finished ranges
+ * back from the file, which is usually still in the page cache. A range which fails is
+ * retried on its own.
+ */
+public final class RangedDownload {
+    private static final int BUFFER_SIZE = 64 * 1024;
+
+    private final AmazonS3 client;
+    private final String bucketName;
+    private final String objectName;
+    private final long length;
+    private final String eTag;
+    private final int rangeSize;
+    private final int concurrency;
+    private final RetryPolicy rangeRetryPolicy;
+
+    /**
+     * @param length length of the object
+     * @param eTag   ETag of the object, ranges of a different version of it are rejected
+     */
+    public RangedDownload(AmazonS3 client, String bucketName, String objectName, long length, String eTag, int rangeSize, int concurrency) {
+        this(client, bucketName, objectName, length, eTag, rangeSize, concurrency, RetryPolicy.PARTS);
+    }
+
+    /**
+     * @param rangeRetryPolicy retries of a failed range, only that range is downloaded again
+     */
+    public RangedDownload(AmazonS3 client, String bucketName, String objectName, long length, String eTag, int rangeSize, int concurrency,
+                          RetryPolicy rangeRetryPolicy) {
+        this.client = client;
+        this.bucketName = bucketName;
+        this.objectName = objectName;
+        this.length = length;
+        this.eTag = eTag;
+        this.rangeSize = Math.max(rangeSize, 1);
+        this.concurrency = Math.max(concurrency, 1);
+        this.rangeRetryPolicy = rangeRetryPolicy;
+    }
+
+    /**
+     * Downloads the object into the file and returns the hex encoded MD5 of its content.
+     */
+    public String downloadTo(File file) throws IOException, InterruptedException {
+        final File parent = file.getParentFile();
+        if (parent != null) {
+            FileUtils.forceMkdir(parent);
+        }
+        final ExecutorService executor = Executors.newFixedThreadPool(concurrency,
+                new NamingThreadFactory(new DaemonThreadFactory(), "S3 ranged download " + objectName));
+        final List<Future<Void>> ranges = new ArrayList<>();
+        try (RandomAccessFile raf = new RandomAccessFile(file, "rw")) {
+            raf.setLength(length);
+            final FileChannel channel = raf.getChannel();
+
+            for (long start = 0; start < length; start += rangeSize) {
+                final long from = start;
+                final long to = Math.min(start + rangeSize, length) - 1;
+                ranges.add(executor.submit(new Callable<Void>() {
+                    @Override
+                    public Void call() throws IOException, InterruptedException {
+                        return rangeRetryPolicy.call("Download of range " + from + '-' + to + " of " + objectName, new Callable<Void>() {
+                            @Override
+                            public Void call() throws IOException {
+                                downloadRange(channel, from, to);
+                                return null;
+                            }
+                        });
+                    }
+                }));
+            }
+
+            final MessageDigest digest = MD5.newDigest();
+            final ByteBuffer buffer = ByteBuffer.allocate(BUFFER_SIZE);
+            long digested = 0;
+            for (Future<Void> range : ranges) {
+                await(range);
+                final long end = Math.min(digested + rangeSize, length);
+                while (digested < end) {
+                    buffer.clear();
+                    buffer.limit((int) Math.min(BUFFER_SIZE, end - digested));
+                    final int read = channel.read(buffer, digested);
+                    if (read < 0) {
+                        throw new IOException("Unexpected end of " + file + " at " + digested);
+                    }
+                    digest.update(buffer.array(), 0, read);
+                    digested += read;
+                }
+            }
+            return MD5.toHex(digest);
+        } finally {
+            for (Future<Void> range : ranges) {
+                range.cancel(true);
+            }
+            executor.shutdownNow();
+        }
+    }
+
+    private void downloadRange(FileChannel channel, long from, long to) throws IOException {
+        final GetObjectRequest request = new GetObjectRequest(bucketName, objectName).withRange(from, to);
+        if (eTag != null) {
+            request.withMatchingETagConstraint(eTag);
+        }
+        final S3Object object = client.getObject(request);
+        if (object == null) {
+            throw new IOException(objectName + " was changed during the download");
+        }
+        try (S3ObjectInputStream input = object.getObjectContent()) {
+            final byte[] bytes = new byte[BUFFER_SIZE];
+            long position = from;
+            int read;
+            while ((read = input.read(bytes)) != -1) {
+                final ByteBuffer buffer = ByteBuffer.wrap(bytes, 0, read);
+                while (buffer.hasRemaining()) {
+                    position += channel.write(buffer, position);
+                }
+            }
+            if (position != to + 1) {
+                throw new IOException("Got " + (position - from) + " bytes for range " + from + '-' + to + " of " + objectName);
+            }
+        }
+    }
+
+    private void await(Future<Void> range) throws IOException, InterruptedException {
+        try {
+            range.get();
+        } catch (ExecutionException e) {
+            final Throwable cause = e.getCause();
+            if (cause instanceof IOException) {
+                throw (IOException) cause;
+            }
+            if (cause instanceof RuntimeException) {
+                throw (RuntimeException) cause;
+            }
+            throw new IOException("Failed to download " + objectName, cause);
+        }
+    }
+}
@@ -0,0 +1,215 @@
+package hudson.plugins.s3;
+
+import com.amazonaws.services.s3.AmazonS3;
+
+import java.io.FilterInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InterruptedIOException;
+import java.io.Serializable;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.BiFunction;
+
+/**
+ * Budget of S3 requests and bytes per second of a profile. Every bucket gets its own budget, which is
+ * shared by all transfers of the profile to that bucket in this JVM: on the controller by all builds,
+ * on an agent by the builds running there.
+ *
+ * A budget which wasn't used for a minute is full again, so it's dropped and created anew when it's needed.
+ * Budgets of renamed or deleted profiles and of buckets which aren't used anymore don't pile up that way.
+ */
+public final class RateLimit implements Serializable {
+    private static final long serialVersionUID = 1L;
+
+    public static final RateLimit UNLIMITED = new RateLimit("", 0, 0);
+
+    private static final long IDLE_NANOS = TimeUnit.MINUTES.toNanos(1);
+    private static final ConcurrentMap<String, Budget> budgets = new ConcurrentHashMap<>();
+    private static final AtomicLong nextPrune = new AtomicLong(System.nanoTime() + IDLE_NANOS);
+
+    private final String scope;
+    private final double requestsPerSecond;
+    private final double bytesPerSecond;
+
+    /**
+     * @param scope             the transfers sharing the budget, usually the profile name
+     * @param requestsPerSecond not positive for no limit
+     * @param bytesPerSecond    not positive for no limit
+     */
+    public RateLimit(String scope, double requestsPerSecond, double bytesPerSecond) {
+        this.scope = scope;
+        this.requestsPerSecond = Math.max(requestsPerSecond, 0);
+        this.bytesPerSecond = Math.max(bytesPerSecond, 0);
+    }
+
+    public boolean isUnlimited() {
+        return requestsPerSecond == 0 && bytesPerSecond == 0;
+    }
+
+    /**
+     * The given percentage of this budget, e.g. for each agent.
+     */
+    public RateLimit share(int percent) {
+        if (percent <= 0 || percent >= 100) {
+            return this;
+        }
+        return new RateLimit(scope, requestsPerSecond * percent / 100, bytesPerSecond * percent / 100);
+    }
+
+    /**
+     * Waits until a request to the bucket fits the budget.
+     */
+    public void acquireRequest(String bucketName) throws InterruptedException {
+        if (requestsPerSecond > 0) {
+            getBudget(bucketName).acquireRequest();
+        }
+    }
+
+    /**
+     * Waits until the bytes fit the budget of the bucket, for transfers the SDK reads from a file itself.
+     */
+    public void acquireBytes(String bucketName, long count) throws InterruptedException {
+        if (bytesPerSecond > 0 && count > 0) {
+            getBudget(bucketName).acquireBytes(count);
+        }
+    }
+
+    /**
+     * Reading the stream waits until the bytes read from it fit the budget of the bucket.
+     */
+    public InputStream throttle(String bucketName, InputStream stream) {
+        if (bytesPerSecond == 0) {
+            return stream;
+        }
+        return new ThrottledInputStream(stream, getBudget(bucketName));
+    }
+
+    /**
+     * A client whose object requests and transferred bytes are taken from the budgets of their buckets.
+     * Only the operations used for transfers are supported.
+     */
+    public AmazonS3 wrap(AmazonS3 client) {
+        return isUnlimited() ? client : new ThrottledAmazonS3(client, this);
+    }
+
+    private Budget getBudget(String bucketName) {
+        final long now = System.nanoTime();
+        final long next = nextPrune.get();
+        if (now - next >= 0 && nextPrune.compareAndSet(next, now + IDLE_NANOS)) {
+            dropIdleBudgets(now);
+        }
+        final String key = scope + '\t' + bucketName + '\t' + requestsPerSecond + '\t' + bytesPerSecond;
+        return budgets.compute(key, new BiFunction<String, Budget, Budget>() {
+            @Override
+            public Budget apply(String key, Budget budget) {
+                final Budget used = budget != null ? budget : new Budget(requestsPerSecond, bytesPerSecond);
+                used.lastUsed = now;
+                return used;
+            }
+        });
+    }
+
+    /**
+     * Drops the budgets which weren't used since a minute before the given time.
+     */
+    static void dropIdleBudgets(final long now) {
+        for (String key : budgets.keySet()) {
+            budgets.computeIfPresent(key, new BiFunction<String, Budget, Budget>() {
+                @Override
+                public Budget apply(String key, Budget budget) {
+                    return now - budget.lastUsed > IDLE_NANOS ? null : budget;
+                }
+            });
+        }
+    }
+
+    static int getBudgets() {
+        return budgets.size();
+    }
+
+    @Override
+    public boolean equals(Object o) {
+        if (this == o) {
+            return true;
+        }
+        if (!(o instanceof RateLimit)) {
+            return false;
+        }
+        final RateLimit that = (RateLimit) o;
+        return scope.equals(that.scope) && requestsPerSecond == that.requestsPerSecond && bytesPerSecond == that.bytesPerSecond;
+    }
+
+    @Override
+    public int hashCode() {
+        return 31 * (31 * scope.hashCode() + Double.hashCode(requestsPerSecond)) + Double.hashCode(bytesPerSecond);
+    }
+
+    @Override
+    public String toString() {
+        return isUnlimited() ? "unlimited" : scope + '_' + requestsPerSecond + "rps_" + bytesPerSecond + "bps";
+    }
+
+    /**
+     * Up to a second's worth of requests and bytes can be taken at once after an idle period.
+     */
+    private static final class Budget {
+        private final TokenBucket requests;
+        private final TokenBucket bytes;
+        volatile long lastUsed;
+
+        Budget(double requestsPerSecond, double bytesPerSecond) {
+            this.requests = new TokenBucket(requestsPerSecond, requestsPerSecond);
+            this.bytes = new TokenBucket(bytesPerSecond, bytesPerSecond);
+        }
+
+        void acquireRequest() throws InterruptedException {
+            requests.acquire(1);
+            lastUsed = System.nanoTime();
+        }
+
+        // streams keep their budget in use while they are read
+        void acquireBytes(long count) throws InterruptedException {
+            bytes.acquire(count);
+            lastUsed = System.nanoTime();
+        }
+    }
+
+    private static final class ThrottledInputStream extends FilterInputStream {
+        private final Budget budget;
+
+        ThrottledInputStream(InputStream in, Budget budget) {
+            super(in);
+            this.budget = budget;
+        }
+
+        @Override
+        public int read() throws IOException {
+            final int b = super.read();
+            if (b >= 0) {
+                acquire(1);
+            }
+            return b;
+        }
+
+        @Override
+        public int read(byte[] b, int off, int len) throws IOException {
+            final int read = super.read(b, off, len);
+            if (read > 0) {
+                acquire(read);
+            }
+            return read;
+        }
+
+        private void acquire(int count) throws IOException {
+            try {
+                budget.acquireBytes(count);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                throw (IOException) new InterruptedIOException("Interrupted while waiting for the transfer budget").initCause(e);
+            }
+        }
+    }
+}
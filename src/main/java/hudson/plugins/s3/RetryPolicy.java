@@ -0,0 +1,131 @@
+package hudson.plugins.s3;
+
+import com.amazonaws.AbortedException;
+import com.amazonaws.AmazonClientException;
+import com.amazonaws.AmazonServiceException;
+import com.amazonaws.retry.RetryUtils;
+
+import java.io.FileNotFoundException;
+import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.io.Serializable;
+import java.net.SocketTimeoutException;
+import java.nio.channels.ClosedByInterruptException;
+import java.nio.file.AccessDeniedException;
+import java.nio.file.NoSuchFileException;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+import java.util.logging.Logger;
+
+/**
+ * Retries transfers which failed for reasons that may go away: throttling (503 SlowDown), server errors,
+ * timeouts and broken connections. Anything else, like denied access, missing files or interrupted
+ * transfers of cancelled builds, fails right away.
+ *
+ * The delay before each retry is drawn at random up to an exponentially growing ceiling ("full jitter"),
+ * so the transfers which were throttled together don't all come back at the same time.
+ */
+public final class RetryPolicy implements Serializable {
+    private static final long serialVersionUID = 1L;
+    private static final Logger LOGGER = Logger.getLogger(RetryPolicy.class.getName());
+
+    private static final int MAX_DELAY_SECONDS = Integer.getInteger(RetryPolicy.class.getName() + ".maxDelaySeconds", 60);
+
+    /**
+     * Retries of single parts and ranges of multipart transfers, before the whole transfer is failed.
+     */
+    public static final RetryPolicy PARTS = new RetryPolicy(Integer.getInteger(RetryPolicy.class.getName() + ".partAttempts", 4),
+            TimeUnit.SECONDS.toMillis(1), TimeUnit.SECONDS.toMillis(20));
+
+    private final int maxAttempts;
+    private final long baseDelayMillis;
+    private final long maxDelayMillis;
+
+    /**
+     * @param maxAttempts    number of attempts, including the first one
+     * @param retryTime      ceiling of the delay before the first retry in seconds, it doubles with every retry
+     */
+    public RetryPolicy(int maxAttempts, int retryTime) {
+        this(maxAttempts, TimeUnit.SECONDS.toMillis(retryTime), TimeUnit.SECONDS.toMillis(Math.max(retryTime, MAX_DELAY_SECONDS)));
+    }
+
+    RetryPolicy(int maxAttempts, long baseDelayMillis, long maxDelayMillis) {
+        this.maxAttempts = Math.max(maxAttempts, 1);
+        this.baseDelayMillis = Math.max(baseDelayMillis, 0);
+        this.maxDelayMillis = Math.max(maxDelayMillis, this.baseDelayMillis);
+    }
+
+    public int getMaxAttempts() {
+        return maxAttempts;
+    }
+
+    /**
+     * Calls the function until it succeeds, fails for good or runs out of attempts.
+     *
+     * @param what describes the call in failure messages
+     */
+    public <T> T call(String what, Callable<T> func) throws IOException, InterruptedException {
+        for (int attempt = 1; ; attempt++) {
+            try {
+                return func.call();
+            } catch (InterruptedException e) {
+                throw e;
+            } catch (Exception e) {
+                if (!isRetryable(e)) {
+                    throw new IOException(what + " failed: " + e, e);
+                }
+                if (attempt >= maxAttempts) {
+                    throw new IOException(what + " failed after " + attempt + " tries: " + e, e);
+                }
+                final long delay = getDelay(attempt);
+                LOGGER.fine(what + " failed, retrying in " + delay + " ms: " + e);
+                TimeUnit.MILLISECONDS.sleep(delay);
+            }
+        }
+    }
+
+    /**
+     * Delay before the retry following the given attempt.
+     */
+    long getDelay(int attempt) {
+        final int doublings = Math.min(attempt - 1, 30);
+        final long ceiling = Math.min(maxDelayMillis, baseDelayMillis << doublings);
+        // overflowed shifts go negative
+        return ThreadLocalRandom.current().nextLong((ceiling < 0 ? maxDelayMillis : ceiling) + 1);
+    }
+
+    /**
+     * Whether the failure may go away when the call is repeated.
+     */
+    static boolean isRetryable(Throwable failure) {
+        for (Throwable cause = failure; cause != null; cause = cause.getCause()) {
+            if (cause instanceof AmazonServiceException) {
+                final AmazonServiceException e = (AmazonServiceException) cause;
+                return e.getStatusCode() >= 500 || e.getStatusCode() == 408
+                        || RetryUtils.isThrottlingException(e) || RetryUtils.isClockSkewError(e) || RetryUtils.isRetryableServiceException(e);
+            }
+            if (isInterruption(cause)) {
+                // cancelled builds must stop instead of waiting for a retry
+                return false;
+            }
+            if (cause instanceof AbortedException
+                    || cause instanceof FileNotFoundException || cause instanceof NoSuchFileException || cause instanceof AccessDeniedException) {
+                return false;
+            }
+        }
+        // connection resets, timeouts and lost agents
+        return failure instanceof IOException || failure instanceof AmazonClientException;
+    }
+
+    // socket timeouts are interrupted I/O too, but nobody cancelled them
+    private static boolean isInterruption(Throwable failure) {
+        return failure instanceof InterruptedException || failure instanceof ClosedByInterruptException
+                || failure instanceof InterruptedIOException && !(failure instanceof SocketTimeoutException);
+    }
+
+    @Override
+    public String toString() {
+        return maxAttempts + " attempts, " + baseDelayMillis + "-" + maxDelayMillis + " ms delays";
+    }
+}
@@ -14,12 +14,25 @@ public final class S3Artifact implements Serializable {
     private final String name;
     private final String region;
     private /*almost final*/ Boolean useFullProjectName;
+    private final Boolean contentAddressed;
 
     public S3Artifact(String region, String bucket, String name) {
+        this(region, bucket, name, false);
+    }
+
+    /**
+     * @param contentAddressed whether the artifact is stored under its content hash instead of in the build's directory
+     */
+    public S3Artifact(String region, String bucket, String name, boolean contentAddressed) {
+        this(region, bucket, name, contentAddressed, true);
+    }
+
+    S3Artifact(String region, String bucket, String name, boolean contentAddressed, boolean useFullProjectName) {
         this.bucket = bucket.intern();
         this.name = name.intern();
         this.region = region.intern();
-        this.useFullProjectName = true;
+        this.useFullProjectName = useFullProjectName;
+        this.contentAddressed = contentAddressed ? Boolean.TRUE : null;
     }
 
     /* Old version of this plugin used short name,
@@ -46,6 +59,10 @@ public final class S3Artifact implements Serializable {
         return region;
     }
 
+    public boolean isContentAddressed() {
+        return contentAddressed != null && contentAddressed;
+    }
+
     public Boolean useFullProjectName() {
         if (useFullProjectName == null)
             return false;
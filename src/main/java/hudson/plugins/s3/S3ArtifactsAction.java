@@ -3,9 +3,12 @@ package hudson.plugins.s3;
 import java.io.File;
 import java.io.IOException;
 
+import java.util.ArrayList;
 import java.util.Collections;
 import java.util.Date;
 import java.util.List;
+import java.util.logging.Level;
+import java.util.logging.Logger;
 
 import javax.servlet.ServletException;
 
@@ -14,6 +17,8 @@ import com.amazonaws.services.s3.model.GeneratePresignedUrlRequest;
 import com.amazonaws.services.s3.model.ResponseHeaderOverrides;
 import hudson.Functions;
 import jenkins.model.RunAction2;
+import jenkins.util.Timer;
+import org.apache.commons.io.FilenameUtils;
 import org.kohsuke.stapler.StaplerRequest;
 import org.kohsuke.stapler.StaplerResponse;
 
@@ -23,17 +28,31 @@ import org.kohsuke.stapler.export.ExportedBean;
 
 import static javax.servlet.http.HttpServletResponse.SC_NOT_FOUND;
 
+/**
+ * The managed artifacts of a build. They are kept in a compact side file of the build, see {@link ArtifactsFile},
+ * and only loaded when they are first needed, so loading builds with many artifacts stays fast.
+ * The list in the build.xml of older versions is moved to the side file when the build is loaded, and the build
+ * is saved once without it.
+ *
+ * A side file which can't be read is never taken for an empty list: it's read again on the next access,
+ * and nothing which would replace or delete the artifacts goes ahead without it.
+ */
 @ExportedBean
 public class S3ArtifactsAction implements RunAction2 {
+    private static final Logger LOGGER = Logger.getLogger(S3ArtifactsAction.class.getName());
+
     private final Run build; // Compatibility for old versions
     private final String profile;
-    private final List<FingerprintRecord> artifacts;
+    /**
+     * Only in the build.xml of older versions, or if the side file couldn't be written.
+     */
+    private volatile List<FingerprintRecord> artifacts;
+    private transient volatile List<FingerprintRecord> records;
 
     public S3ArtifactsAction(Run<?, ?> run, S3Profile profile, List<FingerprintRecord> artifacts) {
         this.build = run;
         this.profile = profile.getName();
-        this.artifacts = artifacts;
-        onLoad(run);   // make compact
+        store(new ArrayList<>(artifacts));
     }
 
     public Run<?, ?> getBuild() {
@@ -57,7 +76,45 @@ public class S3ArtifactsAction implements RunAction2 {
     }
 
     @Override
-    public void onLoad(Run<?, ?> r) {
+    public void onLoad(final Run<?, ?> r) {
+        if (migrate()) {
+            // saved once without the list, so it isn't read from build.xml and moved again on every load
+            Timer.get().submit(new Runnable() {
+                @Override
+                public void run() {
+                    try {
+                        r.save();
+                    } catch (IOException e) {
+                        LOGGER.log(Level.WARNING, "Failed to save " + r + " without its S3 artifacts", e);
+                    }
+                }
+            });
+        }
+    }
+
+    /**
+     * Moves the list of an older version to the side file, which is only written if it doesn't hold the list yet,
+     * e.g. because build.xml couldn't be saved without it after an earlier load.
+     *
+     * @return whether build.xml has to be saved without the list
+     */
+    private synchronized boolean migrate() {
+        final List<FingerprintRecord> stored = artifacts;
+        if (stored == null) {
+            return false;
+        }
+        boolean moved;
+        try {
+            moved = ArtifactsFile.holds(getArtifactsFile(), stored);
+        } catch (IOException e) {
+            moved = false;
+        }
+        if (moved) {
+            artifacts = null;
+        } else {
+            store(new ArrayList<>(stored));
+        }
+        return artifacts == null;
     }
 
     public void onAttached(Run r) {
@@ -67,12 +124,87 @@ public class S3ArtifactsAction implements RunAction2 {
         return profile;
     }
 
+    /**
+     * The artifacts visible to the current user, none if they couldn't be read.
+     */
     @Exported
     public List<FingerprintRecord> getArtifacts() {
         if (!hasAccess()) {
             return Collections.emptyList();
         }
-        return artifacts;
+        try {
+            return readArtifacts();
+        } catch (IOException e) {
+            LOGGER.log(Level.WARNING, "Failed to read the S3 artifacts of " + build, e);
+            return Collections.emptyList();
+        }
+    }
+
+    /**
+     * All the artifacts, regardless of the permissions of the current user, e.g. to delete them or write the manifest.
+     *
+     * @throws IOException if they couldn't be read
+     */
+    public List<FingerprintRecord> readArtifacts() throws IOException {
+        return Collections.unmodifiableList(getRecords());
+    }
+
+    /**
+     * Like {@link #readArtifacts()}, but doesn't keep what it had to read, so scanning all builds doesn't hold
+     * the artifacts of every build in memory.
+     */
+    List<FingerprintRecord> scanArtifacts() throws IOException {
+        final List<FingerprintRecord> loaded = records;
+        return Collections.unmodifiableList(loaded != null ? loaded : load());
+    }
+
+    /**
+     * Records artifacts which another publisher of the build uploaded.
+     *
+     * @throws IOException if the artifacts recorded so far couldn't be read, they are left as they are
+     */
+    public synchronized void addArtifacts(List<FingerprintRecord> added) throws IOException {
+        final List<FingerprintRecord> all = new ArrayList<>(getRecords());
+        all.addAll(added);
+        store(all);
+    }
+
+    private synchronized void store(List<FingerprintRecord> all) {
+        records = all;
+        try {
+            ArtifactsFile.write(getArtifactsFile(), all);
+            artifacts = null;
+        } catch (IOException e) {
+            LOGGER.log(Level.WARNING, "Failed to write the S3 artifacts of " + build + ", keeping them in build.xml", e);
+            artifacts = all;
+        }
+    }
+
+    // a failed read isn't cached
+    private List<FingerprintRecord> getRecords() throws IOException {
+        List<FingerprintRecord> loaded = records;
+        if (loaded == null) {
+            synchronized (this) {
+                loaded = records;
+                if (loaded == null) {
+                    loaded = load();
+                    records = loaded;
+                }
+            }
+        }
+        return loaded;
+    }
+
+    private List<FingerprintRecord> load() throws IOException {
+        final List<FingerprintRecord> stored = artifacts;
+        if (stored != null) {
+            return stored;
+        }
+        return ArtifactsFile.read(getArtifactsFile());
+    }
+
+    private File getArtifactsFile() {
+        return new File(build.getRootDir(), ArtifactsFile.NAME);
     }
 
     public void doDownload(final StaplerRequest request, final StaplerResponse response) throws IOException, ServletException {
@@ -86,11 +218,13 @@ public class S3ArtifactsAction implements RunAction2 {
 
         // skip the leading /
         final String artifact = restOfPath.substring(1);
-        for (FingerprintRecord record : artifacts) {
+        for (FingerprintRecord record : getRecords()) {
             if (record.getArtifact().getName().equals(artifact)) {
                 final S3Profile s3 = S3BucketPublisher.getProfile(profile);
-                final AmazonS3Client client = s3.getClient(record.getArtifact().getRegion());
-                final String url = getDownloadURL(client, s3.getSignedUrlExpirySeconds(), build, record);
+                final String url;
+                try (ClientCache<ClientKey, AmazonS3Client>.Lease client = s3.leaseClient(record.getArtifact().getRegion())) {
+                    url = getDownloadURL(client.get(), s3.getSignedUrlExpirySeconds(), build, record);
+                }
                 response.sendRedirect2(url);
                 return;
             }
@@ -107,15 +241,15 @@ public class S3ArtifactsAction implements RunAction2 {
      * access S3.
      */
     private String getDownloadURL(AmazonS3Client client, int signedUrlExpirySeconds, Run run, FingerprintRecord record) {
-        final Destination dest = Destination.newFromRun(run, record.getArtifact());
+        final Destination dest = Destination.newFromRecord(run, record);
         final GeneratePresignedUrlRequest request = new GeneratePresignedUrlRequest(dest.bucketName, dest.objectName);
         request.setExpiration(new Date(System.currentTimeMillis() + signedUrlExpirySeconds*1000));
 
         if (!record.isShowDirectlyInBrowser()) {
             // let the browser use the last part of the name, not the full path
-            // when saving.
+            // when saving. The object of a content-addressed artifact is named by its hash.
             final ResponseHeaderOverrides headers = new ResponseHeaderOverrides();
-            final String fileName = (new File(dest.objectName)).getName().trim();
+            final String fileName = FilenameUtils.getName(record.getName()).trim();
             headers.setContentDisposition("attachment; filename=\"" + fileName + '"');
             request.setResponseHeaders(headers);
         }
@@ -11,15 +11,20 @@ import hudson.AbortException;
 import hudson.Extension;
 import hudson.FilePath;
 import hudson.Launcher;
+import hudson.ProxyConfiguration;
 import hudson.Util;
+import hudson.XmlFile;
 import hudson.model.AbstractProject;
 import hudson.model.Action;
 import hudson.model.Fingerprint;
 import hudson.model.Item;
 import hudson.model.Result;
 import hudson.model.Run;
+import hudson.model.Saveable;
 import hudson.model.TaskListener;
 import hudson.model.listeners.RunListener;
+import hudson.model.listeners.SaveableListener;
+import hudson.plugins.s3.callable.WorkspaceScanCallable;
 import hudson.tasks.BuildStepDescriptor;
 import hudson.tasks.BuildStepMonitor;
 import hudson.tasks.Fingerprinter.FingerprintAction;
@@ -45,10 +50,13 @@ import javax.annotation.Nonnull;
 import java.io.IOException;
 import java.io.PrintStream;
 import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.Collection;
 import java.util.HashMap;
+import java.util.HashSet;
 import java.util.List;
 import java.util.Map;
+import java.util.Set;
 import java.util.logging.Level;
 import java.util.logging.Logger;
 
@@ -211,11 +219,15 @@ public final class S3BucketPublisher extends Recorder implements SimpleBuildStep
     }
 
     private void log(final Level level, final PrintStream logger, final String message) {
-        if(level.intValue() >= consoleLogLevel.intValue()) {
-            logger.println(StringUtils.defaultString(getDescriptor().getDisplayName()) + ' ' + message);
+        if (isLogged(level)) {
+            logger.println(StringUtils.defaultString(DESCRIPTOR.getDisplayName()) + ' ' + message);
         }
     }
 
+    private boolean isLogged(final Level level) {
+        return level.intValue() >= consoleLogLevel.intValue();
+    }
+
     @Override
     public void perform(@Nonnull Run<?, ?> run, @Nonnull FilePath ws, @Nonnull Launcher launcher, @Nonnull TaskListener listener)
             throws InterruptedException, IOException {
@@ -241,6 +253,7 @@ public final class S3BucketPublisher extends Recorder implements SimpleBuildStep
         }
 
         log(console, "Using S3 profile: " + profile.getName());
+        final boolean keepStructure = profile.isKeepStructure();
 
         try {
             final Map<String, String> envVars = run.getEnvironment(listener);
@@ -264,25 +277,21 @@ public final class S3BucketPublisher extends Recorder implements SimpleBuildStep
                 final String storageClass = Util.replaceMacro(entry.storageClass, envVars);
                 final String selRegion = entry.selectedRegion;
 
-                final List<FilePath> paths = new ArrayList<>();
+                final List<FileManifest.Entry> files = new ArrayList<>();
                 final List<String> filenames = new ArrayList<>();
 
-                for (String startPath : expanded.split(",")) {
-                    for (FilePath path : ws.list(startPath, exclude)) {
-                        if (path.isDirectory()) {
-                            throw new IOException(path + " is a directory");
-                        }
-
-                        paths.add(path);
-                        final int workspacePath = FileHelper.getSearchPathLength(ws.getRemote(),
-                                startPath.trim(),
-                                getProfile().isKeepStructure());
-                        filenames.add(getFilename(path, entry.flatten, workspacePath));
-                        log(console, "bucket=" + bucket + ", file=" + path.getName() + " region=" + selRegion + ", will be uploaded from slave=" + entry.uploadFromSlave + " managed=" + entry.managedArtifacts + " , server encryption " + entry.useServerSideEncryption);
+                // all search paths are matched and their files stat'ed with one call to the node of the workspace
+                final List<FileManifest> manifests = ws.act(new WorkspaceScanCallable(Arrays.asList(expanded.split(",")), exclude));
+                new FileNameMapper(ws.getRemote(), entry.flatten, keepStructure).map(manifests, files, filenames);
+
+                if (isLogged(Level.INFO)) {
+                    final String details = " region=" + selRegion + ", will be uploaded from slave=" + entry.uploadFromSlave + " managed=" + entry.managedArtifacts + " , server encryption " + entry.useServerSideEncryption;
+                    for (FileManifest.Entry file : files) {
+                        log(console, "bucket=" + bucket + ", file=" + file.getName() + details);
                     }
                 }
 
-                if (paths.isEmpty()) {
+                if (files.isEmpty()) {
                     printDiagnostics(ws, console, expanded);
                     continue;
                 }
@@ -291,7 +300,7 @@ public final class S3BucketPublisher extends Recorder implements SimpleBuildStep
                 final Map<String, String> escapedMetadata = buildMetadata(envVars, entry);
 
                 final List<FingerprintRecord> records = Lists.newArrayList();
-                final List<FingerprintRecord> fingerprints = profile.upload(run, bucket, paths, filenames, escapedMetadata, storageClass, selRegion, entry.uploadFromSlave, entry.managedArtifacts, entry.useServerSideEncryption, entry.gzipFiles);
+                final List<FingerprintRecord> fingerprints = profile.upload(run, bucket, files, filenames, escapedMetadata, storageClass, selRegion, entry.uploadFromSlave, entry.managedArtifacts, entry.useServerSideEncryption, entry.getCompression(), entry.skipUnchanged, entry.contentAddressed);
 
                 for (FingerprintRecord fingerprintRecord : fingerprints) {
                     records.add(fingerprintRecord);
@@ -309,6 +318,7 @@ public final class S3BucketPublisher extends Recorder implements SimpleBuildStep
             if (!artifacts.isEmpty()) {
                 addS3ArtifactsAction(run, profile, artifacts);
                 addFingerprintAction(run, record);
+                writeManifests(run, profile, artifacts);
             }
         } catch (AmazonClientException|IOException e) {
             if (!isDontSetBuildResultOnFailure()) {
@@ -321,15 +331,40 @@ public final class S3BucketPublisher extends Recorder implements SimpleBuildStep
         }
     }
 
-    private void addS3ArtifactsAction(Run<?, ?> run, S3Profile profile, List<FingerprintRecord> artifacts) {
+    private void addS3ArtifactsAction(Run<?, ?> run, S3Profile profile, List<FingerprintRecord> artifacts) throws IOException {
         S3ArtifactsAction existingAction = run.getAction(S3ArtifactsAction.class);
         if (existingAction != null) {
-            existingAction.getArtifacts().addAll(artifacts);
+            existingAction.addArtifacts(artifacts);
         } else {
             run.addAction(new S3ArtifactsAction(run, profile, artifacts));
         }
     }
 
+    /**
+     * Rewrites the manifest of each bucket that content-addressed artifacts were just published to,
+     * it lists the ones of earlier publishers of the build as well.
+     */
+    private void writeManifests(Run<?, ?> run, S3Profile profile, List<FingerprintRecord> published) throws IOException {
+        final Set<String> buckets = new HashSet<>();
+        for (FingerprintRecord record : published) {
+            if (record.getArtifact().isContentAddressed()) {
+                buckets.add(record.getArtifact().getBucket());
+            }
+        }
+        for (String bucket : buckets) {
+            final List<FingerprintRecord> records = new ArrayList<>();
+            String region = null;
+            // all of them, the user running the build may not be allowed to see artifacts
+            for (FingerprintRecord record : run.getAction(S3ArtifactsAction.class).readArtifacts()) {
+                if (record.getArtifact().isContentAddressed() && record.getArtifact().getBucket().equals(bucket)) {
+                    records.add(record);
+                    region = record.getArtifact().getRegion();
+                }
+            }
+            profile.writeManifest(run, bucket, region, records);
+        }
+    }
+
     private void addFingerprintAction(Run<?, ?> run, Map<String, String> record) {
         FingerprintAction existingAction = run.getAction(FingerprintAction.class);
         if (existingAction != null) {
@@ -392,33 +427,37 @@ public final class S3BucketPublisher extends Recorder implements SimpleBuildStep
         return escapedMetadata;
     }
 
-    private String getFilename(FilePath src, boolean flatten, int searchIndex) {
-        final String fileName;
-        if (flatten) {
-            fileName = src.getName();
-        } else {
-            final String relativeFileName = src.getRemote();
-            fileName = relativeFileName.substring(searchIndex);
-        }
-        return fileName;
-    }
-
     @Extension
     public static final class S3DeletedJobListener extends RunListener<Run> {
+        private static final Logger LOGGER = Logger.getLogger(S3DeletedJobListener.class.getName());
+
         @Override
         public void onDeleted(Run run) {
             final S3ArtifactsAction artifacts = run.getAction(S3ArtifactsAction.class);
             if (artifacts != null) {
                 final S3Profile profile = S3BucketPublisher.getProfile(artifacts.getProfile());
-                for (FingerprintRecord record : artifacts.getArtifacts()) {
-                    if (!record.isKeepForever()) {
-                        profile.delete(run, record);
-                    }
+                try {
+                    DeletionQueue.get().schedule(profile.planDeletion(run, artifacts.readArtifacts()));
+                } catch (IOException e) {
+                    LOGGER.log(Level.WARNING, "Failed to schedule the deletion of the S3 artifacts of " + run, e);
                 }
             }
         }
     }
 
+    /**
+     * Clients are built with the proxy settings, so they are replaced when those change.
+     */
+    @Extension
+    public static final class ProxyChangeListener extends SaveableListener {
+        @Override
+        public void onChange(Saveable o, XmlFile file) {
+            if (o instanceof ProxyConfiguration) {
+                ClientHelper.invalidateClients();
+            }
+        }
+    }
+
     public BuildStepMonitor getRequiredMonitorService() {
         return dontWaitForConcurrentBuildCompletion ? BuildStepMonitor.NONE : BuildStepMonitor.STEP;
     }
@@ -463,6 +502,7 @@ public final class S3BucketPublisher extends Recorder implements SimpleBuildStep
                 profiles.replaceBy(req.bindJSON(S3Profile.class, json.getJSONObject("profile")));
             }
             save();
+            ClientHelper.invalidateClients();
             return true;
         }
 
@@ -504,6 +544,7 @@ public final class S3BucketPublisher extends Recorder implements SimpleBuildStep
         public void replaceProfiles(List<S3Profile> profiles) {
             this.profiles.replaceBy(profiles);
             save();
+            ClientHelper.invalidateClients();
         }
 
         public Level[] getConsoleLogLevels() {
@@ -515,6 +556,11 @@ public final class S3BucketPublisher extends Recorder implements SimpleBuildStep
             return profiles.toArray(profileArray);
         }
 
+        @SuppressWarnings("unused")
+        public String getClientStatistics() {
+            return ClientHelper.getClientStatistics();
+        }
+
         public Result[] getPluginFailureResultConstraints() {
             return pluginFailureResultConstraints.clone();
         }
@@ -562,6 +608,24 @@ public final class S3BucketPublisher extends Recorder implements SimpleBuildStep
             return FormValidation.ok("Check passed!");
         }
 
+        @SuppressWarnings("unused")
+        public FormValidation doCheckMultipartThresholdMegabytes(@QueryParameter String value) {
+            final int megabytes;
+            try {
+                megabytes = Integer.parseInt(Util.fixNull(value).trim());
+            } catch (NumberFormatException e) {
+                return FormValidation.error("Please, enter a number of megabytes");
+            }
+            if (megabytes <= 0) {
+                return FormValidation.error("The threshold must be positive");
+            }
+            if (megabytes > S3Profile.MAX_MULTIPART_THRESHOLD_MEGABYTES) {
+                return FormValidation.error("S3 accepts at most " + S3Profile.MAX_MULTIPART_THRESHOLD_MEGABYTES
+                        + " MB in a single upload, larger files have to be uploaded in parts");
+            }
+            return FormValidation.ok();
+        }
+
         @Override
         public boolean isApplicable(Class<? extends AbstractProject> aClass) {
             return true;
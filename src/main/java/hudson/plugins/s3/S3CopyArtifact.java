@@ -38,12 +38,14 @@ import hudson.maven.MavenModuleSetBuild;
 import hudson.model.AbstractBuild;
 import hudson.model.AbstractProject;
 import hudson.model.Build;
+import hudson.model.Computer;
 import hudson.model.Descriptor;
 import hudson.model.EnvironmentContributingAction;
 import hudson.model.Fingerprint;
 import hudson.model.FingerprintMap;
 import hudson.model.Item;
 import hudson.model.Job;
+import hudson.model.Node;
 import hudson.model.Project;
 import hudson.model.Result;
 import hudson.model.Run;
@@ -100,12 +102,24 @@ public class S3CopyArtifact extends Builder implements SimpleBuildStep {
     private /*almost final*/ BuildSelector selector;
     private final Boolean flatten;
     private final Boolean optional;
+    private final Boolean incremental;
 
     private static final BuildSelector DEFAULT_BUILD_SELECTOR = new StatusBuildSelector(true);
 
-    @DataBoundConstructor
+    /**
+     * Size of the cache of downloaded artifacts on each node, 0 disables it.
+     */
+    private static final long CACHE_MEGABYTES = Long.getLong(S3CopyArtifact.class.getName() + ".cacheMegabytes", 10240);
+
+    @Deprecated
     public S3CopyArtifact(String projectName, BuildSelector buildSelector, String filter,
                           String excludeFilter, String target, boolean flatten, boolean optional) {
+        this(projectName, buildSelector, filter, excludeFilter, target, flatten, optional, false);
+    }
+
+    @DataBoundConstructor
+    public S3CopyArtifact(String projectName, BuildSelector buildSelector, String filter,
+                          String excludeFilter, String target, boolean flatten, boolean optional, boolean incremental) {
         // Prevents both invalid values and access to artifacts of projects which this user cannot see.
         // If value is parameterized, it will be checked when build runs.
         if (projectName.indexOf('$') < 0 && new JobResolver(projectName).job == null)
@@ -122,6 +136,7 @@ public class S3CopyArtifact extends Builder implements SimpleBuildStep {
         this.target = Util.fixNull(target).trim();
         this.flatten = flatten ? Boolean.TRUE : null;
         this.optional = optional ? Boolean.TRUE : null;
+        this.incremental = incremental ? Boolean.TRUE : null;
     }
 
     public String getProjectName() {
@@ -151,6 +166,10 @@ public class S3CopyArtifact extends Builder implements SimpleBuildStep {
         return optional != null && optional;
     }
 
+    public boolean isIncremental() {
+        return incremental != null && incremental;
+    }
+
     private void setResult(@Nonnull Run<?, ?> run, boolean isOk) {
         if (isOptional()) {
             return;
@@ -267,7 +286,9 @@ public class S3CopyArtifact extends Builder implements SimpleBuildStep {
         }
 
         targetDir.mkdirs();
-        final List<FingerprintRecord> records = profile.downloadAll(src, action.getArtifacts(), includeFilter, excludeFilter, targetDir, isFlatten());
+        final LocalContentCache cache = isIncremental() ? getCache(targetDir) : null;
+        final List<FingerprintRecord> records = profile.downloadAll(src, action.getArtifacts(), includeFilter, excludeFilter, targetDir,
+                isFlatten(), isIncremental(), cache);
 
         final Map<String, String> fingerprints = Maps.newHashMap();
         for(FingerprintRecord record : records) {
@@ -298,6 +319,22 @@ public class S3CopyArtifact extends Builder implements SimpleBuildStep {
         return !fingerprints.isEmpty() || isOptional();
     }
 
+    /**
+     * The cache of downloaded artifacts in the root directory of the node the target directory is on.
+     */
+    private static LocalContentCache getCache(FilePath targetDir) {
+        if (CACHE_MEGABYTES <= 0) {
+            return null;
+        }
+        final Computer computer = targetDir.toComputer();
+        final Node node = computer != null ? computer.getNode() : null;
+        final FilePath root = node != null ? node.getRootPath() : null;
+        if (root == null) {
+            return null;
+        }
+        return new LocalContentCache(root.child("s3-artifact-cache").getRemote(), CACHE_MEGABYTES * 1024 * 1024);
+    }
+
     // Find the job from the given name; usually just a Hudson.getItemByFullName lookup,
     // but this class encapsulates additional logic like filtering on parameters.
     private static class JobResolver {
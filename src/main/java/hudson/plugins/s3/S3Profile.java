@@ -2,36 +2,57 @@ package hudson.plugins.s3;
 
 import hudson.FilePath;
 
+import java.io.ByteArrayInputStream;
 import java.io.IOException;
+import java.nio.charset.StandardCharsets;
 import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
 import java.util.List;
 import java.util.Map;
+import java.util.Set;
 import java.util.concurrent.Callable;
-import java.util.concurrent.TimeUnit;
+import java.util.concurrent.Future;
+import java.util.logging.Logger;
 
 import hudson.ProxyConfiguration;
+import hudson.plugins.s3.callable.BatchDigestCallable;
+import hudson.plugins.s3.callable.CloseUploadsCallable;
 import hudson.plugins.s3.callable.MasterSlaveCallable;
-import hudson.plugins.s3.callable.S3CleanupUploadCallable;
+import hudson.plugins.s3.callable.S3BatchDownloadCallable;
+import hudson.plugins.s3.callable.S3BatchUploadCallable;
 import hudson.plugins.s3.callable.S3DownloadCallable;
-import hudson.plugins.s3.callable.S3GzipCallable;
+import hudson.plugins.s3.callable.S3CompressedUploadCallable;
 import hudson.plugins.s3.callable.S3UploadCallable;
-import hudson.plugins.s3.callable.S3WaitUploadCallable;
 import jenkins.model.Jenkins;
 import org.apache.commons.io.FilenameUtils;
 import org.kohsuke.stapler.DataBoundConstructor;
 
 import com.amazonaws.services.s3.AmazonS3Client;
 import com.amazonaws.services.s3.model.DeleteObjectRequest;
-import com.amazonaws.services.s3.model.GetObjectRequest;
-import com.amazonaws.services.s3.model.ListObjectsRequest;
-import com.amazonaws.services.s3.model.ObjectListing;
+import com.amazonaws.services.s3.model.ObjectMetadata;
 import com.amazonaws.services.s3.model.S3ObjectSummary;
-import com.google.common.collect.Lists;
 
 import hudson.model.Run;
 import hudson.util.Secret;
 
 public class S3Profile {
+    private static final Logger LOGGER = Logger.getLogger(S3Profile.class.getName());
+
+    private static final int DEFAULT_UPLOAD_CONCURRENCY = 8;
+    private static final int DEFAULT_UPLOAD_MEGABYTES_IN_FLIGHT = 256;
+    private static final int DEFAULT_DOWNLOAD_CONCURRENCY = 8;
+    private static final int DEFAULT_COMPRESSION_BLOCK_KILOBYTES = 128;
+    private static final int DEFAULT_UPLOAD_PART_MEGABYTES = 16;
+    private static final int DEFAULT_MULTIPART_THRESHOLD_MEGABYTES = 16;
+    private static final int DEFAULT_PART_UPLOAD_CONCURRENCY = 2;
+    private static final int DEFAULT_AGENT_SHARE_PERCENT = 100;
+    private static final int MAX_UPLOAD_PART_MEGABYTES = 1024;
+    static final int MAX_MULTIPART_THRESHOLD_MEGABYTES = (int) (TransferSettings.MAX_SINGLE_PUT_SIZE / (1024 * 1024));
+    private static final int UPLOAD_BATCH_SIZE = 1000;
+    private static final int DOWNLOAD_BATCH_SIZE = 1000;
+
     private final String name;
     private final String accessKey;
     private final Secret secretKey;
@@ -43,9 +64,24 @@ public class S3Profile {
 
     private final boolean useRole;
     private final int signedUrlExpirySeconds;
+    private final int maxUploadConcurrency;
+    private final int maxUploadMegabytesInFlight;
+    private final int compressionBlockKilobytes;
+    private final int uploadPartMegabytes;
+    private final int multipartThresholdMegabytes;
+    private final int maxPartUploadConcurrency;
+    private final int maxDownloadConcurrency;
+    private final int maxRequestsPerSecond;
+    private final int maxMegabytesPerSecond;
+    private final int agentSharePercent;
+
+    private transient TransferScheduler uploadScheduler;
 
     @DataBoundConstructor
-    public S3Profile(String name, String accessKey, String secretKey, boolean useRole, int signedUrlExpirySeconds, String maxUploadRetries, String uploadRetryTime, String maxDownloadRetries, String downloadRetryTime, boolean keepStructure) {
+    public S3Profile(String name, String accessKey, String secretKey, boolean useRole, int signedUrlExpirySeconds, String maxUploadRetries, String uploadRetryTime, String maxDownloadRetries, String downloadRetryTime, boolean keepStructure,
+                     String maxUploadConcurrency, String maxUploadMegabytesInFlight, String compressionBlockKilobytes,
+                     String uploadPartMegabytes, String multipartThresholdMegabytes, String maxPartUploadConcurrency,
+                     String maxDownloadConcurrency, String maxRequestsPerSecond, String maxMegabytesPerSecond, String agentSharePercent) {
         this.name = name;
         this.useRole = useRole;
         this.maxUploadRetries = parseWithDefault(maxUploadRetries, 5);
@@ -53,6 +89,16 @@ public class S3Profile {
         this.maxDownloadRetries = parseWithDefault(maxDownloadRetries, 5);
         this.downloadRetryTime = parseWithDefault(downloadRetryTime, 5);
         this.signedUrlExpirySeconds = signedUrlExpirySeconds;
+        this.maxUploadConcurrency = parseWithDefault(maxUploadConcurrency, DEFAULT_UPLOAD_CONCURRENCY);
+        this.maxUploadMegabytesInFlight = parseWithDefault(maxUploadMegabytesInFlight, DEFAULT_UPLOAD_MEGABYTES_IN_FLIGHT);
+        this.compressionBlockKilobytes = parseWithDefault(compressionBlockKilobytes, DEFAULT_COMPRESSION_BLOCK_KILOBYTES);
+        this.uploadPartMegabytes = parseWithDefault(uploadPartMegabytes, DEFAULT_UPLOAD_PART_MEGABYTES);
+        this.multipartThresholdMegabytes = parseWithDefault(multipartThresholdMegabytes, DEFAULT_MULTIPART_THRESHOLD_MEGABYTES);
+        this.maxPartUploadConcurrency = parseWithDefault(maxPartUploadConcurrency, DEFAULT_PART_UPLOAD_CONCURRENCY);
+        this.maxDownloadConcurrency = parseWithDefault(maxDownloadConcurrency, DEFAULT_DOWNLOAD_CONCURRENCY);
+        this.maxRequestsPerSecond = parseWithDefault(maxRequestsPerSecond, 0);
+        this.maxMegabytesPerSecond = parseWithDefault(maxMegabytesPerSecond, 0);
+        this.agentSharePercent = parseWithDefault(agentSharePercent, DEFAULT_AGENT_SHARE_PERCENT);
         if (useRole) {
             this.accessKey = "";
             this.secretKey = null;
@@ -100,6 +146,14 @@ public class S3Profile {
         return uploadRetryTime;
     }
 
+    public RetryPolicy getUploadRetryPolicy() {
+        return new RetryPolicy(maxUploadRetries, uploadRetryTime);
+    }
+
+    public RetryPolicy getDownloadRetryPolicy() {
+        return new RetryPolicy(maxDownloadRetries, downloadRetryTime);
+    }
+
     public /*final*/ String getName() {
         return this.name;
     }
@@ -116,13 +170,109 @@ public class S3Profile {
         return signedUrlExpirySeconds;
     }
 
-    public AmazonS3Client getClient(String region) {
-        return ClientHelper.createClient(accessKey, Secret.toString(secretKey), useRole, region, getProxy());
+    /**
+     * Number of files uploaded in parallel, profiles saved before this setting existed get the default.
+     */
+    public int getMaxUploadConcurrency() {
+        return maxUploadConcurrency > 0 ? maxUploadConcurrency : DEFAULT_UPLOAD_CONCURRENCY;
+    }
+
+    public int getMaxUploadMegabytesInFlight() {
+        return maxUploadMegabytesInFlight > 0 ? maxUploadMegabytesInFlight : DEFAULT_UPLOAD_MEGABYTES_IN_FLIGHT;
+    }
+
+    /**
+     * Size of the blocks gzip compresses in parallel. Smaller blocks spread small files over
+     * more cores, larger ones compress slightly better.
+     */
+    public int getCompressionBlockKilobytes() {
+        return compressionBlockKilobytes >= 32 ? compressionBlockKilobytes : DEFAULT_COMPRESSION_BLOCK_KILOBYTES;
+    }
+
+    /**
+     * Size of the parts of multipart uploads, S3 requires at least 5 MB.
+     */
+    public int getUploadPartMegabytes() {
+        return uploadPartMegabytes >= 5 ? Math.min(uploadPartMegabytes, MAX_UPLOAD_PART_MEGABYTES) : DEFAULT_UPLOAD_PART_MEGABYTES;
+    }
+
+    /**
+     * Files up to this size are uploaded with a single request, S3 accepts at most 5 GB.
+     */
+    public int getMultipartThresholdMegabytes() {
+        return multipartThresholdMegabytes > 0 ? Math.min(multipartThresholdMegabytes, MAX_MULTIPART_THRESHOLD_MEGABYTES) : DEFAULT_MULTIPART_THRESHOLD_MEGABYTES;
+    }
+
+    /**
+     * Number of parts of a single file uploaded in parallel.
+     */
+    public int getMaxPartUploadConcurrency() {
+        return maxPartUploadConcurrency > 0 ? maxPartUploadConcurrency : DEFAULT_PART_UPLOAD_CONCURRENCY;
+    }
+
+    /**
+     * Number of artifacts downloaded in parallel.
+     */
+    public int getMaxDownloadConcurrency() {
+        return maxDownloadConcurrency > 0 ? maxDownloadConcurrency : DEFAULT_DOWNLOAD_CONCURRENCY;
+    }
+
+    /**
+     * S3 requests per second of the transfers to one bucket, 0 for no limit.
+     */
+    public int getMaxRequestsPerSecond() {
+        return Math.max(maxRequestsPerSecond, 0);
+    }
+
+    /**
+     * Megabytes per second transferred to or from one bucket, 0 for no limit.
+     */
+    public int getMaxMegabytesPerSecond() {
+        return Math.max(maxMegabytesPerSecond, 0);
+    }
+
+    /**
+     * Percentage of the rate limits each agent gets for the transfers it does itself.
+     */
+    public int getAgentSharePercent() {
+        return agentSharePercent > 0 && agentSharePercent <= 100 ? agentSharePercent : DEFAULT_AGENT_SHARE_PERCENT;
+    }
+
+    /**
+     * The budget shared by the transfers of the profile on the controller.
+     */
+    public RateLimit getRateLimit() {
+        return new RateLimit(name, getMaxRequestsPerSecond(), getMaxMegabytesPerSecond() * 1024.0 * 1024.0);
+    }
+
+    public TransferSettings getTransferSettings() {
+        return getTransferSettings(false);
+    }
+
+    /**
+     * @param onAgent whether the transfers run on an agent, which only gets its share of the rate limits
+     */
+    public TransferSettings getTransferSettings(boolean onAgent) {
+        final RateLimit rateLimit = onAgent ? getRateLimit().share(getAgentSharePercent()) : getRateLimit();
+        return new TransferSettings(getUploadPartMegabytes() * 1024 * 1024, getMultipartThresholdMegabytes() * 1024L * 1024L,
+                getMaxUploadConcurrency(), getMaxPartUploadConcurrency(), getMaxUploadMegabytesInFlight() * 1024L * 1024L, rateLimit);
+    }
+
+    private synchronized TransferScheduler getUploadScheduler() {
+        if (uploadScheduler == null) {
+            uploadScheduler = new TransferScheduler("S3 upload [" + name + "]",
+                    getMaxUploadConcurrency(), getMaxUploadMegabytesInFlight() * 1024L * 1024L);
+        }
+        return uploadScheduler;
+    }
+
+    public ClientCache<ClientKey, AmazonS3Client>.Lease leaseClient(String region) {
+        return ClientHelper.leaseClient(accessKey, secretKey, useRole, region, getProxy());
     }
 
     public List<FingerprintRecord> upload(Run<?, ?> run,
                                     final String bucketName,
-                                    final List<FilePath> filePaths,
+                                    final List<FileManifest.Entry> files,
                                     final List<String> fileNames,
                                     final Map<String, String> userMetadata,
                                     final String storageClass,
@@ -130,166 +280,429 @@ public class S3Profile {
                                     final boolean uploadFromSlave,
                                     final boolean managedArtifacts,
                                     final boolean useServerSideEncryption,
-                                    final boolean gzipFiles) throws IOException, InterruptedException {
-        final List<FingerprintRecord> fingerprints = new ArrayList<>(fileNames.size());
+                                    final Compression compression,
+                                    final boolean skipUnchanged,
+                                    final boolean contentAddressed) throws IOException, InterruptedException {
+        final ProxyConfiguration proxy = getProxy();
+        final TransferSettings transferSettings = getTransferSettings(uploadFromSlave);
+        final List<FilePath> filePaths = new ArrayList<>(files.size());
+        for (FileManifest.Entry file : files) {
+            filePaths.add(file.getFile());
+        }
+        // the fingerprint of compressed files is only known once they are compressed, so they can't be stored by it
+        final boolean storeByContent = managedArtifacts && contentAddressed && !compression.isCompressed();
+        final List<String> contentHashes = storeByContent ? digestOnAgent(filePaths) : null;
+        if (storeByContent) {
+            // referenced before the blobs are checked, so they can't be deleted in between
+            ContentStore.get().reference(bucketName, contentHashes);
+        }
+        final Uploads registry = Uploads.open();
+        final List<Destination> destinations = new ArrayList<>(fileNames.size());
+        final List<Boolean> produced = new ArrayList<>(fileNames.size());
+        final List<MasterSlaveCallable<String>> uploads = new ArrayList<>(fileNames.size());
+
+        for (int i = 0; i < fileNames.size(); i++) {
+            final FileManifest.Entry file = files.get(i);
+            final String fileName = fileNames.get(i);
+
+            final Destination dest;
+            if (storeByContent) {
+                dest = Destination.newFromContentHash(bucketName, contentHashes.get(i));
+                produced.add(run.getTimeInMillis() <= file.getLastModified() + 2000);
+            } else if (managedArtifacts) {
+                dest = Destination.newFromRun(run, bucketName, fileName, true);
+                produced.add(run.getTimeInMillis() <= file.getLastModified() + 2000);
+            } else {
+                dest = new Destination(bucketName, fileName);
+                produced.add(false);
+            }
+            destinations.add(dest);
+
+            // all callables share the same credentials, proxy and metadata instances,
+            // so a batch sent to the agent serializes them only once
+            if (compression.isCompressed()) {
+                uploads.add(new S3CompressedUploadCallable(accessKey, secretKey, useRole, dest, userMetadata,
+                        storageClass, selregion, useServerSideEncryption, proxy, compression, getCompressionBlockKilobytes() * 1024, transferSettings, file));
+            } else if (storeByContent) {
+                // a blob which already exists has the same content, it's not uploaded again
+                uploads.add(new S3UploadCallable(accessKey, secretKey, useRole, dest, userMetadata,
+                        storageClass, selregion, useServerSideEncryption, proxy, transferSettings, file, true, contentHashes.get(i), registry.getId()));
+            } else {
+                uploads.add(new S3UploadCallable(accessKey, secretKey, useRole, dest, userMetadata,
+                        storageClass, selregion, useServerSideEncryption, proxy, transferSettings, file, skipUnchanged, null, registry.getId()));
+            }
+        }
 
+        final List<String> md5s;
         try {
-            for (int i = 0; i < fileNames.size(); i++) {
-                final FilePath filePath = filePaths.get(i);
-                final String fileName = fileNames.get(i);
-
-                final Destination dest;
-                final boolean produced;
-                if (managedArtifacts) {
-                    dest = Destination.newFromRun(run, bucketName, fileName, true);
-                    produced = run.getTimeInMillis() <= filePath.lastModified() + 2000;
-                } else {
-                    dest = new Destination(bucketName, fileName);
-                    produced = false;
-                }
-
-                final MasterSlaveCallable<String> upload;
-                if (gzipFiles) {
-                    upload = new S3GzipCallable(accessKey, secretKey, useRole, dest, userMetadata,
-                            storageClass, selregion, useServerSideEncryption, getProxy());
-                } else {
-                    upload = new S3UploadCallable(accessKey, secretKey, useRole, dest, userMetadata,
-                            storageClass, selregion, useServerSideEncryption, getProxy());
-                }
+            if (uploadFromSlave) {
+                md5s = uploadOnAgent(filePaths, uploads, registry.getId());
+            } else {
+                md5s = uploadFromMaster(files, destinations, uploads);
+            }
+        } catch (IOException | InterruptedException | RuntimeException e) {
+            if (storeByContent) {
+                releaseBlobs(bucketName, selregion, contentHashes);
+            }
+            throw e;
+        } finally {
+            registry.close();
+        }
 
-                final FingerprintRecord fingerprintRecord = repeat(maxUploadRetries, uploadRetryTime, dest, new Callable<FingerprintRecord>() {
-                    @Override
-                    public FingerprintRecord call() throws IOException, InterruptedException {
-                        final String md5 = invoke(uploadFromSlave, filePath, upload);
-                        return new FingerprintRecord(produced, bucketName, fileName, selregion, md5);
-                    }
-                });
+        final List<FingerprintRecord> fingerprints = new ArrayList<>(fileNames.size());
+        for (int i = 0; i < fileNames.size(); i++) {
+            fingerprints.add(new FingerprintRecord(produced.get(i), bucketName, fileNames.get(i), selregion, md5s.get(i), storeByContent));
+        }
+        return fingerprints;
+    }
 
-                fingerprints.add(fingerprintRecord);
+    /**
+     * Computes the MD5 sums of the files on their node, in batches of one remoting call each.
+     */
+    private List<String> digestOnAgent(List<FilePath> filePaths) throws IOException, InterruptedException {
+        final List<String> md5s = new ArrayList<>(filePaths.size());
+        for (int from = 0; from < filePaths.size(); from += UPLOAD_BATCH_SIZE) {
+            final int to = Math.min(from + UPLOAD_BATCH_SIZE, filePaths.size());
+            final List<String> remotes = new ArrayList<>(to - from);
+            for (FilePath filePath : filePaths.subList(from, to)) {
+                remotes.add(filePath.getRemote());
             }
+            md5s.addAll(filePaths.get(from).act(new BatchDigestCallable(remotes)));
+        }
+        return md5s;
+    }
 
-            waitUploads(filePaths, uploadFromSlave);
-        } catch (InterruptedException | IOException exception) {
-            cleanupUploads(filePaths, uploadFromSlave);
-            throw exception;
+    /**
+     * Writes the manifest of the content-addressed artifacts which the run published to the bucket, one
+     * "&lt;md5&gt;  &lt;name&gt;" line per artifact like the output of md5sum.
+     */
+    public void writeManifest(Run<?, ?> run, String bucketName, String region, List<FingerprintRecord> records) {
+        final StringBuilder manifest = new StringBuilder();
+        for (FingerprintRecord record : records) {
+            manifest.append(record.getFingerprint()).append("  ").append(record.getName()).append('\n');
+        }
+        final byte[] content = manifest.toString().getBytes(StandardCharsets.UTF_8);
+        final ObjectMetadata metadata = new ObjectMetadata();
+        metadata.setContentType("text/plain; charset=UTF-8");
+        metadata.setContentLength(content.length);
+
+        final Destination dest = Destination.newManifestFromRun(run, bucketName);
+        try (ClientCache<ClientKey, AmazonS3Client>.Lease client = leaseClient(region)) {
+            client.get().putObject(dest.bucketName, dest.objectName, new ByteArrayInputStream(content), metadata);
         }
+    }
 
-        return fingerprints;
+    /**
+     * Releases the references of a build to blobs and deletes the blobs no other build references.
+     */
+    private List<String> releaseBlobs(String bucketName, String region, List<String> md5s) throws IOException {
+        return ContentStore.get().release(bucketName, md5s, blobDeleter(region));
     }
 
-    private void cleanupUploads(final List<FilePath> filePaths, boolean uploadFromSlave) {
-        for (FilePath filePath : filePaths) {
-            try {
-                invoke(uploadFromSlave, filePath, new S3CleanupUploadCallable());
-            }
-            catch (InterruptedException | IOException ignored) {
+    private ContentStore.BlobDeleter blobDeleter(final String region) {
+        return new ContentStore.BlobDeleter() {
+            @Override
+            public List<String> delete(String bucketName, List<String> unreferenced) {
+                final List<String> keys = new ArrayList<>(unreferenced.size());
+                String s3BucketName = null;
+                for (String md5 : unreferenced) {
+                    final Destination dest = Destination.newFromContentHash(bucketName, md5);
+                    s3BucketName = dest.bucketName;
+                    keys.add(dest.objectName);
+                }
+                final Map<String, String> failures;
+                try (ClientCache<ClientKey, AmazonS3Client>.Lease client = leaseClient(region)) {
+                    failures = MultiObjectDelete.delete(client.get(), s3BucketName, keys);
+                }
+                logFailures(s3BucketName, failures);
+                final List<String> failed = new ArrayList<>(failures.size());
+                for (String key : failures.keySet()) {
+                    // blobs are named by their MD5
+                    failed.add(key.substring(key.lastIndexOf('/') + 1));
+                }
+                return failed;
             }
+        };
+    }
+
+    private static void logFailures(String bucketName, Map<String, String> failures) {
+        for (Map.Entry<String, String> failure : failures.entrySet()) {
+            LOGGER.warning("Failed to delete s3://" + bucketName + '/' + failure.getKey() + ": " + failure.getValue());
         }
     }
 
-    private void waitUploads(final List<FilePath> filePaths, boolean uploadFromSlave) throws InterruptedException, IOException {
-        for (FilePath filePath : filePaths) {
-            invoke(uploadFromSlave, filePath, new S3WaitUploadCallable());
+    /**
+     * Sends the files to the agent in batches, each batch is uploaded there with a single remoting call.
+     */
+    private List<String> uploadOnAgent(List<FilePath> filePaths, List<MasterSlaveCallable<String>> uploads, String uploadsId) throws IOException, InterruptedException {
+        final List<String> md5s = new ArrayList<>(filePaths.size());
+        if (filePaths.isEmpty()) {
+            return md5s;
+        }
+        try {
+            for (int from = 0; from < filePaths.size(); from += UPLOAD_BATCH_SIZE) {
+                final int to = Math.min(from + UPLOAD_BATCH_SIZE, filePaths.size());
+                final List<String> remotes = new ArrayList<>(to - from);
+                for (FilePath filePath : filePaths.subList(from, to)) {
+                    remotes.add(filePath.getRemote());
+                }
+
+                final S3BatchUploadCallable batch = new S3BatchUploadCallable(remotes, uploads.subList(from, to),
+                        getMaxUploadConcurrency(), getMaxUploadMegabytesInFlight() * 1024L * 1024L,
+                        getUploadRetryPolicy(), uploadsId);
+                md5s.addAll(filePaths.get(from).act(batch));
+            }
+            return md5s;
+        } finally {
+            closeUploadsOnAgent(filePaths.get(0), uploadsId);
         }
     }
 
-    private <T> T invoke(boolean uploadFromSlave, FilePath filePath, MasterSlaveCallable<T> callable) throws InterruptedException, IOException {
-        if (uploadFromSlave) {
-            return filePath.act(callable);
-        } else {
-            return callable.invoke(filePath);
+    /**
+     * Closes the registry of the uploads on the agent, after all the batches. That's a short call,
+     * so it's made even when the publish was interrupted.
+     */
+    private static void closeUploadsOnAgent(FilePath filePath, String uploadsId) {
+        final boolean interrupted = Thread.interrupted();
+        try {
+            filePath.act(new CloseUploadsCallable(uploadsId));
+        } catch (IOException e) {
+            LOGGER.warning("Failed to close the uploads " + uploadsId + " on the agent: " + e);
+        } catch (InterruptedException e) {
+            LOGGER.warning("Interrupted closing the uploads " + uploadsId + " on the agent");
+            Thread.currentThread().interrupt();
+        } finally {
+            if (interrupted) {
+                Thread.currentThread().interrupt();
+            }
         }
     }
 
-    public List<String> list(Run build, String bucket) {
-        final AmazonS3Client s3client = getClient(ClientHelper.DEFAULT_AMAZON_S3_REGION_NAME);
+    private List<String> uploadFromMaster(final List<FileManifest.Entry> files, List<Destination> destinations, List<MasterSlaveCallable<String>> uploads) throws IOException, InterruptedException {
+        final TransferScheduler scheduler = getUploadScheduler();
+        final List<Future<String>> pending = new ArrayList<>(files.size());
 
-        final String buildName = build.getDisplayName();
-        final int buildID = build.getNumber();
-        final Destination dest = new Destination(bucket, "jobs/" + buildName + '/' + buildID + '/' + name);
+        try {
+            for (int i = 0; i < files.size(); i++) {
+                final FilePath filePath = files.get(i).getFile();
+                final Destination dest = destinations.get(i);
+                final MasterSlaveCallable<String> upload = uploads.get(i);
 
-        final ListObjectsRequest listObjectsRequest = new ListObjectsRequest()
-        .withBucketName(dest.bucketName)
-        .withPrefix(dest.objectName)
-        .withEncodingType("url");
+                pending.add(scheduler.submit(files.get(i).getLength(), new Callable<String>() {
+                    @Override
+                    public String call() throws IOException, InterruptedException {
+                        return getUploadRetryPolicy().call("Upload of " + dest, new Callable<String>() {
+                            @Override
+                            public String call() throws IOException, InterruptedException {
+                                return upload.invoke(filePath);
+                            }
+                        });
+                    }
+                }));
+            }
 
-        final List<String> files = Lists.newArrayList();
+            return TransferScheduler.getAll(pending);
+        } catch (InterruptedException | IOException | RuntimeException exception) {
+            TransferScheduler.cancelAll(pending);
+            throw exception;
+        }
+    }
 
-        ObjectListing objectListing;
-        do {
-          objectListing = s3client.listObjects(listObjectsRequest);
-          for (S3ObjectSummary summary : objectListing.getObjectSummaries()) {
-            final GetObjectRequest req = new GetObjectRequest(dest.bucketName, summary.getKey());
-            files.add(req.getKey());
-          }
-          listObjectsRequest.setMarker(objectListing.getNextMarker());
-        } while (objectListing.isTruncated());
+    /**
+     * Streams the objects under the prefix to the visitor, page by page.
+     *
+     * @param bucket the bucket name, optionally followed by a /path which the prefix is relative to
+     * @return the number of objects listed
+     */
+    public long list(String region, String bucket, String prefix, ObjectLister.Visitor visitor) throws IOException {
+        final Destination dest = new Destination(bucket, prefix);
+        try (ClientCache<ClientKey, AmazonS3Client>.Lease client = leaseClient(region)) {
+            return new ObjectLister(client.get(), dest.bucketName).list(dest.objectName, visitor);
+        }
+    }
+
+    /**
+     * @deprecated holds all the keys in memory, use {@link #list(String, String, String, ObjectLister.Visitor)}
+     */
+    @Deprecated
+    public List<String> list(Run build, String bucket) {
+        final List<String> files = new ArrayList<>();
+        try {
+            list(ClientHelper.DEFAULT_AMAZON_S3_REGION_NAME, bucket, "jobs/" + build.getDisplayName() + '/' + build.getNumber() + '/' + name,
+                    new ObjectLister.Visitor() {
+                        @Override
+                        public void visit(List<S3ObjectSummary> objects) {
+                            for (S3ObjectSummary summary : objects) {
+                                files.add(summary.getKey());
+                            }
+                        }
+                    });
+        } catch (IOException e) {
+            // only thrown by visitors
+            throw new IllegalStateException(e);
+        }
         return files;
-      }
+    }
 
       /**
        * Download all artifacts from a given build
+       *
+       * @param incremental skip artifacts whose target already has the fingerprinted content
+       * @param cache       cache of downloaded artifacts on the node of the target directory, may be null
        */
       public List<FingerprintRecord> downloadAll(Run build,
                                                  final List<FingerprintRecord> artifacts,
                                                  final String includeFilter,
                                                  final String excludeFilter,
                                                  final FilePath targetDir,
-                                                 final boolean flatten) throws IOException, InterruptedException {
-          final List<FingerprintRecord> fingerprints = Lists.newArrayList();
-          for(final FingerprintRecord record : artifacts) {
+                                                 final boolean flatten,
+                                                 final boolean incremental,
+                                                 final LocalContentCache cache) throws IOException, InterruptedException {
+          final ProxyConfiguration proxy = getProxy();
+          final TransferSettings transferSettings = getTransferSettings(targetDir.isRemote());
+          final List<S3Artifact> selected = new ArrayList<>();
+          final List<Destination> destinations = new ArrayList<>();
+          final List<String> targets = new ArrayList<>();
+          final List<String> expected = new ArrayList<>();
+          final List<S3DownloadCallable> downloads = new ArrayList<>();
+          final FileMatcher matcher = FileMatcher.compile(includeFilter, excludeFilter);
+          for (FingerprintRecord record : artifacts) {
               final S3Artifact artifact = record.getArtifact();
-              final Destination dest = Destination.newFromRun(build, artifact);
-              final FilePath target = getFilePath(targetDir, flatten, artifact.getName());
-
-              if (FileHelper.selected(includeFilter, excludeFilter, artifact.getName())) {
-                  fingerprints.add(repeat(maxDownloadRetries, downloadRetryTime, dest, new Callable<FingerprintRecord>() {
-                      @Override
-                      public FingerprintRecord call() throws IOException, InterruptedException {
-                          final String md5 = target.act(new S3DownloadCallable(accessKey, secretKey, useRole, dest, artifact.getRegion(), getProxy()));
-                          return new FingerprintRecord(true, dest.bucketName, target.getName(), artifact.getRegion(), md5);
-                      }
-                  }));
+              if (!matcher.matches(artifact.getName())) {
+                  continue;
+              }
+              final Destination dest = Destination.newFromRecord(build, record);
+              selected.add(artifact);
+              destinations.add(dest);
+              targets.add(getTargetPath(flatten, artifact.getName()));
+              expected.add(record.getFingerprint());
+              downloads.add(new S3DownloadCallable(accessKey, secretKey, useRole, dest, artifact.getRegion(), proxy, transferSettings));
+          }
+
+          final List<FingerprintRecord> fingerprints = new ArrayList<>(selected.size());
+          for (int from = 0; from < selected.size(); from += DOWNLOAD_BATCH_SIZE) {
+              final int to = Math.min(from + DOWNLOAD_BATCH_SIZE, selected.size());
+              final S3BatchDownloadCallable batch = new S3BatchDownloadCallable(targets.subList(from, to), downloads.subList(from, to),
+                      incremental ? expected.subList(from, to) : null, cache, getMaxDownloadConcurrency(), getDownloadRetryPolicy());
+              final List<String> md5s = targetDir.act(batch);
+              for (int i = from; i < to; i++) {
+                  fingerprints.add(new FingerprintRecord(true, destinations.get(i).bucketName, FilenameUtils.getName(targets.get(i)), selected.get(i).getRegion(), md5s.get(i - from)));
               }
           }
           return fingerprints;
       }
 
-    private <T> T repeat(int maxRetries, int waitTime, Destination dest, Callable<T> func) throws IOException, InterruptedException {
-        int retryCount = 0;
-
-        while (true) {
-            try {
-                return func.call();
-            } catch (Exception e) {
-                retryCount++;
-                if(retryCount >= maxRetries){
-                    throw new IOException("Call fails for " + dest + ": " + e + ":: Failed after " + retryCount + " tries.", e);
-                }
-                Thread.sleep(TimeUnit.SECONDS.toMillis(waitTime));
-            }
-        }
-    }
-
-    private FilePath getFilePath(FilePath targetDir, boolean flatten, String fullName) {
+    private String getTargetPath(boolean flatten, String fullName) {
         if (flatten) {
-            return new FilePath(targetDir, FilenameUtils.getName(fullName));
+            return FilenameUtils.getName(fullName);
         }
         else  {
-            return new FilePath(targetDir, fullName);
+            return fullName;
         }
     }
 
     /**
        * Delete some artifacts of a given run
        */
-      public void delete(Run run, FingerprintRecord record) {
-          final Destination dest = Destination.newFromRun(run, record.getArtifact());
+      public void delete(Run run, FingerprintRecord record) throws IOException {
+          final S3Artifact artifact = record.getArtifact();
+          if (artifact.isContentAddressed()) {
+              releaseBlobs(artifact.getBucket(), artifact.getRegion(), Collections.singletonList(record.getFingerprint()));
+              return;
+          }
+          final Destination dest = Destination.newFromRun(run, artifact);
           final DeleteObjectRequest req = new DeleteObjectRequest(dest.bucketName, dest.objectName);
-          final AmazonS3Client client = getClient(record.getArtifact().getRegion());
-          client.deleteObject(req);
+          try (ClientCache<ClientKey, AmazonS3Client>.Lease client = leaseClient(artifact.getRegion())) {
+              client.get().deleteObject(req);
+          }
       }
 
+      /**
+       * Plans the deletion of the artifacts of a deleted run, except the ones to keep forever, for the {@link DeletionQueue}.
+       *
+       * Each task holds up to 1000 keys of a bucket, i.e. one multi-object delete request. The content-addressed artifacts
+       * of a bucket are released together, and its manifest is deleted once none of its artifacts are kept.
+       */
+      public List<DeletionTask> planDeletion(Run run, List<FingerprintRecord> records) {
+          // keys of the objects to delete, by region and bucket
+          final Map<String, Map<String, List<String>>> objects = new HashMap<>();
+          final Map<String, Map<String, List<String>>> blobs = new HashMap<>();
+          final Set<String> kept = new HashSet<>();
+          for (FingerprintRecord record : records) {
+              final S3Artifact artifact = record.getArtifact();
+              if (record.isKeepForever()) {
+                  if (artifact.isContentAddressed()) {
+                      kept.add(artifact.getBucket());
+                  }
+              } else if (artifact.isContentAddressed()) {
+                  addKey(blobs, artifact.getRegion(), artifact.getBucket(), record.getFingerprint());
+              } else {
+                  final Destination dest = Destination.newFromRun(run, artifact);
+                  addKey(objects, artifact.getRegion(), dest.bucketName, dest.objectName);
+              }
+          }
+          for (Map.Entry<String, Map<String, List<String>>> region : blobs.entrySet()) {
+              for (String bucket : region.getValue().keySet()) {
+                  if (!kept.contains(bucket)) {
+                      final Destination manifest = Destination.newManifestFromRun(run, bucket);
+                      addKey(objects, region.getKey(), manifest.bucketName, manifest.objectName);
+                  }
+              }
+          }
+
+          final List<DeletionTask> tasks = new ArrayList<>();
+          addTasks(tasks, objects, DeletionTask.Kind.OBJECTS);
+          addTasks(tasks, blobs, DeletionTask.Kind.RELEASE_BLOBS);
+          return tasks;
+      }
+
+    private static void addKey(Map<String, Map<String, List<String>>> keys, String region, String bucketName, String key) {
+        Map<String, List<String>> buckets = keys.get(region);
+        if (buckets == null) {
+            buckets = new HashMap<>();
+            keys.put(region, buckets);
+        }
+        List<String> bucketKeys = buckets.get(bucketName);
+        if (bucketKeys == null) {
+            bucketKeys = new ArrayList<>();
+            buckets.put(bucketName, bucketKeys);
+        }
+        bucketKeys.add(key);
+    }
+
+    private void addTasks(List<DeletionTask> tasks, Map<String, Map<String, List<String>>> keys, DeletionTask.Kind kind) {
+        for (Map.Entry<String, Map<String, List<String>>> region : keys.entrySet()) {
+            for (Map.Entry<String, List<String>> bucket : region.getValue().entrySet()) {
+                final List<String> bucketKeys = bucket.getValue();
+                for (int from = 0; from < bucketKeys.size(); from += MultiObjectDelete.MAX_KEYS_PER_REQUEST) {
+                    final int to = Math.min(from + MultiObjectDelete.MAX_KEYS_PER_REQUEST, bucketKeys.size());
+                    tasks.add(new DeletionTask(name, region.getKey(), bucket.getKey(), kind, bucketKeys.subList(from, to)));
+                }
+            }
+        }
+    }
+
+    /**
+     * Runs a task of the {@link DeletionQueue}.
+     *
+     * @return the keys of the task which couldn't be deleted
+     */
+    public List<String> delete(DeletionTask task) throws IOException {
+        switch (task.getKind()) {
+            case RELEASE_BLOBS:
+                return releaseBlobs(task.getBucket(), task.getRegion(), task.getKeys());
+            case UNREFERENCED_BLOBS:
+                return ContentStore.get().deleteUnreferenced(task.getBucket(), task.getKeys(), blobDeleter(task.getRegion()));
+            default:
+                final Map<String, String> failures;
+                try (ClientCache<ClientKey, AmazonS3Client>.Lease client = leaseClient(task.getRegion())) {
+                    failures = MultiObjectDelete.delete(client.get(), task.getBucket(), task.getKeys());
+                }
+                logFailures(task.getBucket(), failures);
+                return new ArrayList<>(failures.keySet());
+        }
+    }
+
     @Override
     public String toString() {
         return "S3Profile{" +
@@ -0,0 +1,127 @@
+package hudson.plugins.s3;
+
+import com.amazonaws.AbortedException;
+import com.amazonaws.services.s3.AbstractAmazonS3;
+import com.amazonaws.services.s3.AmazonS3;
+import com.amazonaws.services.s3.model.AbortMultipartUploadRequest;
+import com.amazonaws.services.s3.model.CompleteMultipartUploadRequest;
+import com.amazonaws.services.s3.model.CompleteMultipartUploadResult;
+import com.amazonaws.services.s3.model.GetObjectMetadataRequest;
+import com.amazonaws.services.s3.model.GetObjectRequest;
+import com.amazonaws.services.s3.model.InitiateMultipartUploadRequest;
+import com.amazonaws.services.s3.model.InitiateMultipartUploadResult;
+import com.amazonaws.services.s3.model.ListPartsRequest;
+import com.amazonaws.services.s3.model.ObjectMetadata;
+import com.amazonaws.services.s3.model.PartListing;
+import com.amazonaws.services.s3.model.PutObjectRequest;
+import com.amazonaws.services.s3.model.PutObjectResult;
+import com.amazonaws.services.s3.model.S3Object;
+import com.amazonaws.services.s3.model.UploadPartRequest;
+import com.amazonaws.services.s3.model.UploadPartResult;
+
+/**
+ * Takes the requests and transferred bytes of the transfer operations from a {@link RateLimit}.
+ * The other operations aren't supported.
+ */
+final class ThrottledAmazonS3 extends AbstractAmazonS3 {
+    private final AmazonS3 client;
+    private final RateLimit rateLimit;
+
+    ThrottledAmazonS3(AmazonS3 client, RateLimit rateLimit) {
+        this.client = client;
+        this.rateLimit = rateLimit;
+    }
+
+    @Override
+    public ObjectMetadata getObjectMetadata(String bucketName, String key) {
+        return getObjectMetadata(new GetObjectMetadataRequest(bucketName, key));
+    }
+
+    @Override
+    public ObjectMetadata getObjectMetadata(GetObjectMetadataRequest request) {
+        acquireRequest(request.getBucketName());
+        return client.getObjectMetadata(request);
+    }
+
+    @Override
+    public S3Object getObject(GetObjectRequest request) {
+        acquireRequest(request.getBucketName());
+        final S3Object object = client.getObject(request);
+        if (object != null) {
+            // keeps the HTTP request of the original content, so aborting still works
+            object.setObjectContent(rateLimit.throttle(request.getBucketName(), object.getObjectContent()));
+        }
+        return object;
+    }
+
+    @Override
+    public PutObjectResult putObject(PutObjectRequest request) {
+        acquireRequest(request.getBucketName());
+        if (request.getInputStream() != null) {
+            request.setInputStream(rateLimit.throttle(request.getBucketName(), request.getInputStream()));
+        } else if (request.getFile() != null) {
+            acquireBytes(request.getBucketName(), request.getFile().length());
+        }
+        return client.putObject(request);
+    }
+
+    @Override
+    public InitiateMultipartUploadResult initiateMultipartUpload(InitiateMultipartUploadRequest request) {
+        acquireRequest(request.getBucketName());
+        return client.initiateMultipartUpload(request);
+    }
+
+    @Override
+    public UploadPartResult uploadPart(UploadPartRequest request) {
+        acquireRequest(request.getBucketName());
+        if (request.getInputStream() != null) {
+            request.setInputStream(rateLimit.throttle(request.getBucketName(), request.getInputStream()));
+        } else if (request.getFile() != null) {
+            // the SDK reads the part from the file at its offset, its bytes are taken up front
+            acquireBytes(request.getBucketName(), request.getPartSize());
+        }
+        return client.uploadPart(request);
+    }
+
+    @Override
+    public PartListing listParts(ListPartsRequest request) {
+        // the transfer manager lists the parts of a file upload to skip those already sent
+        acquireRequest(request.getBucketName());
+        return client.listParts(request);
+    }
+
+    @Override
+    public CompleteMultipartUploadResult completeMultipartUpload(CompleteMultipartUploadRequest request) {
+        acquireRequest(request.getBucketName());
+        return client.completeMultipartUpload(request);
+    }
+
+    @Override
+    public void abortMultipartUpload(AbortMultipartUploadRequest request) {
+        // cleanup isn't held back
+        client.abortMultipartUpload(request);
+    }
+
+    @Override
+    public void shutdown() {
+        client.shutdown();
+    }
+
+    private void acquireBytes(String bucketName, long count) {
+        try {
+            rateLimit.acquireBytes(bucketName, count);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new AbortedException("Interrupted while waiting for the transfer budget of " + bucketName, e);
+        }
+    }
+
+    private void acquireRequest(String bucketName) {
+        try {
+            rateLimit.acquireRequest(bucketName);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new AbortedException("Interrupted while waiting for the request budget of " + bucketName, e);
+        }
+    }
+}
@@ -0,0 +1,54 @@
+package hudson.plugins.s3;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Thread-safe token bucket: permits are refilled at a steady rate, and up to a burst of them
+ * can be taken at once after an idle period.
+ */
+public final class TokenBucket {
+    private final double permitsPerSecond;
+    private final double burst;
+    private double available;
+    private long refilledAt = System.nanoTime();
+
+    /**
+     * @param permitsPerSecond refill rate, not positive for no limit
+     * @param burst            permits available at most
+     */
+    public TokenBucket(double permitsPerSecond, double burst) {
+        this.permitsPerSecond = permitsPerSecond;
+        this.burst = Math.max(burst, 1);
+        this.available = this.burst;
+    }
+
+    public boolean isUnlimited() {
+        return permitsPerSecond <= 0;
+    }
+
+    /**
+     * Takes the permits, waiting until they are available. Requests larger than the burst wait for
+     * the permits they exceed it by, so a single large request isn't blocked forever.
+     */
+    public void acquire(double permits) throws InterruptedException {
+        if (isUnlimited() || permits <= 0) {
+            return;
+        }
+        final long waitNanos;
+        synchronized (this) {
+            refill();
+            // taken right away, later callers wait for the debt to be refilled
+            available -= permits;
+            waitNanos = available < 0 ? (long) (-available / permitsPerSecond * TimeUnit.SECONDS.toNanos(1)) : 0;
+        }
+        if (waitNanos > 0) {
+            TimeUnit.NANOSECONDS.sleep(waitNanos);
+        }
+    }
+
+    private void refill() {
+        final long now = System.nanoTime();
+        available = Math.min(burst, available + (now - refilledAt) * permitsPerSecond / TimeUnit.SECONDS.toNanos(1));
+        refilledAt = now;
+    }
+}
@@ -0,0 +1,213 @@
+package hudson.plugins.s3;
+
+import hudson.util.DaemonThreadFactory;
+import hudson.util.NamingThreadFactory;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Future;
+import java.util.concurrent.FutureTask;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.logging.Logger;
+
+/**
+ * Runs transfers on a bounded thread pool.
+ *
+ * Besides capping the number of concurrent transfers, the scheduler keeps track
+ * of how many bytes are being transferred and holds back new submissions while
+ * the configured budget is used up. A single transfer larger than the budget
+ * is admitted on its own.
+ */
+public final class TransferScheduler {
+    private static final Logger LOGGER = Logger.getLogger(TransferScheduler.class.getName());
+    private static final long IDLE_TIMEOUT_SECONDS = 60;
+    private static final long CANCEL_TIMEOUT_NANOS =
+            TimeUnit.SECONDS.toNanos(Long.getLong(TransferScheduler.class.getName() + ".cancelTimeoutSeconds", 30));
+
+    private final ThreadPoolExecutor executor;
+    private final long maxBytesInFlight;
+    private long bytesInFlight; // guarded by this
+
+    /**
+     * @param name             prefix of the worker thread names
+     * @param concurrency      maximum number of transfers running at once
+     * @param maxBytesInFlight maximum number of bytes being transferred at once, or {@code 0} for no limit
+     */
+    public TransferScheduler(String name, int concurrency, long maxBytesInFlight) {
+        if (concurrency < 1) {
+            throw new IllegalArgumentException("Concurrency must be positive: " + concurrency);
+        }
+        this.executor = new ThreadPoolExecutor(concurrency, concurrency,
+                IDLE_TIMEOUT_SECONDS, TimeUnit.SECONDS, new LinkedBlockingQueue<Runnable>(),
+                new NamingThreadFactory(new DaemonThreadFactory(), name));
+        // idle schedulers (e.g. of a profile which was reconfigured) don't keep threads around
+        this.executor.allowCoreThreadTimeOut(true);
+        this.maxBytesInFlight = maxBytesInFlight;
+    }
+
+    public int getConcurrency() {
+        return executor.getMaximumPoolSize();
+    }
+
+    public long getMaxBytesInFlight() {
+        return maxBytesInFlight;
+    }
+
+    /**
+     * Schedules a transfer of the given size, blocking while the byte budget is exhausted.
+     */
+    public <T> Future<T> submit(long bytes, final Callable<T> transfer) throws InterruptedException {
+        final Transfer<T> task = new Transfer<>(transfer, reserve(bytes));
+        try {
+            executor.execute(task);
+            return task;
+        } catch (RejectedExecutionException e) {
+            task.cancel(false);
+            throw e;
+        }
+    }
+
+    private synchronized long reserve(long bytes) throws InterruptedException {
+        if (maxBytesInFlight <= 0) {
+            return 0;
+        }
+        final long reserved = Math.min(Math.max(bytes, 0), maxBytesInFlight);
+        while (bytesInFlight > 0 && bytesInFlight + reserved > maxBytesInFlight) {
+            wait();
+        }
+        bytesInFlight += reserved;
+        return reserved;
+    }
+
+    private synchronized void release(long reserved) {
+        if (reserved > 0) {
+            bytesInFlight -= reserved;
+            notifyAll();
+        }
+    }
+
+    public void shutdown() {
+        for (Runnable queued : executor.shutdownNow()) {
+            // never runs, so whoever waits for it isn't held up
+            ((Future<?>) queued).cancel(false);
+        }
+    }
+
+    /**
+     * Waits for all the transfers and returns their results in submission order.
+     * If any transfer fails, the remaining ones are cancelled and the failure is rethrown.
+     */
+    public static <T> List<T> getAll(List<Future<T>> futures) throws IOException, InterruptedException {
+        final List<T> results = new ArrayList<>(futures.size());
+        try {
+            for (Future<T> future : futures) {
+                results.add(future.get());
+            }
+            return results;
+        } catch (ExecutionException e) {
+            cancelAll(futures);
+            final Throwable cause = e.getCause();
+            if (cause instanceof IOException) {
+                throw (IOException) cause;
+            }
+            if (cause instanceof InterruptedException) {
+                throw (InterruptedException) cause;
+            }
+            if (cause instanceof RuntimeException) {
+                throw (RuntimeException) cause;
+            }
+            if (cause instanceof Error) {
+                throw (Error) cause;
+            }
+            throw new IOException(cause);
+        } catch (InterruptedException | CancellationException e) {
+            cancelAll(futures);
+            throw e;
+        }
+    }
+
+    /**
+     * Cancels the transfers and waits a bounded time for the running ones to stop, so the streams
+     * and uploads they use can be closed afterwards. The interrupt status of the caller is kept.
+     */
+    public static void cancelAll(List<? extends Future<?>> futures) {
+        for (Future<?> future : futures) {
+            future.cancel(true);
+        }
+
+        final long deadline = System.nanoTime() + CANCEL_TIMEOUT_NANOS;
+        boolean interrupted = false;
+        try {
+            for (Future<?> future : futures) {
+                if (!(future instanceof Transfer)) {
+                    continue;
+                }
+                while (true) {
+                    try {
+                        if (!((Transfer<?>) future).finished.await(deadline - System.nanoTime(), TimeUnit.NANOSECONDS)) {
+                            LOGGER.warning("Cancelled transfers are still running after "
+                                    + TimeUnit.NANOSECONDS.toSeconds(CANCEL_TIMEOUT_NANOS) + " seconds");
+                            return;
+                        }
+                        break;
+                    } catch (InterruptedException e) {
+                        interrupted = true;
+                    }
+                }
+            }
+        } finally {
+            if (interrupted) {
+                Thread.currentThread().interrupt();
+            }
+        }
+    }
+
+    /**
+     * Releases its share of the byte budget once it stopped running, or once cancelled before it started.
+     */
+    private final class Transfer<T> extends FutureTask<T> {
+        private final long reserved;
+        private final AtomicBoolean started = new AtomicBoolean();
+        private final CountDownLatch finished = new CountDownLatch(1);
+
+        Transfer(Callable<T> transfer, long reserved) {
+            super(transfer);
+            this.reserved = reserved;
+        }
+
+        @Override
+        public void run() {
+            if (!started.compareAndSet(false, true)) {
+                return;
+            }
+            try {
+                super.run();
+            } finally {
+                finish();
+            }
+        }
+
+        @Override
+        public boolean cancel(boolean mayInterruptIfRunning) {
+            final boolean cancelled = super.cancel(mayInterruptIfRunning);
+            if (started.compareAndSet(false, true)) {
+                finish();
+            }
+            return cancelled;
+        }
+
+        private void finish() {
+            release(reserved);
+            finished.countDown();
+        }
+    }
+}
@@ -0,0 +1,157 @@
+package hudson.plugins.s3;
+
+import com.amazonaws.client.builder.ExecutorFactory;
+import com.amazonaws.services.s3.AmazonS3;
+import com.amazonaws.services.s3.transfer.TransferManager;
+import com.amazonaws.services.s3.transfer.TransferManagerBuilder;
+import hudson.util.DaemonThreadFactory;
+import hudson.util.NamingThreadFactory;
+
+import java.io.Serializable;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Multipart settings and rate limit of a profile, sent along with the callables to the node doing the transfer.
+ * Each distinct combination gets its own, once configured TransferManager there.
+ */
+public final class TransferSettings implements Serializable {
+    private static final long serialVersionUID = 1L;
+
+    /**
+     * Largest object S3 accepts in a single PUT request.
+     */
+    public static final long MAX_SINGLE_PUT_SIZE = 5L * 1024 * 1024 * 1024;
+
+    /**
+     * Threads of a TransferManager at least, as many as the SDK gives it by default.
+     */
+    public static final int MIN_TRANSFER_THREADS = 10;
+
+    public static final TransferSettings DEFAULT = new TransferSettings(16 * 1024 * 1024, 16 * 1024 * 1024, 2);
+
+    private final int partSize;
+    private final long multipartThreshold;
+    private final int fileConcurrency;
+    private final int partConcurrency;
+    private final long maxBufferedBytes;
+    private final RateLimit rateLimit;
+
+    /**
+     * @param partSize           size of the parts of a multipart upload, at least 5 MB
+     * @param multipartThreshold files larger than this are uploaded in parts, at most {@link #MAX_SINGLE_PUT_SIZE}
+     * @param partConcurrency    number of parts of one file uploaded in parallel
+     */
+    public TransferSettings(int partSize, long multipartThreshold, int partConcurrency) {
+        this(partSize, multipartThreshold, 1, partConcurrency, 0, RateLimit.UNLIMITED);
+    }
+
+    /**
+     * @param fileConcurrency  number of files uploaded in parallel
+     * @param maxBufferedBytes the byte budget of the uploads, which the parts of a streamed upload have to fit in,
+     *                         not positive for no limit
+     * @param rateLimit        budget of the transfers on the node doing them
+     */
+    public TransferSettings(int partSize, long multipartThreshold, int fileConcurrency, int partConcurrency, long maxBufferedBytes, RateLimit rateLimit) {
+        this.partSize = Math.max(partSize, MultipartUploadOutputStream.MIN_PART_SIZE);
+        this.multipartThreshold = Math.min(Math.max(multipartThreshold, this.partSize), MAX_SINGLE_PUT_SIZE);
+        this.fileConcurrency = Math.max(fileConcurrency, 1);
+        this.partConcurrency = Math.max(partConcurrency, 1);
+        this.maxBufferedBytes = Math.max(maxBufferedBytes, 0);
+        this.rateLimit = rateLimit;
+    }
+
+    public int getPartSize() {
+        return partSize;
+    }
+
+    public long getMultipartThreshold() {
+        return multipartThreshold;
+    }
+
+    public int getFileConcurrency() {
+        return fileConcurrency;
+    }
+
+    public int getPartConcurrency() {
+        return partConcurrency;
+    }
+
+    /**
+     * Threads of the TransferManager, which runs the single PUTs, the parts and the monitors of all its
+     * uploads, so every file uploaded in parallel can have its parts in flight.
+     */
+    public int getTransferThreads() {
+        return Math.max(MIN_TRANSFER_THREADS, fileConcurrency * partConcurrency);
+    }
+
+    /**
+     * Number of parts of a streamed upload, e.g. of compressed output, uploaded in parallel. These parts and
+     * the one being filled are held in memory, which has to fit the byte budget of the uploads. Parts of
+     * files uploaded from disk are read from the file instead, they use {@link #getPartConcurrency()}.
+     */
+    public int getStreamingPartConcurrency() {
+        if (maxBufferedBytes == 0) {
+            return partConcurrency;
+        }
+        return (int) Math.max(1, Math.min(partConcurrency, maxBufferedBytes / partSize - 1));
+    }
+
+    public RateLimit getRateLimit() {
+        return rateLimit;
+    }
+
+    /**
+     * A TransferManager configured with these settings, whose requests and bytes are taken from their rate limit.
+     * Its configuration must never be changed afterwards, it's shared by all transfers with these settings.
+     */
+    public TransferManager newTransferManager(AmazonS3 client) {
+        final int threads = getTransferThreads();
+        return TransferManagerBuilder.standard()
+                .withS3Client(rateLimit.wrap(client))
+                .withMinimumUploadPartSize((long) partSize)
+                .withMultipartUploadThreshold(multipartThreshold)
+                .withExecutorFactory(new ExecutorFactory() {
+                    @Override
+                    public ExecutorService newExecutor() {
+                        // idle managers don't keep their threads
+                        final ThreadPoolExecutor executor = new ThreadPoolExecutor(threads, threads,
+                                60L, TimeUnit.SECONDS, new LinkedBlockingQueue<Runnable>(),
+                                new NamingThreadFactory(new DaemonThreadFactory(), "S3 transfer"));
+                        executor.allowCoreThreadTimeOut(true);
+                        return executor;
+                    }
+                })
+                .build();
+    }
+
+    @Override
+    public boolean equals(Object o) {
+        if (this == o) {
+            return true;
+        }
+        if (!(o instanceof TransferSettings)) {
+            return false;
+        }
+        final TransferSettings that = (TransferSettings) o;
+        return partSize == that.partSize && multipartThreshold == that.multipartThreshold
+                && fileConcurrency == that.fileConcurrency && partConcurrency == that.partConcurrency
+                && maxBufferedBytes == that.maxBufferedBytes && rateLimit.equals(that.rateLimit);
+    }
+
+    @Override
+    public int hashCode() {
+        int result = 31 * partSize + Long.hashCode(multipartThreshold);
+        result = 31 * result + fileConcurrency;
+        result = 31 * result + partConcurrency;
+        result = 31 * result + Long.hashCode(maxBufferedBytes);
+        return 31 * result + rateLimit.hashCode();
+    }
+
+    @Override
+    public String toString() {
+        return partSize + "_" + multipartThreshold + '_' + fileConcurrency + '_' + partConcurrency + '_' + maxBufferedBytes + '_' + rateLimit;
+    }
+}
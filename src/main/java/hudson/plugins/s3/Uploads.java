@@ -1,78 +1,182 @@
 package hudson.plugins.s3;
 
-import com.amazonaws.AmazonServiceException;
+import com.amazonaws.AmazonClientException;
 import com.amazonaws.services.s3.model.ObjectMetadata;
 import com.amazonaws.services.s3.model.PutObjectRequest;
 import com.amazonaws.services.s3.transfer.TransferManager;
 import com.amazonaws.services.s3.transfer.Upload;
-import hudson.FilePath;
 
+import java.io.File;
 import java.io.IOException;
 import java.io.InputStream;
-import java.util.HashMap;
+import java.util.Map;
+import java.util.UUID;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
 import java.util.logging.Logger;
 
+/**
+ * Running uploads of one publish operation. Each upload is tracked by the handle returned when
+ * it's started, so publishers running concurrently never see each other's uploads.
+ *
+ * The registry is found by its id on every node taking part in the publish, see {@link #forId(String)}.
+ */
 public final class Uploads {
-    private Uploads() {}
     private static final Logger LOGGER = Logger.getLogger(Uploads.class.getName());
-    private static final int MULTIPART_UPLOAD_THRESHOLD = 16*1024*1024; // 16 MB
 
-    private static transient volatile Uploads instance;
-    private final transient HashMap<FilePath, Upload> startedUploads = new HashMap<>();
-    private final transient HashMap<FilePath, InputStream> openedStreams = new HashMap<>();
+    /**
+     * Heap each upload of a stream which can't be reset may use to resend data.
+     */
+    private static final int MAX_RESEND_BUFFER_SIZE = 16 * 1024 * 1024;
 
-    public Upload startUploading(TransferManager manager, FilePath file, InputStream inputsStream, String bucketName, String objectName, ObjectMetadata metadata) throws AmazonServiceException {
+    private static final Map<String, Uploads> registries = new ConcurrentHashMap<>();
+
+    private final String id;
+    private final AtomicLong handles = new AtomicLong();
+    private final Map<Long, Upload> startedUploads = new ConcurrentHashMap<>();
+    private final Map<Long, InputStream> openedStreams = new ConcurrentHashMap<>();
+    private TransferScheduler scheduler; // guarded by this
+
+    private Uploads(String id) {
+        this.id = id;
+    }
+
+    /**
+     * Creates the registry of a new publish operation, {@link #close()} it once the publish is done.
+     */
+    public static Uploads open() {
+        final Uploads uploads = new Uploads(UUID.randomUUID().toString());
+        registries.put(uploads.id, uploads);
+        return uploads;
+    }
+
+    /**
+     * The registry with the given id on this node, created on first use.
+     */
+    public static Uploads forId(String id) {
+        final Uploads uploads = registries.get(id);
+        if (uploads != null) {
+            return uploads;
+        }
+        final Uploads created = new Uploads(id);
+        final Uploads existing = registries.putIfAbsent(id, created);
+        return existing != null ? existing : created;
+    }
+
+    public String getId() {
+        return id;
+    }
+
+    /**
+     * The scheduler of the uploads of this registry on this node. It's created by the first batch
+     * of the publish, shared by the later ones and shut down when the registry is closed.
+     */
+    public synchronized TransferScheduler getScheduler(int concurrency, long maxBytesInFlight) {
+        if (scheduler == null) {
+            scheduler = new TransferScheduler("S3 upload " + id, concurrency, maxBytesInFlight);
+        }
+        return scheduler;
+    }
+
+    /**
+     * @return the handle of the upload, to be passed to {@link #finishUploading(long)}
+     */
+    public long startUploading(TransferManager manager, InputStream inputsStream, String bucketName, String objectName, ObjectMetadata metadata) throws AmazonClientException {
         final PutObjectRequest request = new PutObjectRequest(bucketName, objectName, inputsStream, metadata);
 
-        // Set the buffer size (ReadLimit) equal to the multipart upload size,
-        // allowing us to resend data if the connection breaks.
-        request.getRequestClientOptions().setReadLimit(MULTIPART_UPLOAD_THRESHOLD);
-        manager.getConfiguration().setMultipartUploadThreshold( (long) MULTIPART_UPLOAD_THRESHOLD);
+        // Streams which can't be reset themselves are buffered by the SDK up to the ReadLimit,
+        // allowing it to resend data if the connection breaks. Larger ones are retried as a whole.
+        final long threshold = manager.getConfiguration().getMultipartUploadThreshold();
+        request.getRequestClientOptions().setReadLimit((int) Math.min(threshold, MAX_RESEND_BUFFER_SIZE) + 1);
+
+        final long handle = handles.incrementAndGet();
+        openedStreams.put(handle, inputsStream);
+        try {
+            startedUploads.put(handle, manager.upload(request));
+        } catch (AmazonClientException e) {
+            closeStream(handle);
+            throw e;
+        }
+        return handle;
+    }
 
-        final Upload upload = manager.upload(request);
-        startedUploads.put(file, upload);
-        openedStreams.put(file, inputsStream);
-        return upload;
+    /**
+     * Uploads a local file. Files above the multipart threshold of the manager are uploaded in parts
+     * on its threads, each part read from the file at its offset, so they aren't held in memory.
+     *
+     * @return the handle of the upload, to be passed to {@link #finishUploading(long)}
+     */
+    public long startUploading(TransferManager manager, File file, String bucketName, String objectName, ObjectMetadata metadata) throws AmazonClientException {
+        final PutObjectRequest request = new PutObjectRequest(bucketName, objectName, file).withMetadata(metadata);
+        final long handle = handles.incrementAndGet();
+        startedUploads.put(handle, manager.upload(request));
+        return handle;
     }
 
-    public void finishUploading(FilePath filePath) throws InterruptedException {
-        final Upload upload = startedUploads.remove(filePath);
+    /**
+     * Waits for the upload. If that's interrupted, e.g. because the publish was cancelled, the upload is aborted.
+     */
+    public void finishUploading(long handle) throws InterruptedException {
+        final Upload upload = startedUploads.get(handle);
         if (upload == null) {
-            LOGGER.info("File: " + filePath.getName() + " already was uploaded");
+            LOGGER.info("Upload " + handle + " of " + id + " already was finished");
             return;
         }
         try {
             upload.waitForCompletion();
+        } catch (InterruptedException e) {
+            upload.abort();
+            throw e;
+        } finally {
+            startedUploads.remove(handle);
+            closeStream(handle);
+        }
+    }
+
+    /**
+     * Aborts the uploads which are still running and closes their streams.
+     */
+    public void cleanup() {
+        for (Map.Entry<Long, Upload> entry : startedUploads.entrySet()) {
+            if (startedUploads.remove(entry.getKey(), entry.getValue())) {
+                abort(entry.getValue());
+            }
         }
-        finally {
-            closeStream(filePath);
+        for (Long handle : openedStreams.keySet()) {
+            closeStream(handle);
+        }
+    }
+
+    /**
+     * Cleans up and forgets this registry.
+     */
+    public void close() {
+        registries.remove(id, this);
+        cleanup();
+        synchronized (this) {
+            if (scheduler != null) {
+                scheduler.shutdown();
+                scheduler = null;
+            }
         }
     }
 
-    public void cleanup(FilePath filePath) {
-        startedUploads.remove(filePath);
-        closeStream(filePath);
+    private void abort(Upload upload) {
+        try {
+            upload.abort();
+        } catch (AmazonClientException e) {
+            LOGGER.warning("Failed to abort upload of " + id + ": " + e);
+        }
     }
 
-    private void closeStream(FilePath filePath) {
+    private void closeStream(long handle) {
         try {
-            final InputStream stream = openedStreams.remove(filePath);
+            final InputStream stream = openedStreams.remove(handle);
             if (stream != null) {
                 stream.close();
             }
         } catch (IOException e) {
-            LOGGER.warning("Failed to close stream for file:" + filePath);
-        }
-    }
-
-    public static Uploads getInstance() {
-        if (instance == null) {
-            synchronized (Uploads.class) {
-                if (instance == null) {
-                    instance = new Uploads();
-                }
-            }
+            LOGGER.warning("Failed to close stream of upload " + handle + " of " + id);
         }
-        return instance;
     }
 }
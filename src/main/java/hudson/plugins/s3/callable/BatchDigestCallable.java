@@ -0,0 +1,44 @@
+package hudson.plugins.s3.callable;
+
+import hudson.FilePath.FileCallable;
+import hudson.plugins.s3.MD5;
+import hudson.remoting.VirtualChannel;
+import org.jenkinsci.remoting.RoleChecker;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Computes the MD5 sums of a list of files with a single remoting call, in the same order.
+ */
+public final class BatchDigestCallable implements FileCallable<List<String>> {
+    private static final long serialVersionUID = 1L;
+
+    private final List<String> files;
+
+    /**
+     * @param files remote paths of the files
+     */
+    public BatchDigestCallable(List<String> files) {
+        this.files = new ArrayList<>(files);
+    }
+
+    @Override
+    public List<String> invoke(File f, VirtualChannel channel) throws IOException, InterruptedException {
+        final List<String> md5s = new ArrayList<>(files.size());
+        for (String file : files) {
+            if (Thread.interrupted()) {
+                throw new InterruptedException();
+            }
+            md5s.add(MD5.generateFromFile(new File(file)));
+        }
+        return md5s;
+    }
+
+    @Override
+    public void checkRoles(RoleChecker checker) throws SecurityException {
+
+    }
+}
@@ -0,0 +1,33 @@
+package hudson.plugins.s3.callable;
+
+import hudson.FilePath.FileCallable;
+import hudson.plugins.s3.Uploads;
+import hudson.remoting.VirtualChannel;
+import org.jenkinsci.remoting.RoleChecker;
+
+import java.io.File;
+
+/**
+ * Closes the {@link Uploads} registry of a publish operation on the node of its files,
+ * once the last {@link S3BatchUploadCallable} of the publish is done.
+ */
+public final class CloseUploadsCallable implements FileCallable<Void> {
+    private static final long serialVersionUID = 1L;
+
+    private final String uploadsId;
+
+    public CloseUploadsCallable(String uploadsId) {
+        this.uploadsId = uploadsId;
+    }
+
+    @Override
+    public Void invoke(File f, VirtualChannel channel) {
+        Uploads.forId(uploadsId).close();
+        return null;
+    }
+
+    @Override
+    public void checkRoles(RoleChecker checker) throws SecurityException {
+
+    }
+}
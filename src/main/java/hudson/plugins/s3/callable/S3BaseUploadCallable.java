@@ -4,7 +4,10 @@ import com.amazonaws.services.s3.internal.Mimetypes;
 import com.amazonaws.services.s3.model.ObjectMetadata;
 import hudson.FilePath;
 import hudson.ProxyConfiguration;
+import hudson.plugins.s3.Compression;
 import hudson.plugins.s3.Destination;
+import hudson.plugins.s3.FileManifest;
+import hudson.plugins.s3.TransferSettings;
 import hudson.remoting.VirtualChannel;
 import hudson.util.Secret;
 
@@ -21,16 +24,22 @@ public abstract class S3BaseUploadCallable extends S3Callable<String> {
     private final String storageClass;
     private final Map<String, String> userMetadata;
     private final boolean useServerSideEncryption;
-
+    private final Compression compression;
+    private final long length;
+    private final long lastModified;
 
     public S3BaseUploadCallable(String accessKey, Secret secretKey, boolean useRole,
                                 Destination dest, Map<String, String> userMetadata, String storageClass, String selregion,
-                                boolean useServerSideEncryption, ProxyConfiguration proxy) {
-        super(accessKey, secretKey, useRole, selregion, proxy);
+                                boolean useServerSideEncryption, ProxyConfiguration proxy, Compression compression,
+                                TransferSettings transferSettings, FileManifest.Entry source) {
+        super(accessKey, secretKey, useRole, selregion, proxy, transferSettings);
         this.dest = dest;
         this.storageClass = storageClass;
         this.userMetadata = userMetadata;
         this.useServerSideEncryption = useServerSideEncryption;
+        this.compression = compression;
+        this.length = source.getLength();
+        this.lastModified = source.getLastModified();
     }
 
     /**
@@ -46,11 +55,22 @@ public abstract class S3BaseUploadCallable extends S3Callable<String> {
      */
     public abstract String invoke(FilePath file) throws IOException, InterruptedException;
 
-    protected ObjectMetadata buildMetadata(FilePath filePath) throws IOException, InterruptedException {
+    /**
+     * The length and modification time are taken from the scan of the workspace, the node isn't asked again.
+     */
+    protected ObjectMetadata buildMetadata(FilePath filePath) {
+        final ObjectMetadata metadata = buildStreamMetadata(filePath);
+        metadata.setContentLength(length);
+        return metadata;
+    }
+
+    /**
+     * Metadata for an upload whose length isn't known in advance, e.g. because it's compressed on the fly.
+     */
+    protected ObjectMetadata buildStreamMetadata(FilePath filePath) {
         final ObjectMetadata metadata = new ObjectMetadata();
         metadata.setContentType(Mimetypes.getInstance().getMimetype(filePath.getName()));
-        metadata.setContentLength(filePath.length());
-        metadata.setLastModified(new Date(filePath.lastModified()));
+        metadata.setLastModified(new Date(lastModified));
         if (storageClass != null && !storageClass.isEmpty()) {
             metadata.setHeader("x-amz-storage-class", storageClass);
         }
@@ -83,10 +103,26 @@ public abstract class S3BaseUploadCallable extends S3Callable<String> {
                     break;
             }
         }
+
+        // the stored bytes are encoded with the codec, whatever the user metadata says
+        if (compression.isCompressed()) {
+            metadata.setContentEncoding(compression.getContentEncoding());
+        }
         return metadata;
     }
 
     public Destination getDest() {
         return dest;
     }
+
+    public Compression getCompression() {
+        return compression;
+    }
+
+    /**
+     * Length of the file when the workspace was scanned.
+     */
+    public long getLength() {
+        return length;
+    }
 }
@@ -0,0 +1,126 @@
+package hudson.plugins.s3.callable;
+
+import hudson.FilePath.FileCallable;
+import hudson.plugins.s3.LocalContentCache;
+import hudson.plugins.s3.MD5;
+import hudson.plugins.s3.RetryPolicy;
+import hudson.plugins.s3.TransferScheduler;
+import hudson.remoting.VirtualChannel;
+import org.jenkinsci.remoting.RoleChecker;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.Future;
+
+/**
+ * Downloads a whole list of artifacts into a directory with a single remoting call
+ * and returns their MD5 sums in the same order.
+ *
+ * The per-file download callables are expected to share their credentials and proxy
+ * instances, so serialization only writes them once for the whole batch.
+ *
+ * If the expected fingerprints are given, files whose target already has that content are skipped,
+ * and others are restored from the node's {@link LocalContentCache} before falling back to S3.
+ */
+public final class S3BatchDownloadCallable implements FileCallable<List<String>> {
+    private static final long serialVersionUID = 1L;
+
+    private final List<String> targets;
+    private final List<S3DownloadCallable> downloads;
+    private final List<String> fingerprints;
+    private final LocalContentCache cache;
+    private final int concurrency;
+    private final RetryPolicy retryPolicy;
+
+    /**
+     * @param targets   paths of the downloaded files, relative to the directory the batch is invoked on
+     * @param downloads    download callable of each file
+     * @param fingerprints expected MD5 of each file, null to always download
+     * @param cache        cache of downloaded files on the node, may be null; only used with fingerprints
+     */
+    public S3BatchDownloadCallable(List<String> targets, List<S3DownloadCallable> downloads, List<String> fingerprints, LocalContentCache cache,
+                                   int concurrency, RetryPolicy retryPolicy) {
+        if (targets.size() != downloads.size()) {
+            throw new IllegalArgumentException("Got " + targets.size() + " targets, but " + downloads.size() + " downloads");
+        }
+        if (fingerprints != null && fingerprints.size() != targets.size()) {
+            throw new IllegalArgumentException("Got " + targets.size() + " targets, but " + fingerprints.size() + " fingerprints");
+        }
+        this.targets = new ArrayList<>(targets);
+        this.downloads = new ArrayList<>(downloads);
+        this.fingerprints = fingerprints != null ? new ArrayList<>(fingerprints) : null;
+        this.cache = cache;
+        this.concurrency = concurrency;
+        this.retryPolicy = retryPolicy;
+    }
+
+    @Override
+    public List<String> invoke(File dir, final VirtualChannel channel) throws IOException, InterruptedException {
+        final TransferScheduler scheduler = new TransferScheduler("S3 batch download", concurrency, 0);
+        final List<Future<String>> pending = new ArrayList<>(targets.size());
+        try {
+            for (int i = 0; i < targets.size(); i++) {
+                final File target = new File(dir, targets.get(i));
+                final S3DownloadCallable download = downloads.get(i);
+                final String fingerprint = fingerprints != null ? fingerprints.get(i) : null;
+                pending.add(scheduler.submit(0, new Callable<String>() {
+                    @Override
+                    public String call() throws IOException, InterruptedException {
+                        if (fingerprint == null) {
+                            return downloadWithRetries(target, download, channel);
+                        }
+                        return downloadIfChanged(target, fingerprint, download, channel);
+                    }
+                }));
+            }
+            final List<String> md5s = TransferScheduler.getAll(pending);
+            if (cache != null && fingerprints != null) {
+                cache.trim();
+            }
+            return md5s;
+        } catch (IOException | InterruptedException | RuntimeException e) {
+            TransferScheduler.cancelAll(pending);
+            throw e;
+        } finally {
+            scheduler.shutdown();
+        }
+    }
+
+    private String downloadIfChanged(File target, String fingerprint, S3DownloadCallable download, VirtualChannel channel) throws IOException, InterruptedException {
+        if (cache != null && cache.isLinked(fingerprint, target)) {
+            return fingerprint;
+        }
+        if (target.isFile() && fingerprint.equals(MD5.generateFromFile(target))) {
+            return fingerprint;
+        }
+        if (cache != null && cache.restore(fingerprint, target)) {
+            return fingerprint;
+        }
+
+        // the target may be a read-only link to an older cached version
+        Files.deleteIfExists(target.toPath());
+        final String md5 = downloadWithRetries(target, download, channel);
+        if (cache != null && md5.equals(fingerprint)) {
+            cache.store(md5, target);
+        }
+        return md5;
+    }
+
+    private String downloadWithRetries(final File target, final S3DownloadCallable download, final VirtualChannel channel) throws IOException, InterruptedException {
+        return retryPolicy.call("Download of " + target, new Callable<String>() {
+            @Override
+            public String call() throws IOException, InterruptedException {
+                return download.invoke(target, channel);
+            }
+        });
+    }
+
+    @Override
+    public void checkRoles(RoleChecker checker) throws SecurityException {
+
+    }
+}
@@ -0,0 +1,110 @@
+package hudson.plugins.s3.callable;
+
+import hudson.FilePath;
+import hudson.plugins.s3.RetryPolicy;
+import hudson.plugins.s3.TransferScheduler;
+import hudson.plugins.s3.Uploads;
+import hudson.remoting.VirtualChannel;
+import org.jenkinsci.remoting.RoleChecker;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.Future;
+
+/**
+ * Uploads a whole list of files with a single remoting call and returns their MD5 sums in the same order.
+ *
+ * The per-file upload callables are expected to share their credentials, proxy and
+ * metadata instances, so serialization only writes them once for the whole batch.
+ */
+public final class S3BatchUploadCallable implements MasterSlaveCallable<List<String>> {
+    private static final long serialVersionUID = 1L;
+
+    private final List<String> files;
+    private final List<MasterSlaveCallable<String>> uploads;
+    private final int concurrency;
+    private final long maxBytesInFlight;
+    private final RetryPolicy retryPolicy;
+    private final String uploadsId;
+
+    /**
+     * @param files     remote paths of the files to upload
+     * @param uploads   upload callable of each file
+     * @param uploadsId id of the {@link Uploads} registry of the publish operation
+     */
+    public S3BatchUploadCallable(List<String> files, List<MasterSlaveCallable<String>> uploads,
+                                 int concurrency, long maxBytesInFlight, RetryPolicy retryPolicy, String uploadsId) {
+        if (files.size() != uploads.size()) {
+            throw new IllegalArgumentException("Got " + files.size() + " files, but " + uploads.size() + " uploads");
+        }
+        this.files = new ArrayList<>(files);
+        this.uploads = new ArrayList<>(uploads);
+        this.concurrency = concurrency;
+        this.maxBytesInFlight = maxBytesInFlight;
+        this.retryPolicy = retryPolicy;
+        this.uploadsId = uploadsId;
+    }
+
+    /**
+     * Upload from slave directly
+     */
+    @Override
+    public List<String> invoke(File f, VirtualChannel channel) throws IOException, InterruptedException {
+        final List<FilePath> paths = new ArrayList<>(files.size());
+        for (String file : files) {
+            paths.add(new FilePath(new File(file)));
+        }
+        return upload(paths);
+    }
+
+    /**
+     * Stream from slave to master, then upload from master
+     */
+    @Override
+    public List<String> invoke(FilePath file) throws IOException, InterruptedException {
+        final List<FilePath> paths = new ArrayList<>(files.size());
+        for (String remote : files) {
+            paths.add(new FilePath(file.getChannel(), remote));
+        }
+        return upload(paths);
+    }
+
+    private List<String> upload(List<FilePath> paths) throws IOException, InterruptedException {
+        // the registry and its scheduler outlive the batch, they are closed once the last batch of the publish is done
+        final TransferScheduler scheduler = Uploads.forId(uploadsId).getScheduler(concurrency, maxBytesInFlight);
+        final List<Future<String>> pending = new ArrayList<>(paths.size());
+        try {
+            for (int i = 0; i < paths.size(); i++) {
+                final FilePath path = paths.get(i);
+                final MasterSlaveCallable<String> upload = uploads.get(i);
+                pending.add(scheduler.submit(path.length(), new Callable<String>() {
+                    @Override
+                    public String call() throws IOException, InterruptedException {
+                        return uploadWithRetries(path, upload);
+                    }
+                }));
+            }
+            return TransferScheduler.getAll(pending);
+        } catch (IOException | InterruptedException | RuntimeException e) {
+            TransferScheduler.cancelAll(pending);
+            throw e;
+        }
+    }
+
+    private String uploadWithRetries(final FilePath path, final MasterSlaveCallable<String> upload) throws IOException, InterruptedException {
+        return retryPolicy.call("Upload of " + path.getRemote(), new Callable<String>() {
+            @Override
+            public String call() throws IOException, InterruptedException {
+                return upload.invoke(path);
+            }
+        });
+    }
+
+    @Override
+    public void checkRoles(RoleChecker checker) throws SecurityException {
+
+    }
+}
@@ -4,11 +4,14 @@ import com.amazonaws.services.s3.AmazonS3;
 import com.amazonaws.services.s3.transfer.TransferManager;
 import hudson.FilePath.FileCallable;
 import hudson.ProxyConfiguration;
+import hudson.plugins.s3.ClientCache;
 import hudson.plugins.s3.ClientHelper;
+import hudson.plugins.s3.ClientKey;
+import hudson.plugins.s3.TransferSettings;
 import hudson.util.Secret;
 import org.jenkinsci.remoting.RoleChecker;
 
-import java.util.HashMap;
+import java.util.concurrent.TimeUnit;
 
 abstract class S3Callable<T> implements FileCallable<T> {
     private static final long serialVersionUID = 1L;
@@ -18,33 +21,62 @@ abstract class S3Callable<T> implements FileCallable<T> {
     private final boolean useRole;
     private final String region;
     private final ProxyConfiguration proxy;
+    private final TransferSettings transferSettings;
 
-    private static transient HashMap<String, TransferManager> transferManagers = new HashMap<>();
+    private static final int MAX_TRANSFER_MANAGERS = Integer.getInteger(S3Callable.class.getName() + ".maxTransferManagers", 16);
+    private static final long TRANSFER_MANAGER_IDLE_MILLIS = TimeUnit.MINUTES.toMillis(10);
+
+    private static final ClientCache<ClientKey, TransferManager> transferManagers =
+            new ClientCache<ClientKey, TransferManager>("TransferManager", MAX_TRANSFER_MANAGERS, TRANSFER_MANAGER_IDLE_MILLIS) {
+                @Override
+                protected void dispose(TransferManager manager) {
+                    manager.shutdownNow(true);
+                }
+            };
 
     S3Callable(String accessKey, Secret secretKey, boolean useRole, String region, ProxyConfiguration proxy) {
+        this(accessKey, secretKey, useRole, region, proxy, TransferSettings.DEFAULT);
+    }
+
+    S3Callable(String accessKey, Secret secretKey, boolean useRole, String region, ProxyConfiguration proxy, TransferSettings transferSettings) {
         this.accessKey = accessKey;
         this.secretKey = secretKey;
         this.useRole = useRole;
         this.region = region;
         this.proxy = proxy;
+        this.transferSettings = transferSettings;
+    }
+
+    /**
+     * The manager is configured once when it's built and shared by all transfers with the same
+     * credentials and settings, so its configuration must never be changed afterwards.
+     * The lease must be closed once the transfer is done.
+     */
+    protected ClientCache<ClientKey, TransferManager>.Lease leaseTransferManager() {
+        final ClientKey key = ClientKey.of(accessKey, secretKey, useRole, region, proxy).with(transferSettings);
+        return transferManagers.acquire(key, new ClientCache.Factory<TransferManager>() {
+            @Override
+            public TransferManager create() {
+                final AmazonS3 client = ClientHelper.createClient(accessKey, Secret.toString(secretKey), useRole, region, proxy);
+                // the settings are part of the key, so the manager's requests and bytes are taken from their rate limit
+                return transferSettings.newTransferManager(client);
+            }
+        });
     }
 
-    protected synchronized TransferManager getTransferManager() {
-        final String uniqueKey = getUniqueKey();
-        if (transferManagers.get(uniqueKey) == null) {
-            final AmazonS3 client = ClientHelper.createClient(accessKey, Secret.toString(secretKey), useRole, region, proxy);
-            transferManagers.put(uniqueKey, new TransferManager(client));
-        }
+    protected TransferSettings getTransferSettings() {
+        return transferSettings;
+    }
 
-        return transferManagers.get(uniqueKey);
+    /**
+     * The client of the manager, with the requests and bytes of this transfer taken from the rate limit of the profile.
+     */
+    protected AmazonS3 getClient(TransferManager manager) {
+        return manager.getAmazonS3Client();
     }
 
     @Override
     public void checkRoles(RoleChecker roleChecker) throws SecurityException {
 
     }
-
-    private String getUniqueKey() {
-        return region + '_' + secretKey + '_' + accessKey + '_' + useRole;
-    }
-}
\ No newline at end of file
+}
@@ -0,0 +1,71 @@
+package hudson.plugins.s3.callable;
+
+import com.amazonaws.services.s3.model.ObjectMetadata;
+import com.amazonaws.services.s3.transfer.TransferManager;
+import hudson.FilePath;
+import hudson.ProxyConfiguration;
+import hudson.plugins.s3.ClientCache;
+import hudson.plugins.s3.ClientKey;
+import hudson.plugins.s3.Compression;
+import hudson.plugins.s3.Destination;
+import hudson.plugins.s3.FileManifest;
+import hudson.plugins.s3.DigestingInputStream;
+import hudson.plugins.s3.MultipartUploadOutputStream;
+import hudson.plugins.s3.TransferSettings;
+import hudson.util.Secret;
+import org.apache.commons.io.IOUtils;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.util.Map;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+public final class S3CompressedUploadCallable extends S3BaseUploadCallable implements MasterSlaveCallable<String> {
+    private static final long serialVersionUID = 1L;
+    private static final Logger LOGGER = Logger.getLogger(S3CompressedUploadCallable.class.getName());
+
+    private final int compressionBlockSize;
+
+    public S3CompressedUploadCallable(String accessKey, Secret secretKey, boolean useRole, Destination dest, Map<String, String> userMetadata, String storageClass, String selregion, boolean useServerSideEncryption, ProxyConfiguration proxy,
+                                      Compression compression, int compressionBlockSize, TransferSettings transferSettings, FileManifest.Entry source) {
+        super(accessKey, secretKey, useRole, dest, userMetadata, storageClass, selregion, useServerSideEncryption, proxy, compression, transferSettings, source);
+        this.compressionBlockSize = compressionBlockSize;
+    }
+
+    /**
+     * Compresses the file while uploading it, nothing is written to disk.
+     * Returns the MD5 of the file as a download writes it, which is what the fingerprint is compared with:
+     * zstd objects are decompressed on download, so it's the MD5 of the uncompressed file; gzip objects are
+     * kept compressed, so it's the MD5 of the compressed data, i.e. of the object stored in S3.
+     */
+    @Override
+    public String invoke(FilePath file) throws IOException, InterruptedException {
+        final ObjectMetadata metadata = buildStreamMetadata(file);
+        final long length = getLength();
+
+        try (ClientCache<ClientKey, TransferManager>.Lease manager = leaseTransferManager()) {
+            final InputStream source = file.read();
+            final MultipartUploadOutputStream upload = new MultipartUploadOutputStream(getClient(manager.get()),
+                    getDest().bucketName, getDest().objectName, metadata, getTransferSettings().getPartSize(), getTransferSettings().getStreamingPartConcurrency());
+
+            try (DigestingInputStream raw = new DigestingInputStream(source)) {
+                final OutputStream compressed = getCompression().compress(upload, length, compressionBlockSize);
+                IOUtils.copyLarge(raw, compressed);
+                // not in try-with-resources: closing completes the upload, which must not happen on failures
+                compressed.close();
+
+                final String md5 = upload.getMd5();
+                if (LOGGER.isLoggable(Level.FINE)) {
+                    LOGGER.fine("Uploaded " + getDest() + ": " + raw.getByteCount() + " bytes (MD5 " + raw.getMd5()
+                            + ") compressed with " + getCompression() + " to " + upload.getLength() + " bytes (MD5 " + md5 + ')');
+                }
+                return Compression.isDecompressedOnDownload(metadata.getContentEncoding()) ? raw.getMd5() : md5;
+            } catch (IOException | RuntimeException e) {
+                upload.abort();
+                throw e;
+            }
+        }
+    }
+}
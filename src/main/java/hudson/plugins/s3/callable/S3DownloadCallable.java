@@ -1,36 +1,64 @@
 package hudson.plugins.s3.callable;
 
+import com.amazonaws.services.s3.AmazonS3;
 import com.amazonaws.services.s3.model.GetObjectRequest;
-import com.amazonaws.services.s3.transfer.Download;
+import com.amazonaws.services.s3.model.ObjectMetadata;
+import com.amazonaws.services.s3.model.S3Object;
+import com.amazonaws.services.s3.transfer.TransferManager;
 import hudson.ProxyConfiguration;
+import hudson.plugins.s3.ClientCache;
+import hudson.plugins.s3.ClientKey;
+import hudson.plugins.s3.Compression;
 import hudson.plugins.s3.Destination;
-import hudson.plugins.s3.MD5;
+import hudson.plugins.s3.DigestingInputStream;
+import hudson.plugins.s3.RangedDownload;
+import hudson.plugins.s3.TransferSettings;
 import hudson.remoting.VirtualChannel;
 import hudson.util.Secret;
+import org.apache.commons.io.FileUtils;
+import org.apache.commons.io.IOUtils;
 
 import java.io.File;
 import java.io.IOException;
+import java.io.OutputStream;
 
 public final class S3DownloadCallable extends S3Callable<String>
 {
     private static final long serialVersionUID = 1L;
     private final Destination dest;
     
-    public S3DownloadCallable(String accessKey, Secret secretKey, boolean useRole, Destination dest, String region, ProxyConfiguration proxy)
+    public S3DownloadCallable(String accessKey, Secret secretKey, boolean useRole, Destination dest, String region, ProxyConfiguration proxy,
+                              TransferSettings transferSettings)
     {
-        super(accessKey, secretKey, useRole, region, proxy);
+        super(accessKey, secretKey, useRole, region, proxy, transferSettings);
         this.dest = dest;
     }
 
     @Override
     public String invoke(File file, VirtualChannel channel) throws IOException, InterruptedException
     {
-        final GetObjectRequest req = new GetObjectRequest(dest.bucketName, dest.objectName);
-        final Download download = getTransferManager().download(req, file);
+        try (ClientCache<ClientKey, TransferManager>.Lease manager = leaseTransferManager()) {
+            final AmazonS3 client = getClient(manager.get());
+            // a HEAD request tells the length, without opening a download which would have to be aborted
+            final ObjectMetadata head = client.getObjectMetadata(dest.bucketName, dest.objectName);
+            if (head.getContentLength() > getTransferSettings().getMultipartThreshold() && !Compression.isDecompressedOnDownload(head.getContentEncoding())) {
+                // large objects are fetched in concurrent ranges
+                return new RangedDownload(client, dest.bucketName, dest.objectName, head.getContentLength(), head.getETag(),
+                        getTransferSettings().getPartSize(), getTransferSettings().getPartConcurrency()).downloadTo(file);
+            }
 
-        download.waitForCompletion();
+            final S3Object object = client.getObject(new GetObjectRequest(dest.bucketName, dest.objectName));
+            final ObjectMetadata metadata = object.getObjectMetadata();
 
-        return MD5.generateFromFile(file);
+            // compute the MD5 while writing the file instead of reading it again afterwards,
+            // so it's the fingerprint of the file on disk even if the object was decompressed
+            final String contentEncoding = metadata.getContentEncoding();
+            try (DigestingInputStream input = new DigestingInputStream(Compression.decompress(object.getObjectContent(), contentEncoding));
+                 OutputStream output = FileUtils.openOutputStream(file)) {
+                IOUtils.copyLarge(input, output);
+                return input.getMd5();
+            }
+        }
     }
 
 }
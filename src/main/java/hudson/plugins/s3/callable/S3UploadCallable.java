@@ -1,21 +1,56 @@
 package hudson.plugins.s3.callable;
 
+import com.amazonaws.internal.ResettableInputStream;
+import com.amazonaws.services.s3.AmazonS3;
+import com.amazonaws.services.s3.model.AmazonS3Exception;
 import com.amazonaws.services.s3.model.ObjectMetadata;
+import com.amazonaws.services.s3.transfer.TransferManager;
 import hudson.FilePath;
 import hudson.ProxyConfiguration;
+import hudson.plugins.s3.ClientCache;
+import hudson.plugins.s3.ClientKey;
+import hudson.plugins.s3.Compression;
 import hudson.plugins.s3.Destination;
-import hudson.plugins.s3.MD5;
+import hudson.plugins.s3.DigestingInputStream;
+import hudson.plugins.s3.FileManifest;
+import hudson.plugins.s3.MultipartUploadOutputStream;
+import hudson.plugins.s3.TransferSettings;
 import hudson.plugins.s3.Uploads;
 import hudson.util.Secret;
+import org.apache.commons.io.IOUtils;
 
+import java.io.File;
 import java.io.IOException;
+import java.io.InputStream;
 import java.util.Map;
+import java.util.Objects;
+import java.util.logging.Logger;
 
 public final class S3UploadCallable extends S3BaseUploadCallable implements MasterSlaveCallable<String> {
     private static final long serialVersionUID = 1L;
+    private static final Logger LOGGER = Logger.getLogger(S3UploadCallable.class.getName());
 
-    public S3UploadCallable(String accessKey, Secret secretKey, boolean useRole, Destination dest, Map<String, String> userMetadata, String storageClass, String selregion, boolean useServerSideEncryption, ProxyConfiguration proxy) {
-        super(accessKey, secretKey, useRole, dest, userMetadata, storageClass, selregion, useServerSideEncryption, proxy);
+    /**
+     * User metadata holding the MD5 of the uploaded file, the ETag of multipart uploads isn't one.
+     */
+    public static final String SOURCE_MD5_METADATA = "source-md5";
+
+    private final boolean skipUnchanged;
+    private final String md5;
+    private final String uploadsId;
+
+    /**
+     * @param source        the file as it was scanned in the workspace
+     * @param skipUnchanged don't upload the file if the destination already has the same content
+     * @param md5           MD5 of the file if it's already known, null to compute it when needed
+     * @param uploadsId     id of the {@link Uploads} registry of the publish operation
+     */
+    public S3UploadCallable(String accessKey, Secret secretKey, boolean useRole, Destination dest, Map<String, String> userMetadata, String storageClass, String selregion, boolean useServerSideEncryption, ProxyConfiguration proxy,
+                            TransferSettings transferSettings, FileManifest.Entry source, boolean skipUnchanged, String md5, String uploadsId) {
+        super(accessKey, secretKey, useRole, dest, userMetadata, storageClass, selregion, useServerSideEncryption, proxy, Compression.NONE, transferSettings, source);
+        this.skipUnchanged = skipUnchanged;
+        this.md5 = md5;
+        this.uploadsId = uploadsId;
     }
 
     /**
@@ -24,9 +59,96 @@ public final class S3UploadCallable extends S3BaseUploadCallable implements Mast
     @Override
     public String invoke(FilePath file) throws IOException, InterruptedException {
         final ObjectMetadata metadata = buildMetadata(file);
+        String knownMd5 = md5;
+        if (skipUnchanged) {
+            // digested where the file is, only the MD5 is sent back
+            knownMd5 = md5 != null ? md5 : file.digest();
+            if (isUploaded(knownMd5, metadata)) {
+                LOGGER.fine("Skipping upload of unchanged " + getDest());
+                return knownMd5;
+            }
+            metadata.addUserMetadata(SOURCE_MD5_METADATA, knownMd5);
+        }
 
-        Uploads.getInstance().startUploading(getTransferManager(), file, file.read(), getDest().bucketName, getDest().objectName, metadata);
+        if (metadata.getContentLength() > getTransferSettings().getMultipartThreshold()) {
+            // without a known MD5, the file is read once for the upload and the MD5 instead of twice
+            if (knownMd5 != null && !file.isRemote()) {
+                return uploadFileInParts(new File(file.getRemote()), metadata, knownMd5);
+            }
+            return uploadInParts(file, metadata);
+        }
 
-        return MD5.generateFromFile(file);
+        // the MD5 is computed while the upload reads the file, so it's complete once the upload finished
+        try (ClientCache<ClientKey, TransferManager>.Lease manager = leaseTransferManager()) {
+            final Uploads uploads = Uploads.forId(uploadsId);
+            final DigestingInputStream stream = new DigestingInputStream(open(file));
+            final long handle = uploads.startUploading(manager.get(), stream, getDest().bucketName, getDest().objectName, metadata);
+            uploads.finishUploading(handle);
+
+            return stream.getMd5();
+        }
+    }
+
+    /**
+     * Local files are read by a stream which the SDK can reset by seeking, so it doesn't have to buffer
+     * the data to resend it after a failure.
+     */
+    private static InputStream open(FilePath file) throws IOException, InterruptedException {
+        return file.isRemote() ? file.read() : new ResettableInputStream(new File(file.getRemote()));
+    }
+
+    /**
+     * Whether the destination exists with the content of the given MD5 and the length and encoding of the metadata.
+     */
+    private boolean isUploaded(String md5, ObjectMetadata metadata) {
+        final ObjectMetadata existing;
+        try (ClientCache<ClientKey, TransferManager>.Lease manager = leaseTransferManager()) {
+            final AmazonS3 client = getClient(manager.get());
+            existing = client.getObjectMetadata(getDest().bucketName, getDest().objectName);
+        } catch (AmazonS3Exception e) {
+            if (e.getStatusCode() == 404) {
+                return false;
+            }
+            throw e;
+        }
+        if (existing.getContentLength() != metadata.getContentLength()
+                || !Objects.equals(existing.getContentEncoding(), metadata.getContentEncoding())) {
+            return false;
+        }
+        // the ETag of single part uploads is the MD5, unless the object is encrypted with KMS
+        return md5.equals(existing.getUserMetaDataOf(SOURCE_MD5_METADATA)) || md5.equals(existing.getETag());
+    }
+
+    /**
+     * Local files whose MD5 is known already are uploaded by the TransferManager, which reads the parts
+     * from the file at their offsets on its own threads, so they aren't held in memory.
+     */
+    private String uploadFileInParts(File file, ObjectMetadata metadata, String fileMd5) throws IOException, InterruptedException {
+        try (ClientCache<ClientKey, TransferManager>.Lease manager = leaseTransferManager()) {
+            final Uploads uploads = Uploads.forId(uploadsId);
+            uploads.finishUploading(uploads.startUploading(manager.get(), file, getDest().bucketName, getDest().objectName, metadata));
+            return fileMd5;
+        }
+    }
+
+    /**
+     * Files of other nodes, and local ones whose MD5 is computed on the way, are streamed. TransferManager would
+     * upload the parts of a stream one after the other, so they are split here to upload several parts at once.
+     */
+    private String uploadInParts(FilePath file, ObjectMetadata metadata) throws IOException, InterruptedException {
+        try (ClientCache<ClientKey, TransferManager>.Lease manager = leaseTransferManager();
+             InputStream source = file.read()) {
+            final MultipartUploadOutputStream upload = new MultipartUploadOutputStream(getClient(manager.get()),
+                    getDest().bucketName, getDest().objectName, metadata, getTransferSettings().getPartSize(), getTransferSettings().getStreamingPartConcurrency());
+            try {
+                IOUtils.copyLarge(source, upload);
+                // closing completes the upload, which must not happen on failures
+                upload.close();
+                return upload.getMd5();
+            } catch (IOException | RuntimeException e) {
+                upload.abort();
+                throw e;
+            }
+        }
     }
-}
\ No newline at end of file
+}
@@ -0,0 +1,77 @@
+package hudson.plugins.s3.callable;
+
+import hudson.FilePath;
+import hudson.FilePath.FileCallable;
+import hudson.Util;
+import hudson.plugins.s3.FileManifest;
+import hudson.remoting.VirtualChannel;
+import org.apache.tools.ant.BuildException;
+import org.apache.tools.ant.DirectoryScanner;
+import org.apache.tools.ant.Project;
+import org.apache.tools.ant.types.FileSet;
+import org.jenkinsci.remoting.RoleChecker;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Matches the search paths in the workspace and stats the matched files with a single remoting call.
+ * Matches like {@link FilePath#list(String, String)}, one {@link FileManifest} per search path in the same order.
+ */
+public final class WorkspaceScanCallable implements FileCallable<List<FileManifest>> {
+    private static final long serialVersionUID = 1L;
+
+    private final List<String> searchPaths;
+    private final String excludes;
+
+    /**
+     * @param searchPaths Ant patterns of the files to match, relative to the workspace
+     * @param excludes    Ant patterns of the files to leave out, may be null
+     */
+    public WorkspaceScanCallable(List<String> searchPaths, String excludes) {
+        this.searchPaths = new ArrayList<>(searchPaths);
+        this.excludes = excludes;
+    }
+
+    @Override
+    public List<FileManifest> invoke(File workspace, VirtualChannel channel) throws IOException, InterruptedException {
+        final List<FileManifest> manifests = new ArrayList<>(searchPaths.size());
+        for (String searchPath : searchPaths) {
+            manifests.add(new FileManifest(searchPath, scan(workspace, searchPath)));
+        }
+        return manifests;
+    }
+
+    private List<FileManifest.Entry> scan(File workspace, String includes) throws IOException, InterruptedException {
+        if (new File(includes.trim()).isAbsolute()) {
+            throw new IOException("Expecting Ant GLOB pattern, but saw '" + includes + "'. See http://ant.apache.org/manual/Types/fileset.html for syntax");
+        }
+        final FileSet fileSet = Util.createFileSet(workspace, includes, excludes);
+        fileSet.setDefaultexcludes(true);
+        final DirectoryScanner scanner;
+        try {
+            scanner = fileSet.getDirectoryScanner(new Project());
+        } catch (BuildException e) {
+            throw new IOException(e.getMessage(), e);
+        }
+
+        final String[] matches = scanner.getIncludedFiles();
+        final List<FileManifest.Entry> entries = new ArrayList<>(matches.length);
+        for (String match : matches) {
+            if (Thread.interrupted()) {
+                throw new InterruptedException();
+            }
+            final File file = new File(workspace, match);
+            // the FilePath is bound to the channel of the workspace once it's sent back
+            entries.add(new FileManifest.Entry(new FilePath(file), file.length(), file.lastModified(), file.isDirectory()));
+        }
+        return entries;
+    }
+
+    @Override
+    public void checkRoles(RoleChecker checker) throws SecurityException {
+
+    }
+}
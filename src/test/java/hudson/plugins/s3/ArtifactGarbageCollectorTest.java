@@ -0,0 +1,95 @@
+package hudson.plugins.s3;
+
+import org.junit.After;
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Date;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+public class ArtifactGarbageCollectorTest {
+    private static final Date OLD = new Date(0);
+
+    private final LocalS3 s3 = new LocalS3(0);
+    private final ExecutorService executor = Executors.newFixedThreadPool(4);
+    private final List<List<String>> batches = Collections.synchronizedList(new ArrayList<List<String>>());
+    private final ArtifactGarbageCollector.Collector collector = new ArtifactGarbageCollector.Collector() {
+        @Override
+        public void collect(List<String> keys) {
+            batches.add(new ArrayList<>(keys));
+        }
+    };
+
+    @After
+    public void tearDown() {
+        executor.shutdownNow();
+    }
+
+    @Test
+    public void testUnreferencedObjectsAreCollected() throws Exception {
+        put("prefix/jobs/project/1/kept.txt");
+        put("prefix/jobs/project/2/orphan.txt");
+        put("prefix/jobs/folder/other/3/orphan.txt");
+        put("prefix/jobs/deleted/1/orphan.txt");
+        put("prefix/blobs/0c/0cc175b9c0f1b6a831c399e269772661");
+        put("other/jobs/project/2/orphan.txt");
+        s3.putContent("bucket", "prefix/jobs/project/3/uploading.txt", new byte[]{1});
+
+        final Set<String> referenced = Collections.singleton("prefix/jobs/project/1/kept.txt");
+        final long found = ArtifactGarbageCollector.collect(s3, "bucket", "prefix/jobs/", referenced, Collections.<String>emptySet(), new Date(), executor, collector);
+
+        assertEquals(3, found);
+        final Set<String> collected = new HashSet<>();
+        for (List<String> batch : batches) {
+            collected.addAll(batch);
+        }
+        final Set<String> expected = new HashSet<>();
+        expected.add("prefix/jobs/project/2/orphan.txt");
+        expected.add("prefix/jobs/folder/other/3/orphan.txt");
+        expected.add("prefix/jobs/deleted/1/orphan.txt");
+        assertEquals(expected, collected);
+    }
+
+    @Test
+    public void testKeysAreCollectedInDeleteBatches() throws Exception {
+        for (int i = 0; i < 2500; i++) {
+            put("jobs/project/1/file" + i);
+        }
+
+        final long found = ArtifactGarbageCollector.collect(s3, "bucket", "jobs/", Collections.<String>emptySet(), Collections.<String>emptySet(), new Date(), executor, collector);
+
+        assertEquals(2500, found);
+        assertEquals(3, batches.size());
+        for (List<String> batch : batches) {
+            assertTrue(batch.size() <= MultiObjectDelete.MAX_KEYS_PER_REQUEST);
+        }
+    }
+
+    @Test
+    public void testObjectsOfUnreadableBuildsAreKept() throws Exception {
+        put("jobs/project/1/kept.txt");
+        put("jobs/project/10/orphan.txt");
+        put("jobs/folder/project/1/kept.txt");
+
+        final Set<String> unreadable = new HashSet<>();
+        unreadable.add("folder/project/1/");
+        unreadable.add("project/1/");
+        final long found = ArtifactGarbageCollector.collect(s3, "bucket", "jobs/", Collections.<String>emptySet(), unreadable, new Date(), executor, collector);
+
+        assertEquals(1, found);
+        assertEquals(Collections.singletonList(Collections.singletonList("jobs/project/10/orphan.txt")), batches);
+    }
+
+    private void put(String key) {
+        s3.putContent("bucket", key, new byte[]{1});
+        s3.setLastModified("bucket", key, OLD);
+    }
+}
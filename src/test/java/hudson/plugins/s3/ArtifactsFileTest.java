@@ -0,0 +1,136 @@
+package hudson.plugins.s3;
+
+import org.apache.commons.io.FileUtils;
+import org.junit.After;
+import org.junit.Test;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+public class ArtifactsFileTest {
+    private final File dir = createTempDirectory();
+
+    @After
+    public void tearDown() {
+        FileUtils.deleteQuietly(dir);
+    }
+
+    @Test
+    public void testRecordsAreRestoredSortedByName() throws Exception {
+        final FingerprintRecord jar = new FingerprintRecord(true, "bucket/releases", "target/app.jar", "eu-west-1",
+                "0123456789abcdef0123456789abcdef");
+        jar.setKeepForever(true);
+        final FingerprintRecord report = new FingerprintRecord(false, "bucket", "target/reports/index.html", "us-east-1",
+                "fedcba9876543210fedcba9876543210", true);
+        report.setShowDirectlyInBrowser(true);
+        final FingerprintRecord legacy = new FingerprintRecord(true, new S3Artifact("eu-west-1", "other", "build.log", false, false),
+                "3-part-etag-of-a-multipart-upload-3");
+        final FingerprintRecord unknown = new FingerprintRecord(false, new S3Artifact("eu-west-1", "bucket/", "target/app.jar.sha1", false, true), null);
+
+        final List<FingerprintRecord> records = roundTrip(Arrays.asList(report, jar, unknown, legacy));
+
+        assertEquals(4, records.size());
+        assertSameRecord(legacy, records.get(0));
+        assertSameRecord(jar, records.get(1));
+        assertSameRecord(unknown, records.get(2));
+        assertSameRecord(report, records.get(3));
+    }
+
+    @Test
+    public void testNamesSharingPrefixesAndNonAsciiCharacters() throws Exception {
+        final List<FingerprintRecord> records = new ArrayList<>();
+        for (String name : Arrays.asList("", "a", "ab", "abc", "b/\u00e9t\u00e9.txt", "b/\u00e9t\u00e9s.txt", "c/\uD83D\uDE00.txt", "c/\uD83D\uDE01.txt")) {
+            records.add(new FingerprintRecord(true, "bucket", name, "eu-west-1", "0123456789abcdef0123456789abcdef"));
+        }
+        final List<FingerprintRecord> restored = roundTrip(records);
+        for (int i = 0; i < records.size(); i++) {
+            assertSameRecord(records.get(i), restored.get(i));
+        }
+    }
+
+    @Test
+    public void testManyArtifactsAreCompact() throws Exception {
+        final List<FingerprintRecord> records = new ArrayList<>();
+        for (int i = 0; i < 20000; i++) {
+            records.add(new FingerprintRecord(true, "bucket/folder", "module-" + (i % 50) + "/target/classes/com/example/Class" + i + ".class",
+                    "eu-west-1", String.format("%032x", i)));
+        }
+        final ByteArrayOutputStream out = new ByteArrayOutputStream();
+        ArtifactsFile.write(out, records);
+        assertTrue("Expected less than 40 bytes per record, got " + out.size(), out.size() < records.size() * 40);
+        assertEquals(records.size(), ArtifactsFile.read(new ByteArrayInputStream(out.toByteArray())).size());
+    }
+
+    @Test
+    public void testFileIsReplaced() throws Exception {
+        final File file = new File(dir, ArtifactsFile.NAME);
+        ArtifactsFile.write(file, Collections.singletonList(new FingerprintRecord(true, "bucket", "a.txt", "eu-west-1", null)));
+        ArtifactsFile.write(file, Collections.singletonList(new FingerprintRecord(true, "bucket", "b.txt", "eu-west-1", null)));
+
+        final List<FingerprintRecord> records = ArtifactsFile.read(file);
+        assertEquals(1, records.size());
+        assertEquals("b.txt", records.get(0).getName());
+        assertEquals(1, dir.list().length);
+    }
+
+    @Test
+    public void testFileHoldingTheRecordsIsRecognized() throws Exception {
+        final File file = new File(dir, ArtifactsFile.NAME);
+        final List<FingerprintRecord> records = Arrays.asList(new FingerprintRecord(true, "bucket", "b.txt", "eu-west-1", null),
+                new FingerprintRecord(true, "bucket", "a.txt", "eu-west-1", null));
+        assertFalse(ArtifactsFile.holds(file, records));
+
+        ArtifactsFile.write(file, records);
+        assertTrue(ArtifactsFile.holds(file, records));
+        assertTrue(ArtifactsFile.holds(file, Arrays.asList(records.get(1), records.get(0))));
+        assertFalse(ArtifactsFile.holds(file, records.subList(0, 1)));
+    }
+
+    @Test
+    public void testOtherFilesAreRejected() throws Exception {
+        try {
+            ArtifactsFile.read(new ByteArrayInputStream("<?xml version='1.1'?>".getBytes("UTF-8")));
+            fail("Read an XML file");
+        } catch (IOException expected) {
+            assertEquals("Not an S3 artifacts file", expected.getMessage());
+        }
+    }
+
+    private static List<FingerprintRecord> roundTrip(List<FingerprintRecord> records) throws IOException {
+        final ByteArrayOutputStream out = new ByteArrayOutputStream();
+        ArtifactsFile.write(out, records);
+        return ArtifactsFile.read(new ByteArrayInputStream(out.toByteArray()));
+    }
+
+    private static void assertSameRecord(FingerprintRecord expected, FingerprintRecord actual) {
+        assertEquals(expected.getName(), actual.getName());
+        assertEquals(expected.getArtifact().getBucket(), actual.getArtifact().getBucket());
+        assertEquals(expected.getArtifact().getRegion(), actual.getArtifact().getRegion());
+        assertEquals(expected.getArtifact().isContentAddressed(), actual.getArtifact().isContentAddressed());
+        assertEquals(expected.getArtifact().useFullProjectName(), actual.getArtifact().useFullProjectName());
+        assertEquals(expected.getFingerprint(), actual.getFingerprint());
+        assertEquals(expected.isProduced(), actual.isProduced());
+        assertEquals(expected.isKeepForever(), actual.isKeepForever());
+        assertEquals(expected.isShowDirectlyInBrowser(), actual.isShowDirectlyInBrowser());
+    }
+
+    private static File createTempDirectory() {
+        try {
+            return Files.createTempDirectory("s3-artifacts").toFile();
+        } catch (IOException e) {
+            throw new IllegalStateException(e);
+        }
+    }
+}
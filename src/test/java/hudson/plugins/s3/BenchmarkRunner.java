@@ -0,0 +1,29 @@
+package hudson.plugins.s3;
+
+import org.junit.Test;
+import org.openjdk.jmh.results.format.ResultFormatType;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.options.Options;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+
+/**
+ * Runs the JMH benchmarks of this plugin. It is not picked up by the regular test run,
+ * start it with {@code mvn test -Dtest=BenchmarkRunner} and optionally narrow it down
+ * with {@code -Dbenchmark=UploadBenchmark}.
+ */
+public class BenchmarkRunner {
+    @Test
+    public void runBenchmarks() throws Exception {
+        final String include = System.getProperty("benchmark", ".*Benchmark");
+        final Options options = new OptionsBuilder()
+                .include(BenchmarkRunner.class.getPackage().getName() + '.' + include)
+                .warmupIterations(2)
+                .measurementIterations(5)
+                .forks(1)
+                .shouldFailOnError(true)
+                .resultFormat(ResultFormatType.JSON)
+                .result("target/jmh-report.json")
+                .build();
+        new Runner(options).run();
+    }
+}
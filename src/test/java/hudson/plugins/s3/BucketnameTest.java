@@ -33,4 +33,10 @@ public class BucketnameTest {
             new Destination("my-bucket/with-some/subfolder/", "path-from\\windows.txt").toString() );
   }
 
+  @Test
+  public void testContentAddressedArtifactsAreStoredByHash() {
+    assertEquals("Destination [bucketName=my-bucket, objectName=artifacts/blobs/d4/d41d8cd98f00b204e9800998ecf8427e]",
+            Destination.newFromContentHash("my-bucket/artifacts", "d41d8cd98f00b204e9800998ecf8427e").toString() );
+  }
+
 }
@@ -0,0 +1,139 @@
+package hudson.plugins.s3;
+
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+import java.util.logging.Handler;
+import java.util.logging.Level;
+import java.util.logging.LogRecord;
+import java.util.logging.Logger;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotSame;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+
+public class ClientCacheTest {
+    private final List<Object> disposed = new ArrayList<>();
+
+    @Test
+    public void testClientsAreReused() {
+        final TestCache cache = new TestCache(2, TimeUnit.MINUTES.toMillis(1));
+
+        final Object first = use(cache, "a");
+        final Object second = use(cache, "a");
+
+        assertSame(first, second);
+        assertEquals(1, cache.getMisses());
+        assertEquals(1, cache.getHits());
+        assertEquals(1, cache.getLiveCount());
+    }
+
+    @Test
+    public void testLeastRecentlyUsedClientIsDisposed() throws Exception {
+        final TestCache cache = new TestCache(2, TimeUnit.MINUTES.toMillis(1));
+
+        final Object a = use(cache, "a");
+        Thread.sleep(2);
+        use(cache, "b");
+        Thread.sleep(2);
+        use(cache, "c");
+
+        assertEquals(1, disposed.size());
+        assertSame(a, disposed.get(0));
+        assertEquals(2, cache.getLiveCount());
+    }
+
+    @Test
+    public void testClientInUseIsDisposedOnlyAfterRelease() {
+        final TestCache cache = new TestCache(1, TimeUnit.MINUTES.toMillis(1));
+
+        final ClientCache<String, Object>.Lease lease = cache.acquire("a", new TestFactory());
+        final Object client = lease.get();
+        cache.invalidate("a");
+        assertTrue(disposed.isEmpty());
+
+        // a new lease gets a new client
+        assertNotSame(client, use(cache, "a"));
+
+        lease.close();
+        assertEquals(1, disposed.size());
+        assertSame(client, disposed.get(0));
+    }
+
+    @Test
+    public void testIdleClientsAreDisposed() throws Exception {
+        final TestCache cache = new TestCache(10, 1);
+
+        final Object a = use(cache, "a");
+        Thread.sleep(5);
+        use(cache, "b");
+
+        assertEquals(1, disposed.size());
+        assertSame(a, disposed.get(0));
+        assertEquals(1, cache.getEvictions());
+    }
+
+    @Test
+    public void testStatisticsAreLoggedPeriodically() throws Exception {
+        final TestCache cache = new TestCache(2, TimeUnit.MINUTES.toMillis(1), 1);
+        final List<String> summaries = new ArrayList<>();
+        final Handler handler = new Handler() {
+            @Override
+            public void publish(LogRecord record) {
+                if (record.getLevel() == Level.INFO) {
+                    summaries.add(String.valueOf(record.getParameters()[0]));
+                }
+            }
+
+            @Override
+            public void flush() {
+            }
+
+            @Override
+            public void close() {
+            }
+        };
+        final Logger logger = Logger.getLogger(ClientCache.class.getName());
+        logger.addHandler(handler);
+        try {
+            use(cache, "a");
+            Thread.sleep(5);
+            use(cache, "a");
+        } finally {
+            logger.removeHandler(handler);
+        }
+
+        assertEquals("test clients: 1 live, 1 hits, 1 misses, 0 evictions", summaries.get(summaries.size() - 1));
+    }
+
+    private static Object use(ClientCache<String, Object> cache, String key) {
+        try (ClientCache<String, Object>.Lease lease = cache.acquire(key, new TestFactory())) {
+            return lease.get();
+        }
+    }
+
+    private static final class TestFactory implements ClientCache.Factory<Object> {
+        @Override
+        public Object create() {
+            return new Object();
+        }
+    }
+
+    private final class TestCache extends ClientCache<String, Object> {
+        TestCache(int maxSize, long maxIdleMillis) {
+            super("test", maxSize, maxIdleMillis);
+        }
+
+        TestCache(int maxSize, long maxIdleMillis, long summaryIntervalMillis) {
+            super("test", maxSize, maxIdleMillis, summaryIntervalMillis);
+        }
+
+        @Override
+        protected void dispose(Object client) {
+            disposed.add(client);
+        }
+    }
+}
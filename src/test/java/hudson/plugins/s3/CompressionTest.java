@@ -0,0 +1,71 @@
+package hudson.plugins.s3;
+
+import org.apache.commons.io.IOUtils;
+import org.junit.Test;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.util.zip.GZIPInputStream;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+
+public class CompressionTest {
+    private static final int BLOCK_SIZE = 128 * 1024;
+
+    @Test
+    public void testGzipLevelsAreReadableByGzip() throws Exception {
+        final byte[] content = ParallelGzipOutputStreamTest.textContent(3 * BLOCK_SIZE);
+
+        for (Compression compression : new Compression[]{Compression.GZIP_1, Compression.GZIP, Compression.GZIP_9}) {
+            final byte[] compressed = compress(compression, content);
+            try (InputStream gzip = new GZIPInputStream(new ByteArrayInputStream(compressed))) {
+                assertArrayEquals(compression.name(), content, IOUtils.toByteArray(gzip));
+            }
+        }
+    }
+
+    @Test
+    public void testHigherGzipLevelsCompressBetter() throws Exception {
+        final byte[] content = ParallelGzipOutputStreamTest.textContent(BLOCK_SIZE / 2);
+
+        assertTrue(compress(Compression.GZIP_9, content).length < compress(Compression.GZIP_1, content).length);
+    }
+
+    @Test
+    public void testZstdRoundTrip() throws Exception {
+        final byte[] content = ParallelGzipOutputStreamTest.textContent(BLOCK_SIZE);
+
+        final byte[] compressed = compress(Compression.ZSTD, content);
+        try (InputStream zstd = Compression.decompress(new ByteArrayInputStream(compressed), "zstd")) {
+            assertArrayEquals(content, IOUtils.toByteArray(zstd));
+        }
+    }
+
+    @Test
+    public void testGzipObjectsAreNotDecompressed() throws Exception {
+        final InputStream in = new ByteArrayInputStream(new byte[1]);
+
+        assertSame(in, Compression.decompress(in, "gzip"));
+        assertSame(in, Compression.decompress(in, null));
+    }
+
+    @Test
+    public void testGzipFilesMapsToDefaultLevel() {
+        assertEquals(Compression.GZIP_6, Compression.fromGzipFiles(true));
+        assertEquals(Compression.NONE, Compression.fromGzipFiles(false));
+    }
+
+    private static byte[] compress(Compression compression, byte[] content) throws IOException {
+        final ByteArrayOutputStream compressed = new ByteArrayOutputStream();
+        try (OutputStream out = compression.compress(compressed, content.length, BLOCK_SIZE)) {
+            out.write(content);
+        }
+        return compressed.toByteArray();
+    }
+}
@@ -0,0 +1,241 @@
+package hudson.plugins.s3;
+
+import org.apache.commons.io.FileUtils;
+import org.junit.After;
+import org.junit.Test;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+public class ContentStoreTest {
+    private static final String A = "0cc175b9c0f1b6a831c399e269772661";
+    private static final String B = "92eb5ffee6ae2fec3ad71c777531578f";
+
+    private final File dir = createTempDirectory();
+    private final File file = new File(dir, "refs");
+    private final List<String> deleted = new ArrayList<>();
+    private final ContentStore.BlobDeleter deleter = new ContentStore.BlobDeleter() {
+        @Override
+        public List<String> delete(String bucketName, List<String> md5s) {
+            for (String md5 : md5s) {
+                deleted.add(bucketName + ':' + md5);
+            }
+            return Collections.emptyList();
+        }
+    };
+
+    @After
+    public void tearDown() {
+        FileUtils.deleteQuietly(dir);
+    }
+
+    @Test
+    public void testBlobsAreDeletedWithTheirLastReference() throws Exception {
+        final ContentStore store = new ContentStore(file);
+        store.reference("bucket", Arrays.asList(A, B));
+        store.reference("bucket", Collections.singletonList(A));
+
+        store.release("bucket", Arrays.asList(A, B), deleter);
+        assertEquals(Collections.singletonList("bucket:" + B), deleted);
+        assertEquals(1, store.getReferences("bucket", A));
+
+        store.release("bucket", Collections.singletonList(A), deleter);
+        assertEquals(Arrays.asList("bucket:" + B, "bucket:" + A), deleted);
+        assertEquals(0, store.getReferences("bucket", A));
+    }
+
+    @Test
+    public void testBucketsAreCountedSeparately() throws Exception {
+        final ContentStore store = new ContentStore(file);
+        store.reference("bucket", Collections.singletonList(A));
+        store.reference("other/prefix", Collections.singletonList(A));
+
+        store.release("bucket", Collections.singletonList(A), deleter);
+        assertEquals(Collections.singletonList("bucket:" + A), deleted);
+        assertEquals(1, store.getReferences("other/prefix", A));
+    }
+
+    @Test
+    public void testUnknownBlobsAreNotDeleted() throws Exception {
+        final ContentStore store = new ContentStore(file);
+        store.release("bucket", Collections.singletonList(A), deleter);
+        assertTrue(deleted.isEmpty());
+    }
+
+    @Test
+    public void testReferencesArePersisted() throws Exception {
+        new ContentStore(file).reference("bucket", Arrays.asList(A, A, B));
+
+        final ContentStore reloaded = new ContentStore(file);
+        assertEquals(2, reloaded.getReferences("bucket", A));
+        assertEquals(1, reloaded.getReferences("bucket", B));
+    }
+
+    @Test
+    public void testNothingIsReleasedIfTheJournalFails() throws Exception {
+        final ContentStore store = new ContentStore(file);
+        store.reference("bucket", Arrays.asList(A, A, B));
+        try {
+            store.release("bucket", Arrays.asList(A, A, B), new ContentStore.ReleaseJournal() {
+                @Override
+                public void releasing(List<String> unreferenced) throws IOException {
+                    // listed twice, so A loses its last reference too
+                    assertEquals(Arrays.asList(A, B), unreferenced);
+                    throw new IOException("Failed to persist the task");
+                }
+            });
+            fail("The failure wasn't reported");
+        } catch (IOException e) {
+            // expected
+        }
+
+        assertEquals(2, store.getReferences("bucket", A));
+        assertEquals(2, new ContentStore(file).getReferences("bucket", A));
+        assertEquals(1, new ContentStore(file).getReferences("bucket", B));
+    }
+
+    @Test
+    public void testReleaseIsPersistedIfDeletionFails() throws Exception {
+        final ContentStore store = new ContentStore(file);
+        store.reference("bucket", Collections.singletonList(A));
+        try {
+            store.release("bucket", Collections.singletonList(A), new ContentStore.BlobDeleter() {
+                @Override
+                public List<String> delete(String bucketName, List<String> md5s) throws IOException {
+                    throw new IOException("S3 is down");
+                }
+            });
+            fail("The failure wasn't reported");
+        } catch (IOException e) {
+            assertEquals("S3 is down", e.getMessage());
+        }
+        assertEquals(0, new ContentStore(file).getReferences("bucket", A));
+    }
+
+    @Test
+    public void testFailedDeletionsAreRetriedUnlessReferencedAgain() throws Exception {
+        final ContentStore store = new ContentStore(file);
+        store.reference("bucket", Arrays.asList(A, B));
+        final List<String> failed = store.release("bucket", Arrays.asList(A, B), new ContentStore.BlobDeleter() {
+            @Override
+            public List<String> delete(String bucketName, List<String> md5s) {
+                return md5s;
+            }
+        });
+        assertEquals(Arrays.asList(A, B), failed);
+
+        // published again before the retry
+        store.reference("bucket", Collections.singletonList(A));
+        assertTrue(store.deleteUnreferenced("bucket", failed, deleter).isEmpty());
+        assertEquals(Collections.singletonList("bucket:" + B), deleted);
+    }
+
+    @Test
+    public void testDeletionDoesNotHoldTheLock() throws Exception {
+        final ContentStore store = new ContentStore(file);
+        store.reference("bucket", Arrays.asList(A, B));
+        final CountDownLatch deleting = new CountDownLatch(1);
+        final CountDownLatch resume = new CountDownLatch(1);
+        final Thread release = new Thread() {
+            @Override
+            public void run() {
+                try {
+                    store.release("bucket", Collections.singletonList(A), new ContentStore.BlobDeleter() {
+                        @Override
+                        public List<String> delete(String bucketName, List<String> md5s) throws IOException {
+                            deleting.countDown();
+                            try {
+                                resume.await();
+                            } catch (InterruptedException e) {
+                                throw new IOException(e);
+                            }
+                            deleted.addAll(md5s);
+                            return Collections.emptyList();
+                        }
+                    });
+                } catch (IOException e) {
+                    throw new IllegalStateException(e);
+                }
+            }
+        };
+        release.start();
+        deleting.await();
+
+        // other blobs are counted while S3 is deleting
+        store.reference("bucket", Collections.singletonList(B));
+        assertEquals(2, store.getReferences("bucket", B));
+
+        // the blob being deleted is only referenced again once it's gone
+        final Thread publish = new Thread() {
+            @Override
+            public void run() {
+                try {
+                    store.reference("bucket", Collections.singletonList(A));
+                } catch (IOException | InterruptedException e) {
+                    throw new IllegalStateException(e);
+                }
+            }
+        };
+        publish.start();
+        publish.join(100);
+        assertTrue(publish.isAlive());
+        assertEquals(0, store.getReferences("bucket", A));
+
+        resume.countDown();
+        release.join();
+        publish.join();
+        assertEquals(Collections.singletonList(A), deleted);
+        assertEquals(1, store.getReferences("bucket", A));
+    }
+
+    @Test
+    public void testChangesAreAppendedAndCompacted() throws Exception {
+        final ContentStore store = new ContentStore(file);
+        store.reference("bucket", Collections.singletonList(A));
+        for (int i = 0; i < 3000; i++) {
+            store.reference("bucket", Collections.singletonList(B));
+            store.release("bucket", Collections.singletonList(B), deleter);
+        }
+
+        assertTrue(Files.readAllLines(file.toPath()).size() <= 1024);
+        final ContentStore reloaded = new ContentStore(file);
+        assertEquals(1, reloaded.getReferences("bucket", A));
+        assertEquals(0, reloaded.getReferences("bucket", B));
+    }
+
+    @Test
+    public void testLineOfAnAppendWhichWasCutShortIsDropped() throws Exception {
+        new ContentStore(file).reference("bucket", Arrays.asList(A, A));
+        // the append of the third reference stopped within the bucket name
+        Files.write(file.toPath(), ("3\t" + A + "\tbuck").getBytes(StandardCharsets.UTF_8), StandardOpenOption.APPEND);
+
+        final ContentStore store = new ContentStore(file);
+        assertEquals(2, store.getReferences("bucket", A));
+        assertEquals(0, store.getReferences("buck", A));
+        store.reference("bucket", Collections.singletonList(B));
+
+        final ContentStore reloaded = new ContentStore(file);
+        assertEquals(2, reloaded.getReferences("bucket", A));
+        assertEquals(1, reloaded.getReferences("bucket", B));
+    }
+
+    private static File createTempDirectory() {
+        try {
+            return Files.createTempDirectory("content-store").toFile();
+        } catch (IOException e) {
+            throw new IllegalStateException(e);
+        }
+    }
+}
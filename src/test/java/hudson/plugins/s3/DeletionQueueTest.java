@@ -0,0 +1,243 @@
+package hudson.plugins.s3;
+
+import org.apache.commons.io.FileUtils;
+import org.junit.After;
+import org.junit.Test;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+public class DeletionQueueTest {
+    private final File dir = createTempDirectory();
+    private final List<String> deleted = Collections.synchronizedList(new ArrayList<String>());
+
+    @After
+    public void tearDown() {
+        FileUtils.deleteQuietly(dir);
+    }
+
+    @Test
+    public void testTasksAreRunAndRemoved() throws Exception {
+        final DeletionQueue queue = newQueue(new Recorder(0));
+        queue.schedule(Arrays.asList(task("a", "b"), task("c")));
+
+        awaitIdle(queue);
+        assertEquals(Arrays.asList("a", "b", "c"), sorted(deleted));
+        assertEquals(3, queue.getDeletedKeys());
+        assertEquals(0, dir.list().length);
+    }
+
+    @Test
+    public void testFailedKeysAreRetried() throws Exception {
+        final DeletionQueue queue = newQueue(new Recorder(2));
+        queue.schedule(Collections.singletonList(task("a", "b")));
+
+        awaitIdle(queue);
+        assertEquals(Arrays.asList("a", "b"), sorted(deleted));
+        assertEquals(0, queue.getAbandonedKeys());
+    }
+
+    @Test
+    public void testPersistedTasksAreResumed() throws Exception {
+        final DeletionQueue stopped = newQueue(new DeletionQueue.TaskRunner() {
+            @Override
+            public void release(DeletionTask task, ContentStore.ReleaseJournal journal) throws IOException {
+                journal.releasing(task.getKeys());
+            }
+
+            @Override
+            public List<String> run(DeletionTask task) throws IOException {
+                throw new IOException("S3 is down");
+            }
+        }, 60000);
+        stopped.schedule(Collections.singletonList(releaseTask("a")));
+
+        final List<DeletionTask> resumed = Collections.synchronizedList(new ArrayList<DeletionTask>());
+        final DeletionQueue queue = newQueue(new DeletionQueue.TaskRunner() {
+            @Override
+            public void release(DeletionTask task, ContentStore.ReleaseJournal journal) {
+                throw new AssertionError("Released twice");
+            }
+
+            @Override
+            public List<String> run(DeletionTask task) {
+                resumed.add(task);
+                return Collections.emptyList();
+            }
+        }, 0);
+        awaitFile();
+        queue.load();
+
+        awaitIdle(queue);
+        assertEquals(1, resumed.size());
+        final DeletionTask task = resumed.get(0);
+        assertEquals(null, task.getProfile());
+        assertEquals("eu-west-1", task.getRegion());
+        assertEquals("bucket", task.getBucket());
+        assertEquals(Collections.singletonList("a"), task.getKeys());
+        // the deletion failed after the release, so only the deletion of the unreferenced blob is retried
+        assertEquals(DeletionTask.Kind.UNREFERENCED_BLOBS, task.getKind());
+        assertEquals(1, task.getAttempts());
+    }
+
+    @Test
+    public void testReleaseIsRetriedIfItFailedBeforeReleasing() throws Exception {
+        final List<DeletionTask> released = Collections.synchronizedList(new ArrayList<DeletionTask>());
+        final List<DeletionTask> run = Collections.synchronizedList(new ArrayList<DeletionTask>());
+        final DeletionQueue queue = newQueue(new DeletionQueue.TaskRunner() {
+            @Override
+            public void release(DeletionTask task, ContentStore.ReleaseJournal journal) throws IOException {
+                released.add(task);
+                if (released.size() == 1) {
+                    throw new IOException("Failed to read the references");
+                }
+                // b is still referenced by another build
+                journal.releasing(Collections.singletonList("a"));
+            }
+
+            @Override
+            public List<String> run(DeletionTask task) {
+                run.add(task);
+                return Collections.emptyList();
+            }
+        }, 1);
+        queue.schedule(Collections.singletonList(releaseTask("a", "b")));
+
+        awaitIdle(queue);
+        assertEquals(2, released.size());
+        assertEquals(DeletionTask.Kind.RELEASE_BLOBS, released.get(1).getKind());
+        assertEquals(Arrays.asList("a", "b"), released.get(1).getKeys());
+        assertEquals(1, run.size());
+        assertEquals(DeletionTask.Kind.UNREFERENCED_BLOBS, run.get(0).getKind());
+        assertEquals(Collections.singletonList("a"), run.get(0).getKeys());
+        assertEquals(2, queue.getDeletedKeys());
+    }
+
+    @Test
+    public void testReleaseIsNotRepeatedIfPersistingItFailed() throws Exception {
+        final List<DeletionTask> released = Collections.synchronizedList(new ArrayList<DeletionTask>());
+        final List<DeletionTask> run = Collections.synchronizedList(new ArrayList<DeletionTask>());
+        final DeletionQueue queue = newQueue(new DeletionQueue.TaskRunner() {
+            @Override
+            public void release(DeletionTask task, ContentStore.ReleaseJournal journal) throws IOException {
+                released.add(task);
+                journal.releasing(Collections.singletonList("a"));
+                // the task is persisted as released before the references are
+                assertTrue(isPersisted("UNREFERENCED_BLOBS\t0\t"));
+                throw new IOException("Failed to write the references");
+            }
+
+            @Override
+            public List<String> run(DeletionTask task) {
+                run.add(task);
+                return Collections.emptyList();
+            }
+        }, 1);
+        queue.schedule(Collections.singletonList(releaseTask("a", "b")));
+
+        awaitIdle(queue);
+        assertEquals(1, released.size());
+        assertEquals(1, run.size());
+        assertEquals(DeletionTask.Kind.UNREFERENCED_BLOBS, run.get(0).getKind());
+        assertEquals(Collections.singletonList("a"), run.get(0).getKeys());
+    }
+
+    /**
+     * Fails every key the given number of times before deleting it.
+     */
+    private class Recorder implements DeletionQueue.TaskRunner {
+        private final int failures;
+        private final List<String> attempts = new ArrayList<>();
+
+        Recorder(int failures) {
+            this.failures = failures;
+        }
+
+        @Override
+        public void release(DeletionTask task, ContentStore.ReleaseJournal journal) throws IOException {
+            journal.releasing(task.getKeys());
+        }
+
+        @Override
+        public synchronized List<String> run(DeletionTask task) {
+            final List<String> failed = new ArrayList<>();
+            for (String key : task.getKeys()) {
+                if (Collections.frequency(attempts, key) < failures) {
+                    failed.add(key);
+                } else {
+                    deleted.add(key);
+                }
+                attempts.add(key);
+            }
+            return failed;
+        }
+    }
+
+    private DeletionQueue newQueue(DeletionQueue.TaskRunner runner) {
+        return newQueue(runner, 1);
+    }
+
+    private DeletionQueue newQueue(DeletionQueue.TaskRunner runner, long retryDelay) {
+        return new DeletionQueue(dir, runner, 2, new TokenBucket(0, 0), retryDelay);
+    }
+
+    private static DeletionTask task(String... keys) {
+        return new DeletionTask("profile", null, "bucket", DeletionTask.Kind.OBJECTS, Arrays.asList(keys));
+    }
+
+    private static DeletionTask releaseTask(String... md5s) {
+        return new DeletionTask(null, "eu-west-1", "bucket", DeletionTask.Kind.RELEASE_BLOBS, Arrays.asList(md5s));
+    }
+
+    private static List<String> sorted(List<String> keys) {
+        final List<String> copy = new ArrayList<>(keys);
+        Collections.sort(copy);
+        return copy;
+    }
+
+    private void awaitFile() throws Exception {
+        // the failed attempt rewrites the task before it is retried
+        final long deadline = System.currentTimeMillis() + 10000;
+        while (!isPersisted("UNREFERENCED_BLOBS\t1\t")) {
+            assertTrue("Retry not persisted", System.currentTimeMillis() < deadline);
+            Thread.sleep(10);
+        }
+    }
+
+    private boolean isPersisted(String header) {
+        for (File file : dir.listFiles()) {
+            try {
+                if (file.getName().endsWith(".task") && Files.readAllLines(file.toPath()).get(0).startsWith(header)) {
+                    return true;
+                }
+            } catch (IOException e) {
+                // replaced while reading
+            }
+        }
+        return false;
+    }
+
+    private static void awaitIdle(DeletionQueue queue) throws Exception {
+        final long deadline = System.currentTimeMillis() + 10000;
+        while (queue.getPendingTasks() > 0) {
+            assertTrue("Tasks still pending", System.currentTimeMillis() < deadline);
+            Thread.sleep(10);
+        }
+    }
+
+    private static File createTempDirectory() {
+        try {
+            return Files.createTempDirectory("deletion-queue").toFile();
+        } catch (IOException e) {
+            throw new IllegalStateException(e);
+        }
+    }
+}
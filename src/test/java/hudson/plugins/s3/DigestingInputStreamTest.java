@@ -0,0 +1,66 @@
+package hudson.plugins.s3;
+
+import org.apache.commons.codec.digest.DigestUtils;
+import org.apache.commons.io.IOUtils;
+import org.junit.Test;
+
+import java.io.BufferedInputStream;
+import java.io.ByteArrayInputStream;
+import java.io.InputStream;
+import java.util.Arrays;
+import java.util.Random;
+
+import static org.junit.Assert.assertEquals;
+
+public class DigestingInputStreamTest {
+    private final byte[] content = randomContent(100_000);
+
+    @Test
+    public void testDigestOfFullyReadStream() throws Exception {
+        final DigestingInputStream stream = new DigestingInputStream(new ByteArrayInputStream(content));
+        IOUtils.toByteArray(stream);
+
+        assertEquals(DigestUtils.md5Hex(content), stream.getMd5());
+        assertEquals(content.length, stream.getByteCount());
+    }
+
+    @Test
+    public void testResetDoesNotDigestBytesTwice() throws Exception {
+        final DigestingInputStream stream = new DigestingInputStream(new BufferedInputStream(new ByteArrayInputStream(content)));
+        stream.mark(content.length);
+        IOUtils.readFully(stream, new byte[1000]);
+        stream.read();
+        stream.reset();
+        IOUtils.toByteArray(stream);
+
+        assertEquals(DigestUtils.md5Hex(content), stream.getMd5());
+    }
+
+    @Test
+    public void testSkippedBytesAreDigested() throws Exception {
+        final InputStream stream = new DigestingInputStream(new ByteArrayInputStream(content));
+        assertEquals(5000, stream.skip(5000));
+        IOUtils.toByteArray(stream);
+
+        assertEquals(DigestUtils.md5Hex(content), ((DigestingInputStream) stream).getMd5());
+    }
+
+    @Test
+    public void testMd5CanBeAskedForWhileReading() throws Exception {
+        final DigestingInputStream stream = new DigestingInputStream(new ByteArrayInputStream(content));
+        IOUtils.readFully(stream, new byte[1000]);
+        final String partial = stream.getMd5();
+        assertEquals(partial, stream.getMd5());
+        IOUtils.toByteArray(stream);
+
+        assertEquals(DigestUtils.md5Hex(Arrays.copyOf(content, 1000)), partial);
+        assertEquals(DigestUtils.md5Hex(content), stream.getMd5());
+        assertEquals(DigestUtils.md5Hex(content), stream.getMd5());
+    }
+
+    private static byte[] randomContent(int size) {
+        final byte[] bytes = new byte[size];
+        new Random(1).nextBytes(bytes);
+        return bytes;
+    }
+}
@@ -0,0 +1,75 @@
+package hudson.plugins.s3;
+
+import hudson.FilePath;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OperationsPerInvocation;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Files/sec of the file mapping stage of publishing: naming the scanned files of an entry in the bucket.
+ * The baseline recomputes the search path length for every file, like publishing did before the
+ * per-entry values were resolved up front.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+public class FileMappingBenchmark {
+    private static final int FILES = 100000;
+    private static final int MODULES = 100;
+
+    @Param({"false", "true"})
+    public boolean keepStructure;
+
+    private String workspace;
+    private List<FileManifest> manifests;
+
+    @Setup(Level.Trial)
+    public void setUp() {
+        final File root = new File(System.getProperty("java.io.tmpdir"), "file-mapping-benchmark");
+        workspace = root.getPath();
+        final List<FileManifest.Entry> jars = new ArrayList<>(FILES / 2);
+        final List<FileManifest.Entry> reports = new ArrayList<>(FILES / 2);
+        for (int i = 0; i < FILES / 2; i++) {
+            final File module = new File(root, "module-" + (i % MODULES));
+            jars.add(new FileManifest.Entry(new FilePath(new File(module, "target/lib/dependency-" + i + ".jar")), 1024, 0, false));
+            reports.add(new FileManifest.Entry(new FilePath(new File(module, "target/reports/TEST-" + i + ".xml")), 1024, 0, false));
+        }
+        manifests = Arrays.asList(new FileManifest("**/target/lib/*.jar", jars), new FileManifest("**/target/reports/*.xml", reports));
+    }
+
+    @Benchmark
+    @OperationsPerInvocation(FILES)
+    public List<String> mapFiles() throws IOException {
+        final List<FileManifest.Entry> files = new ArrayList<>(FILES);
+        final List<String> names = new ArrayList<>(FILES);
+        new FileNameMapper(workspace, false, keepStructure).map(manifests, files, names);
+        return names;
+    }
+
+    @Benchmark
+    @OperationsPerInvocation(FILES)
+    public List<String> mapFilesPerFileSearchPath() {
+        final List<String> names = new ArrayList<>(FILES);
+        for (FileManifest manifest : manifests) {
+            for (FileManifest.Entry file : manifest.getEntries()) {
+                final int searchPathLength = FileHelper.getSearchPathLength(workspace, manifest.getSearchPath().trim(), keepStructure);
+                names.add(file.getFile().getRemote().substring(searchPathLength));
+            }
+        }
+        return names;
+    }
+}
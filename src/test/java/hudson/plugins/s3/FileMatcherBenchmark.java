@@ -0,0 +1,84 @@
+package hudson.plugins.s3;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OperationsPerInvocation;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Names/sec of filtering the artifacts of an S3 copy, with the Ant selectors of {@link FileHelper#selected}
+ * and with a {@link FileMatcher} compiled once per copy.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+public class FileMatcherBenchmark {
+    private static final int ARTIFACTS = 50000;
+
+    @Param({"README.md, LICENSE, target/app.jar", "**/*.jar, docs/**/*.html, README.md"})
+    public String includeFilter;
+
+    @Param({"", "**/*-sources.jar, tmp/**"})
+    public String excludeFilter;
+
+    private List<String> names;
+
+    @Setup(Level.Trial)
+    public void setUp() {
+        names = new ArrayList<>(ARTIFACTS);
+        for (int i = 0; i < ARTIFACTS; i++) {
+            switch (i % 5) {
+                case 0:
+                    names.add("module-" + i + "/target/module-" + i + ".jar");
+                    break;
+                case 1:
+                    names.add("module-" + i + "/target/module-" + i + "-sources.jar");
+                    break;
+                case 2:
+                    names.add("docs/module-" + i + "/index.html");
+                    break;
+                case 3:
+                    names.add("tmp/build-" + i + ".log");
+                    break;
+                default:
+                    names.add(i % 1000 == 4 ? "README.md" : "report-" + i + ".xml");
+                    break;
+            }
+        }
+    }
+
+    @Benchmark
+    @OperationsPerInvocation(ARTIFACTS)
+    public int antSelectors() {
+        int selected = 0;
+        for (String name : names) {
+            if (FileHelper.selected(includeFilter, excludeFilter, name)) {
+                selected++;
+            }
+        }
+        return selected;
+    }
+
+    @Benchmark
+    @OperationsPerInvocation(ARTIFACTS)
+    public int compiledMatcher() {
+        final FileMatcher matcher = FileMatcher.compile(includeFilter, excludeFilter);
+        int selected = 0;
+        for (String name : names) {
+            if (matcher.matches(name)) {
+                selected++;
+            }
+        }
+        return selected;
+    }
+}
@@ -0,0 +1,59 @@
+package hudson.plugins.s3;
+
+import org.junit.Test;
+
+import java.io.File;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+public class FileMatcherTest {
+    private static final String[] FILTERS = {
+            null, "", ",", " , ", "*", "**", "a.txt", "a.txt, c.txt", " a.txt ,b.txt,", "a*.txt, c.txt", "*b.txt, d.txt",
+            "dir/", "dir/a.txt", "dir\\a.txt", "dir//a.txt", "/dir/a.txt", "**/a.txt", "dir/**", "dir/*/a.txt",
+            "?.txt", "A.TXT", "target/*.jar, docs/**/index.html", "**/*-sources.jar"
+    };
+    private static final String[] NAMES = {
+            "", "a.txt", "b.txt", "c.txt", "d.txt", "ab.txt", "A.TXT", "dir", "dir/a.txt", "dir//a.txt", "/dir/a.txt",
+            "dir/a.txt/", "dir/sub/a.txt", "other/dir/a.txt", "target/app.jar", "target/lib/dep.jar",
+            "target/lib/dep-sources.jar", "docs/api/index.html", "docs/index.html", "aa.txt", "a", "./a.txt"
+    };
+
+    @Test
+    public void testSameResultsAsAntSelectors() {
+        for (String include : FILTERS) {
+            for (String exclude : FILTERS) {
+                final FileMatcher matcher = FileMatcher.compile(include, exclude);
+                for (String name : NAMES) {
+                    assertEquals("include '" + include + "', exclude '" + exclude + "', name '" + name + "'",
+                            FileHelper.selected(include, exclude, name), matcher.matches(name));
+                }
+            }
+        }
+    }
+
+    @Test
+    public void testExactNamesAndWildcards() {
+        final FileMatcher matcher = FileMatcher.compile("README.md, target/**/*.jar", "**/*-sources.jar");
+        assertTrue(matcher.matches("README.md"));
+        assertFalse(matcher.matches("docs/README.md"));
+        assertTrue(matcher.matches("target/lib/dep.jar"));
+        assertFalse(matcher.matches("target/lib/dep-sources.jar"));
+    }
+
+    @Test
+    public void testNoIncludesSelectNothing() {
+        assertFalse(FileMatcher.compile(null, null).matches("a.txt"));
+    }
+
+    @Test
+    public void testCanonicalNames() {
+        assertTrue(FileMatcher.isCanonical(""));
+        assertTrue(FileMatcher.isCanonical("a.txt"));
+        assertTrue(FileMatcher.isCanonical("dir/a.txt".replace('/', File.separatorChar)));
+        assertFalse(FileMatcher.isCanonical(File.separator + "a.txt"));
+        assertFalse(FileMatcher.isCanonical("dir" + File.separator));
+        assertFalse(FileMatcher.isCanonical("dir" + File.separator + File.separator + "a.txt"));
+    }
+}
@@ -0,0 +1,64 @@
+package hudson.plugins.s3;
+
+import hudson.FilePath;
+import org.junit.Test;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.fail;
+
+public class FileNameMapperTest {
+    private final File workspace = new File(System.getProperty("java.io.tmpdir"), "workspace");
+    private final List<FileManifest> manifests = Arrays.asList(
+            manifest("build/*.jar", "build/app.jar"),
+            manifest("docs/**/*.html", "docs/api/index.html"));
+
+    @Test
+    public void testNamesAreRelativeToTheDirectoryBeforeTheFirstWildcard() throws Exception {
+        assertEquals(Arrays.asList("app.jar", "api" + File.separator + "index.html"),
+                map(new FileNameMapper(workspace.getPath(), false, false)));
+    }
+
+    @Test
+    public void testKeepStructureKeepsTheWorkspaceDirectories() throws Exception {
+        assertEquals(Arrays.asList("build" + File.separator + "app.jar", "docs" + File.separator + "api" + File.separator + "index.html"),
+                map(new FileNameMapper(workspace.getPath(), false, true)));
+    }
+
+    @Test
+    public void testFlattenDropsTheDirectories() throws Exception {
+        assertEquals(Arrays.asList("app.jar", "index.html"), map(new FileNameMapper(workspace.getPath(), true, false)));
+    }
+
+    @Test
+    public void testDirectoriesAreRejected() throws Exception {
+        final FileManifest.Entry directory = new FileManifest.Entry(new FilePath(new File(workspace, "build")), 0, 0, true);
+        try {
+            new FileNameMapper(workspace.getPath(), false, false).map(
+                    Collections.singletonList(new FileManifest("build", Collections.singletonList(directory))),
+                    new ArrayList<FileManifest.Entry>(), new ArrayList<String>());
+            fail("Directory was mapped");
+        } catch (IOException expected) {
+            assertEquals(directory.getFile() + " is a directory", expected.getMessage());
+        }
+    }
+
+    private List<String> map(FileNameMapper mapper) throws IOException {
+        final List<FileManifest.Entry> files = new ArrayList<>();
+        final List<String> names = new ArrayList<>();
+        mapper.map(manifests, files, names);
+        assertEquals(names.size(), files.size());
+        return names;
+    }
+
+    private FileManifest manifest(String searchPath, String path) {
+        final FileManifest.Entry entry = new FileManifest.Entry(new FilePath(new File(workspace, path)), 1, 0, false);
+        return new FileManifest(searchPath, Collections.singletonList(entry));
+    }
+}
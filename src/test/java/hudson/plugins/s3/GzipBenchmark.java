@@ -0,0 +1,56 @@
+package hudson.plugins.s3;
+
+import org.apache.commons.io.output.NullOutputStream;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.util.concurrent.TimeUnit;
+import java.util.zip.Deflater;
+import java.util.zip.GZIPOutputStream;
+
+/**
+ * Time to gzip a 64 MB text file with the JDK compressor and with {@link ParallelGzipOutputStream}.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+public class GzipBenchmark {
+    private static final int SIZE = 64 * 1024 * 1024;
+    private static final int WRITE_SIZE = 64 * 1024;
+
+    @Param({"128", "1024"})
+    public int blockKilobytes;
+
+    private byte[] content;
+
+    @Setup
+    public void setUp() {
+        content = ParallelGzipOutputStreamTest.textContent(SIZE);
+    }
+
+    @Benchmark
+    public void gzipOutputStream() throws IOException {
+        write(new GZIPOutputStream(new NullOutputStream(), WRITE_SIZE));
+    }
+
+    @Benchmark
+    public void parallelGzipOutputStream() throws IOException {
+        write(new ParallelGzipOutputStream(new NullOutputStream(), Deflater.DEFAULT_COMPRESSION, blockKilobytes * 1024));
+    }
+
+    private void write(OutputStream gzip) throws IOException {
+        try (OutputStream stream = gzip) {
+            for (int off = 0; off < content.length; off += WRITE_SIZE) {
+                stream.write(content, off, Math.min(WRITE_SIZE, content.length - off));
+            }
+        }
+    }
+}
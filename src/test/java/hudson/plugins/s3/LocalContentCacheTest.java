@@ -0,0 +1,147 @@
+package hudson.plugins.s3;
+
+import org.apache.commons.io.FileUtils;
+import org.junit.After;
+import org.junit.Test;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.FileSystems;
+import java.nio.file.Files;
+import java.nio.file.attribute.PosixFilePermission;
+import java.util.Set;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assume.assumeTrue;
+
+public class LocalContentCacheTest {
+    private final File root = createTempDirectory();
+    private final File workspace = new File(root, "workspace");
+    private final LocalContentCache cache = new LocalContentCache(new File(root, "cache").getPath(), 1024);
+
+    @After
+    public void tearDown() {
+        FileUtils.deleteQuietly(root);
+    }
+
+    @Test
+    public void testStoredFilesAreRestored() throws Exception {
+        final File downloaded = write(new File(workspace, "a/toolchain.tar"), "toolchain");
+        final String md5 = MD5.generateFromFile(downloaded);
+        cache.store(md5, downloaded);
+
+        final File target = new File(workspace, "b/toolchain.tar");
+        assertFalse(cache.isLinked(md5, target));
+        assertTrue(cache.restore(md5, target));
+        assertEquals("toolchain", FileUtils.readFileToString(target, StandardCharsets.UTF_8));
+        assertEquals(md5, MD5.generateFromFile(target));
+        assertTrue(cache.isLinked(md5, target));
+    }
+
+    @Test
+    public void testStoreLeavesTheDownloadedFileAlone() throws Exception {
+        assumeTrue(FileSystems.getDefault().supportedFileAttributeViews().contains("posix"));
+        final File downloaded = write(new File(workspace, "tool.bin"), "tool");
+        final Set<PosixFilePermission> permissions = Files.getPosixFilePermissions(downloaded.toPath());
+        final String md5 = MD5.generateFromFile(downloaded);
+        cache.store(md5, downloaded);
+
+        assertFalse(cache.isLinked(md5, downloaded));
+        assertEquals(permissions, Files.getPosixFilePermissions(downloaded.toPath()));
+    }
+
+    @Test
+    public void testRestoreKeepsTimestampsOfEarlierRestores() throws Exception {
+        final File downloaded = write(new File(workspace, "tool.bin"), "tool");
+        final String md5 = MD5.generateFromFile(downloaded);
+        cache.store(md5, downloaded);
+
+        final File first = new File(workspace, "first/tool.bin");
+        assertTrue(cache.restore(md5, first));
+        final long lastModified = first.lastModified();
+        Thread.sleep(20);
+        assertTrue(cache.restore(md5, new File(workspace, "second/tool.bin")));
+
+        assertEquals(lastModified, first.lastModified());
+    }
+
+    @Test
+    public void testRestoredContentIsRecentlyUsed() throws Exception {
+        final File old = write(new File(workspace, "old.bin"), repeat('o', 600));
+        final String oldMd5 = MD5.generateFromFile(old);
+        cache.store(oldMd5, old);
+        new File(new File(cache.getDir(), oldMd5.substring(0, 2)), oldMd5).setLastModified(System.currentTimeMillis() - 120000);
+        final File fresh = write(new File(workspace, "fresh.bin"), repeat('f', 600));
+        final String freshMd5 = MD5.generateFromFile(fresh);
+        cache.store(freshMd5, fresh);
+        new File(new File(cache.getDir(), freshMd5.substring(0, 2)), freshMd5).setLastModified(System.currentTimeMillis() - 60000);
+        assertTrue(cache.restore(oldMd5, new File(workspace, "old-restored.bin")));
+
+        cache.trim();
+
+        assertTrue(cache.restore(oldMd5, new File(workspace, "old-again.bin")));
+        assertFalse(cache.restore(freshMd5, new File(workspace, "fresh-restored.bin")));
+    }
+
+    @Test
+    public void testRestoreReplacesChangedFiles() throws Exception {
+        final File downloaded = write(new File(workspace, "new.txt"), "new");
+        final String md5 = MD5.generateFromFile(downloaded);
+        cache.store(md5, downloaded);
+
+        final File target = write(new File(workspace, "old.txt"), "old");
+        assertTrue(cache.restore(md5, target));
+        assertEquals("new", FileUtils.readFileToString(target, StandardCharsets.UTF_8));
+    }
+
+    @Test
+    public void testMissingContentIsNotRestored() throws Exception {
+        final File target = new File(workspace, "missing.txt");
+        assertFalse(cache.restore("0123456789abcdef0123456789abcdef", target));
+        assertFalse(cache.restore("../../etc/passwd", target));
+        assertFalse(cache.restore(null, target));
+        assertFalse(target.exists());
+    }
+
+    @Test
+    public void testTrimDeletesLeastRecentlyUsed() throws Exception {
+        final File old = write(new File(workspace, "old.bin"), repeat('o', 600));
+        final String oldMd5 = MD5.generateFromFile(old);
+        cache.store(oldMd5, old);
+        final File fresh = write(new File(workspace, "fresh.bin"), repeat('f', 600));
+        final String freshMd5 = MD5.generateFromFile(fresh);
+        cache.store(freshMd5, fresh);
+        new File(new File(cache.getDir(), oldMd5.substring(0, 2)), oldMd5).setLastModified(System.currentTimeMillis() - 60000);
+
+        cache.trim();
+
+        assertFalse(cache.restore(oldMd5, new File(workspace, "old-restored.bin")));
+        assertTrue(cache.restore(freshMd5, new File(workspace, "fresh-restored.bin")));
+        // the workspace keeps its copy of trimmed content
+        assertEquals(oldMd5, MD5.generateFromFile(old));
+    }
+
+    private static File write(File file, String content) throws IOException {
+        FileUtils.writeStringToFile(file, content, StandardCharsets.UTF_8);
+        return file;
+    }
+
+    private static String repeat(char c, int count) {
+        final StringBuilder builder = new StringBuilder(count);
+        for (int i = 0; i < count; i++) {
+            builder.append(c);
+        }
+        return builder.toString();
+    }
+
+    private static File createTempDirectory() {
+        try {
+            return Files.createTempDirectory("content-cache").toFile();
+        } catch (IOException e) {
+            throw new IllegalStateException(e);
+        }
+    }
+}
@@ -0,0 +1,361 @@
+package hudson.plugins.s3;
+
+import com.amazonaws.services.s3.AbstractAmazonS3;
+import com.amazonaws.services.s3.model.AbortMultipartUploadRequest;
+import com.amazonaws.services.s3.model.AmazonS3Exception;
+import com.amazonaws.services.s3.model.CompleteMultipartUploadRequest;
+import com.amazonaws.services.s3.model.CompleteMultipartUploadResult;
+import com.amazonaws.services.s3.model.DeleteObjectsRequest;
+import com.amazonaws.services.s3.model.DeleteObjectsResult;
+import com.amazonaws.services.s3.model.GetObjectRequest;
+import com.amazonaws.services.s3.model.InitiateMultipartUploadRequest;
+import com.amazonaws.services.s3.model.InitiateMultipartUploadResult;
+import com.amazonaws.services.s3.model.ListObjectsV2Request;
+import com.amazonaws.services.s3.model.ListObjectsV2Result;
+import com.amazonaws.services.s3.model.ListPartsRequest;
+import com.amazonaws.services.s3.model.MultiObjectDeleteException;
+import com.amazonaws.services.s3.model.ObjectMetadata;
+import com.amazonaws.services.s3.model.PartETag;
+import com.amazonaws.services.s3.model.PartListing;
+import com.amazonaws.services.s3.model.PartSummary;
+import com.amazonaws.services.s3.model.PutObjectRequest;
+import com.amazonaws.services.s3.model.PutObjectResult;
+import com.amazonaws.services.s3.model.S3Object;
+import com.amazonaws.services.s3.model.S3ObjectSummary;
+import com.amazonaws.services.s3.model.UploadPartRequest;
+import com.amazonaws.services.s3.model.UploadPartResult;
+import org.apache.commons.codec.digest.DigestUtils;
+import org.apache.commons.io.IOUtils;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.RandomAccessFile;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Date;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.SortedMap;
+import java.util.TreeSet;
+import java.util.UUID;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentSkipListMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * In-process stand-in for S3 used by tests and benchmarks. Objects are kept in memory
+ * and every request waits for the configured latency, which roughly models the round-trip to S3.
+ */
+class LocalS3 extends AbstractAmazonS3 {
+    private final long latencyMillis;
+    private final AtomicLong requests = new AtomicLong();
+    private final Map<String, byte[]> objects = new ConcurrentHashMap<>();
+    private final Map<String, Date> lastModified = new ConcurrentHashMap<>();
+    private final Map<String, SortedMap<Integer, byte[]>> multipartUploads = new ConcurrentHashMap<>();
+    private final AtomicLong abortedMultipartUploads = new AtomicLong();
+    private final AtomicInteger failingUploadParts = new AtomicInteger();
+    private final AtomicInteger fileParts = new AtomicInteger();
+    private final Set<String> undeletable = Collections.newSetFromMap(new ConcurrentHashMap<String, Boolean>());
+
+    LocalS3(long latencyMillis) {
+        this.latencyMillis = latencyMillis;
+    }
+
+    long getRequests() {
+        return requests.get();
+    }
+
+    byte[] getContent(String bucketName, String key) {
+        return objects.get(bucketName + '/' + key);
+    }
+
+    void putContent(String bucketName, String key, byte[] content) {
+        store(bucketName + '/' + key, content);
+    }
+
+    void setLastModified(String bucketName, String key, Date date) {
+        lastModified.put(bucketName + '/' + key, date);
+    }
+
+    /**
+     * Makes deleting the object fail with AccessDenied.
+     */
+    void makeUndeletable(String bucketName, String key) {
+        undeletable.add(bucketName + '/' + key);
+    }
+
+    /**
+     * Makes the next part uploads fail with 503 SlowDown.
+     */
+    void failUploadParts(int count) {
+        failingUploadParts.set(count);
+    }
+
+    long getAbortedMultipartUploads() {
+        return abortedMultipartUploads.get();
+    }
+
+    /**
+     * Number of parts which were read from a file at their offset.
+     */
+    int getFileParts() {
+        return fileParts.get();
+    }
+
+    int getPendingMultipartUploads() {
+        return multipartUploads.size();
+    }
+
+    @Override
+    public PutObjectResult putObject(PutObjectRequest request) {
+        roundTrip();
+        final byte[] content = request.getFile() != null ? readFile(request.getFile(), 0, request.getFile().length())
+                : readFully(request.getInputStream());
+        store(request.getBucketName() + '/' + request.getKey(), content);
+
+        final PutObjectResult result = new PutObjectResult();
+        result.setETag(DigestUtils.md5Hex(content));
+        return result;
+    }
+
+    @Override
+    public S3Object getObject(GetObjectRequest request) {
+        roundTrip();
+        final byte[] content = getContent(request.getBucketName(), request.getKey());
+        if (content == null) {
+            final AmazonS3Exception e = new AmazonS3Exception("No such key: " + request.getKey());
+            e.setStatusCode(404);
+            throw e;
+        }
+        final String eTag = DigestUtils.md5Hex(content);
+        if (!request.getMatchingETagConstraints().isEmpty() && !request.getMatchingETagConstraints().contains(eTag)) {
+            return null;
+        }
+
+        byte[] range = content;
+        final long[] bounds = request.getRange();
+        if (bounds != null) {
+            range = Arrays.copyOfRange(content, (int) bounds[0], (int) Math.min(bounds[1] + 1, content.length));
+        }
+
+        final ObjectMetadata metadata = new ObjectMetadata();
+        metadata.setContentLength(range.length);
+        metadata.setHeader("ETag", eTag);
+        final S3Object object = new S3Object();
+        object.setBucketName(request.getBucketName());
+        object.setKey(request.getKey());
+        object.setObjectMetadata(metadata);
+        object.setObjectContent(new ByteArrayInputStream(range));
+        return object;
+    }
+
+    @Override
+    public InitiateMultipartUploadResult initiateMultipartUpload(InitiateMultipartUploadRequest request) {
+        roundTrip();
+        final String uploadId = UUID.randomUUID().toString();
+        multipartUploads.put(uploadId, new ConcurrentSkipListMap<Integer, byte[]>());
+
+        final InitiateMultipartUploadResult result = new InitiateMultipartUploadResult();
+        result.setBucketName(request.getBucketName());
+        result.setKey(request.getKey());
+        result.setUploadId(uploadId);
+        return result;
+    }
+
+    @Override
+    public UploadPartResult uploadPart(UploadPartRequest request) {
+        roundTrip();
+        if (failingUploadParts.getAndDecrement() > 0) {
+            final AmazonS3Exception e = new AmazonS3Exception("Please reduce your request rate.");
+            e.setStatusCode(503);
+            e.setErrorCode("SlowDown");
+            throw e;
+        }
+        final byte[] content;
+        if (request.getFile() != null) {
+            fileParts.incrementAndGet();
+            content = readFile(request.getFile(), request.getFileOffset(), request.getPartSize());
+        } else {
+            content = readFully(request.getInputStream());
+        }
+        getUpload(request.getUploadId()).put(request.getPartNumber(), content);
+
+        final UploadPartResult result = new UploadPartResult();
+        result.setPartNumber(request.getPartNumber());
+        result.setETag(DigestUtils.md5Hex(content));
+        return result;
+    }
+
+    @Override
+    public PartListing listParts(ListPartsRequest request) {
+        roundTrip();
+        final PartListing listing = new PartListing();
+        listing.setBucketName(request.getBucketName());
+        listing.setKey(request.getKey());
+        listing.setUploadId(request.getUploadId());
+        for (Map.Entry<Integer, byte[]> part : getUpload(request.getUploadId()).entrySet()) {
+            final PartSummary summary = new PartSummary();
+            summary.setPartNumber(part.getKey());
+            summary.setSize(part.getValue().length);
+            summary.setETag(DigestUtils.md5Hex(part.getValue()));
+            listing.getParts().add(summary);
+        }
+        return listing;
+    }
+
+    @Override
+    public CompleteMultipartUploadResult completeMultipartUpload(CompleteMultipartUploadRequest request) {
+        roundTrip();
+        final SortedMap<Integer, byte[]> parts = getUpload(request.getUploadId());
+        final ByteArrayOutputStream content = new ByteArrayOutputStream();
+        for (PartETag part : request.getPartETags()) {
+            final byte[] bytes = parts.get(part.getPartNumber());
+            content.write(bytes, 0, bytes.length);
+        }
+        multipartUploads.remove(request.getUploadId());
+        store(request.getBucketName() + '/' + request.getKey(), content.toByteArray());
+
+        final CompleteMultipartUploadResult result = new CompleteMultipartUploadResult();
+        result.setBucketName(request.getBucketName());
+        result.setKey(request.getKey());
+        return result;
+    }
+
+    @Override
+    public void abortMultipartUpload(AbortMultipartUploadRequest request) {
+        roundTrip();
+        abortedMultipartUploads.incrementAndGet();
+        multipartUploads.remove(request.getUploadId());
+    }
+
+    @Override
+    public DeleteObjectsResult deleteObjects(DeleteObjectsRequest request) {
+        roundTrip();
+        final List<DeleteObjectsResult.DeletedObject> deleted = new ArrayList<>();
+        final List<MultiObjectDeleteException.DeleteError> errors = new ArrayList<>();
+        for (DeleteObjectsRequest.KeyVersion key : request.getKeys()) {
+            final String path = request.getBucketName() + '/' + key.getKey();
+            if (undeletable.contains(path)) {
+                final MultiObjectDeleteException.DeleteError error = new MultiObjectDeleteException.DeleteError();
+                error.setKey(key.getKey());
+                error.setCode("AccessDenied");
+                error.setMessage("Access Denied");
+                errors.add(error);
+            } else {
+                objects.remove(path);
+                lastModified.remove(path);
+                final DeleteObjectsResult.DeletedObject object = new DeleteObjectsResult.DeletedObject();
+                object.setKey(key.getKey());
+                deleted.add(object);
+            }
+        }
+        if (!errors.isEmpty()) {
+            throw new MultiObjectDeleteException(errors, deleted);
+        }
+        return new DeleteObjectsResult(request.getQuiet() ? Collections.<DeleteObjectsResult.DeletedObject>emptyList() : deleted);
+    }
+
+    @Override
+    public ListObjectsV2Result listObjectsV2(ListObjectsV2Request request) {
+        roundTrip();
+        final String bucketPath = request.getBucketName() + '/';
+        final String prefix = request.getPrefix() != null ? request.getPrefix() : "";
+        final String delimiter = request.getDelimiter();
+        final String after = request.getContinuationToken() != null ? request.getContinuationToken() : request.getStartAfter();
+        final int maxKeys = request.getMaxKeys() != null ? request.getMaxKeys() : 1000;
+
+        final TreeSet<String> keys = new TreeSet<>();
+        for (String path : objects.keySet()) {
+            if (path.startsWith(bucketPath + prefix)) {
+                keys.add(path.substring(bucketPath.length()));
+            }
+        }
+
+        final ListObjectsV2Result result = new ListObjectsV2Result();
+        result.setBucketName(request.getBucketName());
+        result.setPrefix(prefix);
+        result.setDelimiter(delimiter);
+        final List<String> commonPrefixes = new ArrayList<>();
+        String last = null;
+        int count = 0;
+        for (String key : keys) {
+            final int end = delimiter != null ? key.indexOf(delimiter, prefix.length()) : -1;
+            final String entry = end >= 0 ? key.substring(0, end + delimiter.length()) : key;
+            if ((after != null && entry.compareTo(after) <= 0) || entry.equals(last)) {
+                continue;
+            }
+            if (count == maxKeys) {
+                result.setTruncated(true);
+                result.setNextContinuationToken(last);
+                break;
+            }
+            if (end >= 0) {
+                commonPrefixes.add(entry);
+            } else {
+                final S3ObjectSummary summary = new S3ObjectSummary();
+                summary.setBucketName(request.getBucketName());
+                summary.setKey(key);
+                summary.setSize(objects.get(bucketPath + key).length);
+                summary.setLastModified(lastModified.get(bucketPath + key));
+                result.getObjectSummaries().add(summary);
+            }
+            last = entry;
+            count++;
+        }
+        result.setCommonPrefixes(commonPrefixes);
+        result.setKeyCount(count);
+        return result;
+    }
+
+    private void store(String path, byte[] content) {
+        objects.put(path, content);
+        lastModified.put(path, new Date());
+    }
+
+    private SortedMap<Integer, byte[]> getUpload(String uploadId) {
+        final SortedMap<Integer, byte[]> upload = multipartUploads.get(uploadId);
+        if (upload == null) {
+            final AmazonS3Exception e = new AmazonS3Exception("No such upload: " + uploadId);
+            e.setStatusCode(404);
+            throw e;
+        }
+        return upload;
+    }
+
+    private static byte[] readFile(File file, long offset, long length) {
+        try (RandomAccessFile input = new RandomAccessFile(file, "r")) {
+            final byte[] content = new byte[(int) length];
+            input.seek(offset);
+            input.readFully(content);
+            return content;
+        } catch (IOException e) {
+            throw new IllegalStateException(e);
+        }
+    }
+
+    private static byte[] readFully(InputStream input) {
+        try (InputStream stream = input) {
+            return IOUtils.toByteArray(stream);
+        } catch (IOException e) {
+            throw new IllegalStateException(e);
+        }
+    }
+
+    private void roundTrip() {
+        requests.incrementAndGet();
+        if (latencyMillis > 0) {
+            try {
+                TimeUnit.MILLISECONDS.sleep(latencyMillis);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+        }
+    }
+}
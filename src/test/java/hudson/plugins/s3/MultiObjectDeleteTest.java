@@ -0,0 +1,52 @@
+package hudson.plugins.s3;
+
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+public class MultiObjectDeleteTest {
+    private final LocalS3 s3 = new LocalS3(0);
+
+    @Test
+    public void testKeysAreDeletedInBatches() {
+        final List<String> keys = new ArrayList<>();
+        for (int i = 0; i < 2500; i++) {
+            final String key = "jobs/project/1/file" + i;
+            s3.putContent("bucket", key, new byte[]{1});
+            keys.add(key);
+        }
+
+        final Map<String, String> failures = MultiObjectDelete.delete(s3, "bucket", keys);
+
+        assertTrue(failures.isEmpty());
+        assertEquals(3, s3.getRequests());
+        for (String key : keys) {
+            assertNull(s3.getContent("bucket", key));
+        }
+    }
+
+    @Test
+    public void testFailuresAreReportedPerKey() {
+        s3.putContent("bucket", "deletable", new byte[]{1});
+        s3.putContent("bucket", "protected", new byte[]{1});
+        s3.makeUndeletable("bucket", "protected");
+
+        final List<String> keys = new ArrayList<>();
+        keys.add("deletable");
+        keys.add("protected");
+        final Map<String, String> failures = MultiObjectDelete.delete(s3, "bucket", keys);
+
+        assertEquals(Collections.singleton("protected"), failures.keySet());
+        assertEquals("AccessDenied: Access Denied", failures.get("protected"));
+        assertNull(s3.getContent("bucket", "deletable"));
+        assertNotNull(s3.getContent("bucket", "protected"));
+    }
+}
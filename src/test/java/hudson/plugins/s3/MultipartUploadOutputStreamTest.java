@@ -0,0 +1,112 @@
+package hudson.plugins.s3;
+
+import com.amazonaws.services.s3.model.ObjectMetadata;
+import org.apache.commons.codec.digest.DigestUtils;
+import org.junit.Test;
+
+import java.io.InterruptedIOException;
+import java.util.Random;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+public class MultipartUploadOutputStreamTest {
+    private static final int PART_SIZE = MultipartUploadOutputStream.MIN_PART_SIZE;
+
+    private final LocalS3 s3 = new LocalS3(0);
+
+    @Test
+    public void testSmallObjectIsSentWithSinglePut() throws Exception {
+        final byte[] content = randomContent(1000);
+
+        final MultipartUploadOutputStream stream = upload(content);
+
+        assertArrayEquals(content, s3.getContent("bucket", "key"));
+        assertEquals(1, s3.getRequests());
+        assertEquals(DigestUtils.md5Hex(content), stream.getMd5());
+    }
+
+    @Test
+    public void testLargeObjectIsSentInParts() throws Exception {
+        final byte[] content = randomContent(2 * PART_SIZE + 12345);
+
+        final MultipartUploadOutputStream stream = upload(content);
+
+        assertArrayEquals(content, s3.getContent("bucket", "key"));
+        // initiate, three parts, complete
+        assertEquals(5, s3.getRequests());
+        assertEquals(content.length, stream.getLength());
+        assertEquals(DigestUtils.md5Hex(content), stream.getMd5());
+    }
+
+    @Test
+    public void testOnlyFailedPartIsRetried() throws Exception {
+        final byte[] content = randomContent(2 * PART_SIZE + 12345);
+        s3.failUploadParts(1);
+
+        final MultipartUploadOutputStream stream = new MultipartUploadOutputStream(s3, "bucket", "key", new ObjectMetadata(), PART_SIZE, 2,
+                new RetryPolicy(3, 0, 0));
+        stream.write(content);
+        stream.close();
+
+        assertArrayEquals(content, s3.getContent("bucket", "key"));
+        // initiate, three parts, one of them twice, complete
+        assertEquals(6, s3.getRequests());
+    }
+
+    @Test
+    public void testAbortDiscardsUploadedParts() throws Exception {
+        final MultipartUploadOutputStream stream = new MultipartUploadOutputStream(s3, "bucket", "key", new ObjectMetadata(), PART_SIZE, 2);
+        stream.write(randomContent(PART_SIZE + 1));
+        stream.abort();
+        stream.close();
+
+        assertNull(s3.getContent("bucket", "key"));
+        assertEquals(0, s3.getPendingMultipartUploads());
+    }
+
+    @Test
+    public void testAbortIsSentOnce() throws Exception {
+        final MultipartUploadOutputStream stream = new MultipartUploadOutputStream(s3, "bucket", "key", new ObjectMetadata(), PART_SIZE, 2);
+        stream.write(randomContent(PART_SIZE + 1));
+        stream.abort();
+        stream.abort();
+
+        // the part upload may still be running, so only the aborts are counted
+        assertEquals(1, s3.getAbortedMultipartUploads());
+    }
+
+    @Test
+    public void testInterruptIsKept() throws Exception {
+        final MultipartUploadOutputStream stream = new MultipartUploadOutputStream(s3, "bucket", "key", new ObjectMetadata(), PART_SIZE, 2);
+        Thread.currentThread().interrupt();
+        try {
+            stream.write(randomContent(PART_SIZE + 1));
+            fail("The interrupt wasn't reported");
+        } catch (InterruptedIOException e) {
+            assertTrue(Thread.interrupted());
+        } finally {
+            Thread.interrupted();
+            stream.abort();
+        }
+    }
+
+    private MultipartUploadOutputStream upload(byte[] content) throws Exception {
+        final MultipartUploadOutputStream stream = new MultipartUploadOutputStream(s3, "bucket", "key", new ObjectMetadata(), PART_SIZE, 2);
+        // odd sized writes cross the part boundaries
+        for (int off = 0; off < content.length; off += 4099) {
+            stream.write(content, off, Math.min(4099, content.length - off));
+        }
+        stream.close();
+        return stream;
+    }
+
+    private static byte[] randomContent(int size) {
+        final byte[] bytes = new byte[size];
+        new Random(7).nextBytes(bytes);
+        return bytes;
+    }
+}
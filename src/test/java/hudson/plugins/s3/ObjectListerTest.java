@@ -0,0 +1,72 @@
+package hudson.plugins.s3;
+
+import com.amazonaws.services.s3.model.S3ObjectSummary;
+import org.junit.After;
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+import static org.junit.Assert.assertEquals;
+
+public class ObjectListerTest {
+    private final LocalS3 s3 = new LocalS3(0);
+    private final ObjectLister lister = new ObjectLister(s3, "bucket");
+    private final ExecutorService executor = Executors.newFixedThreadPool(4);
+    private final List<String> keys = Collections.synchronizedList(new ArrayList<String>());
+    private final List<Integer> pages = Collections.synchronizedList(new ArrayList<Integer>());
+    private final ObjectLister.Visitor visitor = new ObjectLister.Visitor() {
+        @Override
+        public void visit(List<S3ObjectSummary> objects) {
+            pages.add(objects.size());
+            for (S3ObjectSummary summary : objects) {
+                keys.add(summary.getKey());
+            }
+        }
+    };
+
+    @After
+    public void tearDown() {
+        executor.shutdownNow();
+    }
+
+    @Test
+    public void testObjectsAreListedPageByPage() throws Exception {
+        final List<String> expected = new ArrayList<>();
+        for (int i = 0; i < 2500; i++) {
+            final String key = String.format("jobs/project/1/file%04d", i);
+            s3.putContent("bucket", key, new byte[]{1});
+            expected.add(key);
+        }
+        s3.putContent("bucket", "other/file", new byte[]{1});
+
+        assertEquals(2500, lister.list("jobs/", visitor));
+        assertEquals(expected, keys);
+        assertEquals(3, pages.size());
+        assertEquals(3, s3.getRequests());
+    }
+
+    @Test
+    public void testPrefixIsSplitByDelimiter() throws Exception {
+        final List<String> expected = new ArrayList<>();
+        expected.add("jobs/top-level");
+        for (String project : new String[] {"a", "b", "c/d"}) {
+            for (int i = 0; i < 1500; i++) {
+                final String key = "jobs/" + project + "/" + i;
+                s3.putContent("bucket", key, new byte[]{1});
+                expected.add(key);
+            }
+        }
+        s3.putContent("bucket", "jobs/top-level", new byte[]{1});
+
+        assertEquals(4501, lister.listParallel("jobs/", "/", executor, visitor));
+        Collections.sort(expected);
+        Collections.sort(keys);
+        assertEquals(expected, keys);
+        // one delimited listing, two pages for each of the three parts
+        assertEquals(7, s3.getRequests());
+    }
+}
@@ -0,0 +1,98 @@
+package hudson.plugins.s3;
+
+import org.apache.commons.io.IOUtils;
+import org.junit.Test;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.util.Random;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.zip.Deflater;
+import java.util.zip.GZIPInputStream;
+import java.util.zip.GZIPOutputStream;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertTrue;
+
+public class ParallelGzipOutputStreamTest {
+    private static final int BLOCK_SIZE = 64 * 1024;
+
+    @Test
+    public void testOutputIsReadableByGzip() throws Exception {
+        final byte[] content = textContent(10 * BLOCK_SIZE + 123);
+
+        assertArrayEquals(content, gunzip(compress(content, 4)));
+    }
+
+    @Test
+    public void testEmptyInput() throws Exception {
+        final byte[] content = new byte[0];
+
+        assertArrayEquals(content, gunzip(compress(content, 2)));
+    }
+
+    @Test
+    public void testInputOfExactlyOneBlock() throws Exception {
+        final byte[] content = textContent(BLOCK_SIZE);
+
+        assertArrayEquals(content, gunzip(compress(content, 1)));
+    }
+
+    @Test
+    public void testIncompressibleInput() throws Exception {
+        final byte[] content = new byte[3 * BLOCK_SIZE + 7];
+        new Random(3).nextBytes(content);
+
+        assertArrayEquals(content, gunzip(compress(content, 2)));
+    }
+
+    @Test
+    public void testRatioIsCloseToSingleThreadedGzip() throws Exception {
+        final byte[] content = textContent(16 * BLOCK_SIZE);
+
+        final ByteArrayOutputStream single = new ByteArrayOutputStream();
+        try (GZIPOutputStream gzip = new GZIPOutputStream(single)) {
+            gzip.write(content);
+        }
+
+        // the shared dictionaries keep the block boundaries cheap
+        final int parallel = compress(content, 4).length;
+        assertTrue(parallel + " vs " + single.size(), parallel < single.size() * 1.05);
+    }
+
+    private static byte[] compress(byte[] content, int maxBlocksInFlight) throws IOException {
+        final ExecutorService executor = Executors.newFixedThreadPool(2);
+        try {
+            final ByteArrayOutputStream compressed = new ByteArrayOutputStream();
+            try (ParallelGzipOutputStream gzip = new ParallelGzipOutputStream(compressed, Deflater.DEFAULT_COMPRESSION,
+                    BLOCK_SIZE, executor, maxBlocksInFlight)) {
+                // odd sized writes cross the block boundaries
+                for (int off = 0; off < content.length; off += 5003) {
+                    gzip.write(content, off, Math.min(5003, content.length - off));
+                }
+            }
+            return compressed.toByteArray();
+        } finally {
+            executor.shutdown();
+        }
+    }
+
+    private static byte[] gunzip(byte[] compressed) throws IOException {
+        try (GZIPInputStream gzip = new GZIPInputStream(new ByteArrayInputStream(compressed))) {
+            return IOUtils.toByteArray(gzip);
+        }
+    }
+
+    static byte[] textContent(int size) {
+        final String[] words = {"jenkins", "artifact", "bucket", "upload", "build", "s3", "log", "\n"};
+        final Random random = new Random(11);
+        final StringBuilder text = new StringBuilder(size + 16);
+        while (text.length() < size) {
+            text.append(words[random.nextInt(words.length)]).append(' ').append(random.nextInt(1000)).append(' ');
+        }
+        return text.substring(0, size).getBytes(StandardCharsets.US_ASCII);
+    }
+}
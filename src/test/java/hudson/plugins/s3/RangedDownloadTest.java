@@ -0,0 +1,66 @@
+package hudson.plugins.s3;
+
+import com.amazonaws.services.s3.model.ObjectMetadata;
+import com.amazonaws.services.s3.model.PutObjectRequest;
+import org.apache.commons.codec.digest.DigestUtils;
+import org.apache.commons.io.FileUtils;
+import org.junit.Test;
+
+import java.io.ByteArrayInputStream;
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.util.Random;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.fail;
+
+public class RangedDownloadTest {
+    private static final int RANGE_SIZE = 64 * 1024;
+
+    private final LocalS3 s3 = new LocalS3(0);
+
+    @Test
+    public void testRangesAreAssembledInOrder() throws Exception {
+        final byte[] content = store(5 * RANGE_SIZE + 99);
+        final File file = tempFile();
+        try {
+            final String md5 = new RangedDownload(s3, "bucket", "key", content.length, null, RANGE_SIZE, 3).downloadTo(file);
+
+            assertArrayEquals(content, FileUtils.readFileToByteArray(file));
+            assertEquals(DigestUtils.md5Hex(content), md5);
+            // one GET per range
+            assertEquals(1 + 6, s3.getRequests());
+        } finally {
+            FileUtils.deleteQuietly(file);
+        }
+    }
+
+    @Test
+    public void testObjectChangedDuringDownload() throws Exception {
+        final byte[] content = store(2 * RANGE_SIZE);
+        final File file = tempFile();
+        try {
+            new RangedDownload(s3, "bucket", "key", content.length, "outdated", RANGE_SIZE, 2).downloadTo(file);
+            fail("The ETag doesn't match");
+        } catch (IOException e) {
+            // expected
+        } finally {
+            FileUtils.deleteQuietly(file);
+        }
+    }
+
+    private byte[] store(int size) {
+        final byte[] content = new byte[size];
+        new Random(5).nextBytes(content);
+        final ObjectMetadata metadata = new ObjectMetadata();
+        metadata.setContentLength(size);
+        s3.putObject(new PutObjectRequest("bucket", "key", new ByteArrayInputStream(content), metadata));
+        return content;
+    }
+
+    private static File tempFile() throws IOException {
+        return Files.createTempFile("ranged-download", ".bin").toFile();
+    }
+}
@@ -0,0 +1,107 @@
+package hudson.plugins.s3;
+
+import com.amazonaws.services.s3.AmazonS3;
+import com.amazonaws.services.s3.model.GetObjectRequest;
+import com.amazonaws.services.s3.model.ObjectMetadata;
+import com.amazonaws.services.s3.model.PutObjectRequest;
+import com.amazonaws.services.s3.model.S3Object;
+import com.amazonaws.util.IOUtils;
+import org.junit.Test;
+
+import java.io.ByteArrayInputStream;
+import java.io.InputStream;
+import java.util.Arrays;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotSame;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+
+public class RateLimitTest {
+    @Test
+    public void testRequestBudgetIsSharedPerBucket() throws Exception {
+        // a second's worth of requests is available right away
+        final long start = System.nanoTime();
+        acquire(new RateLimit("shared", 20, 0), "bucket", 20);
+        assertTrue(elapsedMillis(start) < 500);
+
+        // another instance of the same limit draws from the same budget
+        acquire(new RateLimit("shared", 20, 0), "bucket", 10);
+        assertTrue(elapsedMillis(start) >= 400);
+
+        // other buckets have their own
+        final long other = System.nanoTime();
+        acquire(new RateLimit("shared", 20, 0), "other-bucket", 20);
+        assertTrue(elapsedMillis(other) < 500);
+    }
+
+    @Test
+    public void testIdleBudgetsAreDropped() throws Exception {
+        final RateLimit limit = new RateLimit("idle", 20, 0);
+        limit.acquireRequest("bucket");
+        final int budgets = RateLimit.getBudgets();
+
+        RateLimit.dropIdleBudgets(System.nanoTime());
+        assertEquals(budgets, RateLimit.getBudgets());
+
+        RateLimit.dropIdleBudgets(System.nanoTime() + TimeUnit.MINUTES.toNanos(2));
+        assertTrue(RateLimit.getBudgets() < budgets);
+    }
+
+    @Test
+    public void testBytesAreThrottled() throws Exception {
+        final RateLimit limit = new RateLimit("bytes", 0, 100 * 1024);
+        final long start = System.nanoTime();
+        try (InputStream in = limit.throttle("bucket", new ByteArrayInputStream(new byte[150 * 1024]))) {
+            assertEquals(150 * 1024, IOUtils.toByteArray(in).length);
+        }
+        assertTrue(elapsedMillis(start) >= 400);
+    }
+
+    @Test
+    public void testShare() {
+        final RateLimit limit = new RateLimit("profile", 100, 1000);
+        assertEquals(new RateLimit("profile", 25, 250), limit.share(25));
+        assertSame(limit, limit.share(100));
+        assertSame(limit, limit.share(0));
+        assertTrue(RateLimit.UNLIMITED.share(50).isUnlimited());
+    }
+
+    @Test
+    public void testUnlimitedClientIsNotWrapped() {
+        final AmazonS3 client = new LocalS3(0);
+        assertSame(client, RateLimit.UNLIMITED.wrap(client));
+        assertSame(client, new RateLimit("profile", 0, 0).wrap(client));
+        assertNotSame(client, new RateLimit("profile", 10, 0).wrap(client));
+    }
+
+    @Test
+    public void testThrottledClientTransfers() throws Exception {
+        final LocalS3 s3 = new LocalS3(0);
+        final AmazonS3 client = new RateLimit("client", 1000, 10 * 1024 * 1024).wrap(s3);
+        final byte[] content = new byte[64 * 1024];
+        Arrays.fill(content, (byte) 'x');
+
+        final ObjectMetadata metadata = new ObjectMetadata();
+        metadata.setContentLength(content.length);
+        client.putObject(new PutObjectRequest("bucket", "artifact", new ByteArrayInputStream(content), metadata));
+        assertArrayEquals(content, s3.getContent("bucket", "artifact"));
+
+        try (S3Object object = client.getObject(new GetObjectRequest("bucket", "artifact"))) {
+            assertArrayEquals(content, IOUtils.toByteArray(object.getObjectContent()));
+        }
+        assertEquals(2, s3.getRequests());
+    }
+
+    private static void acquire(RateLimit limit, String bucketName, int requests) throws InterruptedException {
+        for (int i = 0; i < requests; i++) {
+            limit.acquireRequest(bucketName);
+        }
+    }
+
+    private static long elapsedMillis(long start) {
+        return TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - start);
+    }
+}
@@ -0,0 +1,113 @@
+package hudson.plugins.s3;
+
+import com.amazonaws.AmazonClientException;
+import com.amazonaws.services.s3.model.AmazonS3Exception;
+import org.junit.Test;
+
+import java.io.FileNotFoundException;
+import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.net.SocketException;
+import java.net.SocketTimeoutException;
+import java.util.concurrent.Callable;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+public class RetryPolicyTest {
+    @Test
+    public void testTransientFailuresAreRetried() {
+        assertTrue(RetryPolicy.isRetryable(serviceException(503, "SlowDown")));
+        assertTrue(RetryPolicy.isRetryable(serviceException(500, "InternalError")));
+        assertTrue(RetryPolicy.isRetryable(serviceException(400, "RequestTimeout")));
+        assertTrue(RetryPolicy.isRetryable(new SocketException("Connection reset")));
+        assertTrue(RetryPolicy.isRetryable(new AmazonClientException("Unable to execute HTTP request", new SocketException("Connection reset"))));
+        assertTrue(RetryPolicy.isRetryable(new IOException("Failed to upload part", serviceException(503, "SlowDown"))));
+    }
+
+    @Test
+    public void testPermanentFailuresAreNotRetried() {
+        assertFalse(RetryPolicy.isRetryable(serviceException(403, "AccessDenied")));
+        assertFalse(RetryPolicy.isRetryable(serviceException(404, "NoSuchBucket")));
+        assertFalse(RetryPolicy.isRetryable(new IOException("Failed to upload part", serviceException(403, "AccessDenied"))));
+        assertFalse(RetryPolicy.isRetryable(new FileNotFoundException("artifact.zip")));
+        assertFalse(RetryPolicy.isRetryable(new IllegalArgumentException()));
+    }
+
+    @Test
+    public void testInterruptionsAreNotRetried() throws Exception {
+        assertFalse(RetryPolicy.isRetryable(new InterruptedIOException("Interrupted while uploading")));
+        assertFalse(RetryPolicy.isRetryable(new AmazonClientException("Unable to execute HTTP request", new InterruptedIOException())));
+        assertFalse(RetryPolicy.isRetryable(new IOException("Failed to upload part", new InterruptedException())));
+        assertEquals(1, countCalls(new RetryPolicy(3, 0, 0), new InterruptedIOException()));
+
+        // timeouts are interrupted I/O as well, but may go away
+        assertTrue(RetryPolicy.isRetryable(new SocketTimeoutException("Read timed out")));
+        assertTrue(RetryPolicy.isRetryable(new AmazonClientException("Unable to execute HTTP request", new SocketTimeoutException())));
+    }
+
+    @Test
+    public void testCallIsRepeatedUntilItSucceeds() throws Exception {
+        final AtomicInteger calls = new AtomicInteger();
+        final String result = new RetryPolicy(5, 0, 0).call("test", new Callable<String>() {
+            @Override
+            public String call() {
+                if (calls.incrementAndGet() < 3) {
+                    throw serviceException(503, "SlowDown");
+                }
+                return "done";
+            }
+        });
+        assertEquals("done", result);
+        assertEquals(3, calls.get());
+    }
+
+    @Test
+    public void testAttemptsAreLimited() throws Exception {
+        assertEquals(3, countCalls(new RetryPolicy(3, 0, 0), serviceException(503, "SlowDown")));
+    }
+
+    @Test
+    public void testPermanentFailureFailsFast() throws Exception {
+        assertEquals(1, countCalls(new RetryPolicy(3, 0, 0), serviceException(403, "AccessDenied")));
+    }
+
+    @Test
+    public void testDelaysGrowUpToTheLimit() {
+        final RetryPolicy policy = new RetryPolicy(10, 100, 1000);
+        for (int i = 0; i < 100; i++) {
+            assertTrue(policy.getDelay(1) <= 100);
+            assertTrue(policy.getDelay(3) <= 400);
+            assertTrue(policy.getDelay(9) <= 1000);
+            assertTrue(policy.getDelay(40) <= 1000);
+            assertTrue(policy.getDelay(40) >= 0);
+        }
+    }
+
+    private static int countCalls(RetryPolicy policy, final Exception failure) throws InterruptedException {
+        final AtomicInteger calls = new AtomicInteger();
+        try {
+            policy.call("test", new Callable<Void>() {
+                @Override
+                public Void call() throws Exception {
+                    calls.incrementAndGet();
+                    throw failure;
+                }
+            });
+            fail("The failure wasn't reported");
+        } catch (IOException e) {
+            assertEquals(failure, e.getCause());
+        }
+        return calls.get();
+    }
+
+    private static AmazonS3Exception serviceException(int statusCode, String errorCode) {
+        final AmazonS3Exception e = new AmazonS3Exception(errorCode);
+        e.setStatusCode(statusCode);
+        e.setErrorCode(errorCode);
+        return e;
+    }
+}
@@ -16,6 +16,7 @@ public class S3CopyArtifactTest {
     private String target;
     private boolean flatten;
     private boolean option;
+    private boolean incremental;
 
     @Before
     public void setUp() throws Exception {
@@ -25,28 +26,29 @@ public class S3CopyArtifactTest {
         target = "targetA";
         flatten = true;
         option = true;
+        incremental = true;
     }
 
     @Test
     public void testConfigParser() throws Exception {
         j.createFreeStyleProject(projectName);
-        S3CopyArtifact before = new S3CopyArtifact(projectName, null, filter, excludeFilter, target, flatten, option);
+        S3CopyArtifact before = new S3CopyArtifact(projectName, null, filter, excludeFilter, target, flatten, option, incremental);
 
         S3CopyArtifact after = recreateFromConfig(before);
 
-        testGetters(after, projectName, filter, excludeFilter, target, flatten, option);
-        j.assertEqualBeans(before, after, "projectName,filter,excludeFilter,target,flatten,optional");
+        testGetters(after, projectName, filter, excludeFilter, target, flatten, option, incremental);
+        j.assertEqualBeans(before, after, "projectName,filter,excludeFilter,target,flatten,optional,incremental");
     }
 
     @Test
     public void testConfigParserIncorrectProject() throws Exception {
         j.createFreeStyleProject("projectB");
-        S3CopyArtifact before = new S3CopyArtifact(projectName, null, filter, excludeFilter, target, flatten, option);
+        S3CopyArtifact before = new S3CopyArtifact(projectName, null, filter, excludeFilter, target, flatten, option, incremental);
 
         S3CopyArtifact after = recreateFromConfig(before);
 
-        testGetters(after, "", filter, excludeFilter, target, flatten, option);
-        j.assertEqualBeans(before, after, "projectName,filter,excludeFilter,target,flatten,optional");
+        testGetters(after, "", filter, excludeFilter, target, flatten, option, incremental);
+        j.assertEqualBeans(before, after, "projectName,filter,excludeFilter,target,flatten,optional,incremental");
     }
 
     private S3CopyArtifact recreateFromConfig(S3CopyArtifact before) throws Exception {
@@ -58,12 +60,13 @@ public class S3CopyArtifactTest {
         return p.getBuildersList().get(S3CopyArtifact.class);
     }
 
-    private void testGetters(S3CopyArtifact after, String projectName, String filter, String excludeFilter, String target, boolean flatten, boolean option) {
+    private void testGetters(S3CopyArtifact after, String projectName, String filter, String excludeFilter, String target, boolean flatten, boolean option, boolean incremental) {
         assertEquals(projectName, after.getProjectName());
         assertEquals(filter, after.getFilter());
         assertEquals(excludeFilter, after.getExcludeFilter());
         assertEquals(target, after.getTarget());
         assertEquals(flatten, after.isFlatten());
         assertEquals(option, after.isOptional());
+        assertEquals(incremental, after.isIncremental());
     }
 }
@@ -42,7 +42,7 @@ public class S3Test {
 
     @Test
     public void testConfigContainsProfiles() throws Exception {
-        final S3Profile profile = new S3Profile("S3 profile random name", null, null, true, 0, "0", "0", "0", "0", true);
+        final S3Profile profile = new S3Profile("S3 profile random name", null, null, true, 0, "0", "0", "0", "0", true, "0", "0", "0", "0", "0", "0", "0", "0", "0", "0");
 
         replaceS3PluginProfile(profile);
 
@@ -134,6 +134,8 @@ public class S3Test {
                 Mockito.anyBoolean(),
                 Mockito.anyBoolean(),
                 Mockito.anyBoolean(),
+                Mockito.any(Compression.class),
+                Mockito.anyBoolean(),
                 Mockito.anyBoolean()
         )).thenReturn(newArrayList(new FingerprintRecord(true, "bucket", "path", "eu-west-1", "xxxx")));
         return profile;
@@ -0,0 +1,165 @@
+package hudson.plugins.s3;
+
+import org.junit.After;
+import org.junit.Test;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+public class TransferSchedulerTest {
+    private static final long BUDGET = 100;
+
+    private final TransferScheduler scheduler = new TransferScheduler("test-transfer", 4, BUDGET);
+    private final AtomicLong bytesRunning = new AtomicLong();
+    private final AtomicLong maxBytesRunning = new AtomicLong();
+    private final AtomicInteger running = new AtomicInteger();
+
+    @After
+    public void tearDown() {
+        scheduler.shutdown();
+    }
+
+    @Test
+    public void testResultsAreInSubmissionOrder() throws Exception {
+        final List<Future<Integer>> futures = new ArrayList<>();
+        for (int i = 0; i < 8; i++) {
+            final int index = i;
+            // later submissions finish first
+            futures.add(scheduler.submit(1, new Callable<Integer>() {
+                @Override
+                public Integer call() throws Exception {
+                    Thread.sleep((8 - index) * 5);
+                    return index;
+                }
+            }));
+        }
+        assertEquals(Arrays.asList(0, 1, 2, 3, 4, 5, 6, 7), TransferScheduler.getAll(futures));
+    }
+
+    @Test
+    public void testBytesInFlightStayWithinBudget() throws Exception {
+        final List<Future<Long>> futures = new ArrayList<>();
+        for (int i = 0; i < 20; i++) {
+            futures.add(scheduler.submit(40, transfer(40)));
+        }
+        TransferScheduler.getAll(futures);
+        assertTrue("At most " + BUDGET + " bytes in flight, got " + maxBytesRunning.get(), maxBytesRunning.get() <= BUDGET);
+    }
+
+    @Test
+    public void testOversizeTransferIsAdmittedAlone() throws Exception {
+        final List<Future<Long>> futures = new ArrayList<>();
+        futures.add(scheduler.submit(10, transfer(10)));
+        futures.add(scheduler.submit(10, transfer(10)));
+        final AtomicInteger othersRunning = new AtomicInteger(-1);
+        futures.add(scheduler.submit(5 * BUDGET, new Callable<Long>() {
+            @Override
+            public Long call() throws Exception {
+                othersRunning.set(running.get());
+                Thread.sleep(20);
+                return 5 * BUDGET;
+            }
+        }));
+        futures.add(scheduler.submit(10, transfer(10)));
+        TransferScheduler.getAll(futures);
+        assertEquals(0, othersRunning.get());
+        assertTrue(maxBytesRunning.get() <= BUDGET);
+    }
+
+    @Test
+    public void testFailureIsRethrown() throws Exception {
+        final List<Future<Long>> futures = new ArrayList<>();
+        futures.add(scheduler.submit(1, new Callable<Long>() {
+            @Override
+            public Long call() throws Exception {
+                throw new IOException("Failed transfer");
+            }
+        }));
+        futures.add(scheduler.submit(1, transfer(1)));
+        try {
+            TransferScheduler.getAll(futures);
+            fail("Transfer didn't fail");
+        } catch (IOException e) {
+            assertEquals("Failed transfer", e.getMessage());
+        }
+    }
+
+    @Test
+    public void testCancelAllWaitsForRunningTransfers() throws Exception {
+        final TransferScheduler single = new TransferScheduler("test-cancel", 1, 0);
+        try {
+            final CountDownLatch started = new CountDownLatch(1);
+            final AtomicBoolean cleanedUp = new AtomicBoolean();
+            final AtomicBoolean queuedRan = new AtomicBoolean();
+            final List<Future<Boolean>> futures = new ArrayList<>();
+            futures.add(single.submit(1, new Callable<Boolean>() {
+                @Override
+                public Boolean call() throws Exception {
+                    started.countDown();
+                    try {
+                        Thread.sleep(10000);
+                        return true;
+                    } finally {
+                        // e.g. aborting a multipart upload after the interrupt
+                        final long end = System.nanoTime() + TimeUnit.MILLISECONDS.toNanos(50);
+                        while (System.nanoTime() < end) {
+                            Thread.yield();
+                        }
+                        cleanedUp.set(true);
+                    }
+                }
+            }));
+            // queued behind the first one, cancelled before it starts
+            futures.add(single.submit(1, new Callable<Boolean>() {
+                @Override
+                public Boolean call() {
+                    queuedRan.set(true);
+                    return true;
+                }
+            }));
+            started.await();
+
+            TransferScheduler.cancelAll(futures);
+
+            assertTrue(cleanedUp.get());
+            assertFalse(queuedRan.get());
+        } finally {
+            single.shutdown();
+        }
+    }
+
+    private Callable<Long> transfer(final long bytes) {
+        return new Callable<Long>() {
+            @Override
+            public Long call() throws Exception {
+                running.incrementAndGet();
+                final long inFlight = bytesRunning.addAndGet(bytes);
+                long max;
+                do {
+                    max = maxBytesRunning.get();
+                } while (inFlight > max && !maxBytesRunning.compareAndSet(max, inFlight));
+                try {
+                    Thread.sleep(10);
+                    return bytes;
+                } finally {
+                    bytesRunning.addAndGet(-bytes);
+                    running.decrementAndGet();
+                }
+            }
+        };
+    }
+}
@@ -0,0 +1,34 @@
+package hudson.plugins.s3;
+
+import org.junit.Test;
+
+import static org.junit.Assert.assertEquals;
+
+public class TransferSettingsTest {
+    private static final int MB = 1024 * 1024;
+
+    @Test
+    public void testThresholdIsCappedAtSinglePutLimit() {
+        final TransferSettings settings = new TransferSettings(16 * MB, 100L * 1024 * MB, 2);
+        assertEquals(TransferSettings.MAX_SINGLE_PUT_SIZE, settings.getMultipartThreshold());
+    }
+
+    @Test
+    public void testStreamedPartsFitTheUploadBudget() {
+        // 16 parts of 128 MB in flight, plus the one being filled, would need more than 2 GB
+        final TransferSettings settings = new TransferSettings(128 * MB, 16 * MB, 8, 16, 256L * MB, RateLimit.UNLIMITED);
+        assertEquals(16, settings.getPartConcurrency());
+        assertEquals(1, settings.getStreamingPartConcurrency());
+
+        assertEquals(3, new TransferSettings(16 * MB, 16 * MB, 8, 8, 64L * MB, RateLimit.UNLIMITED).getStreamingPartConcurrency());
+        assertEquals(8, new TransferSettings(16 * MB, 16 * MB, 8, 8, 0, RateLimit.UNLIMITED).getStreamingPartConcurrency());
+    }
+
+    @Test
+    public void testEveryParallelFileGetsItsParts() {
+        assertEquals(16, new TransferSettings(16 * MB, 16 * MB, 8, 2, 0, RateLimit.UNLIMITED).getTransferThreads());
+        // never fewer threads than the SDK's default
+        assertEquals(TransferSettings.MIN_TRANSFER_THREADS, new TransferSettings(16 * MB, 16 * MB, 2, 2, 0, RateLimit.UNLIMITED).getTransferThreads());
+        assertEquals(TransferSettings.MIN_TRANSFER_THREADS, TransferSettings.DEFAULT.getTransferThreads());
+    }
+}
@@ -0,0 +1,97 @@
+package hudson.plugins.s3;
+
+import com.amazonaws.services.s3.model.ObjectMetadata;
+import com.amazonaws.services.s3.transfer.TransferManager;
+import hudson.FilePath;
+import org.apache.commons.io.FileUtils;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OperationsPerInvocation;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.Callable;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Files/sec of the upload pipeline (start transfer, wait, fingerprint) against {@link LocalS3}
+ * for different numbers of concurrent uploads.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+public class UploadBenchmark {
+    private static final int FILES = 256;
+    private static final int FILE_SIZE = 64 * 1024;
+    private static final long LATENCY_MILLIS = 10;
+
+    @Param({"1", "8", "32"})
+    public int concurrency;
+
+    private File directory;
+    private List<FilePath> files;
+    private TransferManager manager;
+    private TransferScheduler scheduler;
+    private Uploads uploads;
+
+    @Setup(Level.Trial)
+    public void setUp() throws IOException {
+        directory = Files.createTempDirectory("s3-upload-benchmark").toFile();
+        files = new ArrayList<>(FILES);
+        final Random random = new Random(42);
+        final byte[] content = new byte[FILE_SIZE];
+        for (int i = 0; i < FILES; i++) {
+            random.nextBytes(content);
+            final File file = new File(directory, "file-" + i + ".bin");
+            FileUtils.writeByteArrayToFile(file, content);
+            files.add(new FilePath(file));
+        }
+
+        // configured like the managers the upload callables lease, with the default part settings
+        final TransferSettings settings = new TransferSettings(TransferSettings.DEFAULT.getPartSize(), TransferSettings.DEFAULT.getMultipartThreshold(),
+                concurrency, TransferSettings.DEFAULT.getPartConcurrency(), 0, RateLimit.UNLIMITED);
+        manager = settings.newTransferManager(new LocalS3(LATENCY_MILLIS));
+        scheduler = new TransferScheduler("upload-benchmark", concurrency, 0);
+        uploads = Uploads.open();
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() throws IOException {
+        scheduler.shutdown();
+        uploads.close();
+        manager.shutdownNow(true);
+        FileUtils.deleteDirectory(directory);
+    }
+
+    @Benchmark
+    @OperationsPerInvocation(FILES)
+    public List<String> upload() throws Exception {
+        final List<Future<String>> pending = new ArrayList<>(files.size());
+        for (final FilePath file : files) {
+            pending.add(scheduler.submit(FILE_SIZE, new Callable<String>() {
+                @Override
+                public String call() throws Exception {
+                    final ObjectMetadata metadata = new ObjectMetadata();
+                    metadata.setContentLength(FILE_SIZE);
+                    final DigestingInputStream stream = new DigestingInputStream(file.read());
+                    uploads.finishUploading(uploads.startUploading(manager, stream, "bucket", file.getName(), metadata));
+                    return stream.getMd5();
+                }
+            }));
+        }
+        return TransferScheduler.getAll(pending);
+    }
+}
@@ -0,0 +1,136 @@
+package hudson.plugins.s3;
+
+import com.amazonaws.services.s3.model.ObjectMetadata;
+import com.amazonaws.services.s3.transfer.TransferManager;
+import com.amazonaws.services.s3.transfer.TransferManagerBuilder;
+import org.apache.commons.io.FileUtils;
+import org.junit.After;
+import org.junit.Test;
+
+import java.io.ByteArrayInputStream;
+import java.io.File;
+import java.util.Random;
+import java.util.concurrent.Callable;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotSame;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+public class UploadsTest {
+    private final LocalS3 s3 = new LocalS3(0);
+    private final TransferManager manager = TransferManagerBuilder.standard().withS3Client(s3).build();
+
+    @After
+    public void tearDown() {
+        manager.shutdownNow(false);
+    }
+
+    @Test
+    public void testRegistriesAreFoundById() {
+        final Uploads uploads = Uploads.open();
+        try {
+            assertSame(uploads, Uploads.forId(uploads.getId()));
+            assertNotSame(uploads, Uploads.open());
+        } finally {
+            uploads.close();
+        }
+        assertNotSame(uploads, Uploads.forId(uploads.getId()));
+    }
+
+    @Test
+    public void testPublishersTrackTheirOwnUploads() throws Exception {
+        final Uploads first = Uploads.open();
+        final Uploads second = Uploads.open();
+        final TrackedStream firstStream = new TrackedStream(new byte[]{1});
+        final TrackedStream secondStream = new TrackedStream(new byte[]{2});
+
+        final long firstHandle = first.startUploading(manager, firstStream, "bucket", "same/path", metadata(1));
+        final long secondHandle = second.startUploading(manager, secondStream, "bucket", "other/same/path", metadata(1));
+        first.finishUploading(firstHandle);
+        second.finishUploading(secondHandle);
+        first.close();
+        second.close();
+
+        assertArrayEquals(new byte[]{1}, s3.getContent("bucket", "same/path"));
+        assertArrayEquals(new byte[]{2}, s3.getContent("bucket", "other/same/path"));
+        assertTrue(firstStream.closed.get());
+        assertTrue(secondStream.closed.get());
+    }
+
+    @Test
+    public void testCloseReleasesStreamsOfUnfinishedUploads() throws Exception {
+        final Uploads uploads = Uploads.open();
+        final TrackedStream stream = new TrackedStream(new byte[]{1, 2, 3});
+
+        uploads.startUploading(manager, stream, "bucket", "key", metadata(3));
+        uploads.close();
+
+        assertTrue(stream.closed.get());
+    }
+
+    @Test
+    public void testLocalFilesAreUploadedInPartsReadFromTheFile() throws Exception {
+        final byte[] content = new byte[12 * 1024 * 1024];
+        new Random(1).nextBytes(content);
+        final File file = File.createTempFile("upload", ".bin");
+        final TransferManager partsManager = TransferManagerBuilder.standard().withS3Client(s3)
+                .withMinimumUploadPartSize((long) MultipartUploadOutputStream.MIN_PART_SIZE)
+                .withMultipartUploadThreshold((long) MultipartUploadOutputStream.MIN_PART_SIZE).build();
+        final Uploads uploads = Uploads.open();
+        try {
+            FileUtils.writeByteArrayToFile(file, content);
+            uploads.finishUploading(uploads.startUploading(partsManager, file, "bucket", "large", metadata(content.length)));
+        } finally {
+            uploads.close();
+            partsManager.shutdownNow(false);
+            FileUtils.deleteQuietly(file);
+        }
+
+        assertArrayEquals(content, s3.getContent("bucket", "large"));
+        assertEquals(3, s3.getFileParts());
+    }
+
+    @Test
+    public void testBatchesOfAPublishShareOneScheduler() throws Exception {
+        final Uploads uploads = Uploads.open();
+        final TransferScheduler scheduler = uploads.getScheduler(2, 0);
+        assertSame(scheduler, Uploads.forId(uploads.getId()).getScheduler(2, 0));
+        uploads.close();
+
+        try {
+            scheduler.submit(1, new Callable<Void>() {
+                @Override
+                public Void call() {
+                    return null;
+                }
+            });
+            fail("Scheduler wasn't shut down with its registry");
+        } catch (RejectedExecutionException expected) {
+            // shut down
+        }
+    }
+
+    private static ObjectMetadata metadata(long length) {
+        final ObjectMetadata metadata = new ObjectMetadata();
+        metadata.setContentLength(length);
+        return metadata;
+    }
+
+    private static final class TrackedStream extends ByteArrayInputStream {
+        private final AtomicBoolean closed = new AtomicBoolean();
+
+        TrackedStream(byte[] content) {
+            super(content);
+        }
+
+        @Override
+        public void close() {
+            closed.set(true);
+        }
+    }
+}
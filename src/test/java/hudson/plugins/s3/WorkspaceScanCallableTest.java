@@ -0,0 +1,110 @@
+package hudson.plugins.s3;
+
+import hudson.plugins.s3.callable.WorkspaceScanCallable;
+import org.apache.commons.io.FileUtils;
+import org.junit.After;
+import org.junit.Test;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+public class WorkspaceScanCallableTest {
+    private final File workspace = createTempDirectory();
+
+    @After
+    public void tearDown() {
+        FileUtils.deleteQuietly(workspace);
+    }
+
+    @Test
+    public void testOneManifestPerSearchPath() throws Exception {
+        write("target/app.jar", "app");
+        write("target/lib/dep.jar", "dependency");
+        write("target/app.log", "log");
+        write("docs/index.html", "<html/>");
+
+        final List<FileManifest> manifests = new WorkspaceScanCallable(Arrays.asList("target/**/*.jar", " docs/*.html"), null)
+                .invoke(workspace, null);
+
+        assertEquals(2, manifests.size());
+        assertEquals("target/**/*.jar", manifests.get(0).getSearchPath());
+        assertEquals(Arrays.asList("app.jar", "dep.jar"), names(manifests.get(0)));
+        assertEquals(" docs/*.html", manifests.get(1).getSearchPath());
+        assertEquals(Collections.singletonList("index.html"), names(manifests.get(1)));
+    }
+
+    @Test
+    public void testEntriesHaveSizeAndModificationTime() throws Exception {
+        final File file = write("artifact.txt", "content");
+        assertTrue(file.setLastModified(1500000000000L));
+
+        final FileManifest.Entry entry = new WorkspaceScanCallable(Collections.singletonList("*.txt"), null)
+                .invoke(workspace, null).get(0).getEntries().get(0);
+
+        assertEquals(file.getAbsolutePath(), entry.getFile().getRemote());
+        assertEquals("content".length(), entry.getLength());
+        assertEquals(file.lastModified(), entry.getLastModified());
+        assertFalse(entry.isDirectory());
+    }
+
+    @Test
+    public void testExcludesAreApplied() throws Exception {
+        write("a.txt", "a");
+        write("b.txt", "b");
+
+        final List<FileManifest> manifests = new WorkspaceScanCallable(Collections.singletonList("*.txt"), "b.txt")
+                .invoke(workspace, null);
+
+        assertEquals(Collections.singletonList("a.txt"), names(manifests.get(0)));
+    }
+
+    @Test
+    public void testNoMatchesGiveAnEmptyManifest() throws Exception {
+        assertTrue(new WorkspaceScanCallable(Collections.singletonList("*.zip"), null).invoke(workspace, null).get(0).isEmpty());
+    }
+
+    @Test
+    public void testAbsolutePathsAreRejected() throws Exception {
+        try {
+            new WorkspaceScanCallable(Collections.singletonList(new File(workspace, "*.txt").getAbsolutePath()), null)
+                    .invoke(workspace, null);
+            fail("Absolute search path was accepted");
+        } catch (IOException expected) {
+            assertTrue(expected.getMessage().contains("Expecting Ant GLOB pattern"));
+        }
+    }
+
+    private static List<String> names(FileManifest manifest) {
+        final List<String> names = new ArrayList<>();
+        for (FileManifest.Entry entry : manifest.getEntries()) {
+            names.add(entry.getName());
+        }
+        Collections.sort(names);
+        return names;
+    }
+
+    private File write(String path, String content) throws IOException {
+        final File file = new File(workspace, path);
+        FileUtils.writeStringToFile(file, content, StandardCharsets.UTF_8);
+        return file;
+    }
+
+    private static File createTempDirectory() {
+        try {
+            return Files.createTempDirectory("workspace-scan").toFile();
+        } catch (IOException e) {
+            throw new IllegalStateException(e);
+        }
+    }
+}